@@ -2,13 +2,18 @@ plugins {
     id("org.springframework.boot") version "3.2.2"
     id("io.spring.dependency-management") version "1.1.4"
     id("java")
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "org.example"
 version = "1.0-SNAPSHOT"
 
+// Java 17 by default. Build with -PjavaVersion=21 for the Java 21 profile, where bootRun also
+// activates the "virtual" Spring profile that serves requests on virtual threads.
+val javaVersion = (findProperty("javaVersion") as String?)?.toInt() ?: 17
+
 java {
-    sourceCompatibility = JavaVersion.VERSION_17
+    sourceCompatibility = JavaVersion.toVersion(javaVersion)
 }
 
 repositories {
@@ -22,10 +27,48 @@ dependencies {
     implementation("org.springframework.boot:spring-boot-starter-aop")
     implementation("com.github.ben-manes.caffeine:caffeine")
 
+    // Shared store for ratelimiter.store=redis; commons-pool2 enables Lettuce connection pooling
+    implementation("org.springframework.boot:spring-boot-starter-data-redis")
+    implementation("org.apache.commons:commons-pool2")
+
+    // RateLimitWebFilter is only active in WebFlux applications, which bring this themselves
+    compileOnly("org.springframework:spring-webflux")
+
     // Test dependencies
     testImplementation("org.springframework.boot:spring-boot-starter-test")
+    testImplementation("org.springframework:spring-webflux")
+    // Real redis-server binaries started by RedisRateLimitStoreTest, so the Lua scripts run as in production
+    testImplementation("com.github.codemonstur:embedded-redis:1.4.3")
+
+    // Benchmark dependencies
+    jmh("org.springframework:spring-webflux")
+    jmh("org.springframework:spring-test")
 }
 
 tasks.withType<Test> {
     useJUnitPlatform()
+}
+
+tasks.named<org.springframework.boot.gradle.tasks.run.BootRun>("bootRun") {
+    if (javaVersion >= 21) {
+        args("--spring.profiles.active=virtual")
+    }
+}
+
+// Microbenchmarks live in src/jmh/java and run with ./gradlew jmh.
+// Results are written as JSON so runs from different commits can be diffed.
+jmh {
+    jmhVersion.set("1.37")
+    fork.set(1)
+    warmupIterations.set(3)
+    warmup.set("1s")
+    iterations.set(5)
+    timeOnIteration.set("2s")
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("reports/jmh/results.json"))
+
+    // Only the hot path by default; pick other benchmarks with e.g. -Pjmh.includes=RateLimitAlgorithmBenchmark,
+    // or narrow a run down with -Pjmh.includes=RateLimiterServiceBenchmark.hotPath8
+    includes.add((findProperty("jmh.includes") as String?) ?: "RateLimiterServiceBenchmark")
 }
\ No newline at end of file
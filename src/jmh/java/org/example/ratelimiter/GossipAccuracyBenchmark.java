@@ -0,0 +1,138 @@
+package org.example.ratelimiter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures how closely a cluster of {@link GossipRateLimitStore}s on localhost holds a limit, against the gossip
+ * interval and the bandwidth it takes. Each benchmark thread sends its requests to one node, so every client is
+ * spread over all of them.
+ * <p>
+ * After each iteration, the admitted requests are printed as a share of what an exact limiter admits over the
+ * same windows, along with the gossip bytes sent per second by all nodes. A share above 1 is over-admission.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GossipAccuracyBenchmark {
+  private static final int NODES = 3;
+  private static final int CLIENT_COUNT = 8;
+  private static final int LIMIT = 1000;
+
+  @State(Scope.Benchmark)
+  public static class Cluster {
+    @Param({"10", "100", "500"})
+    public long intervalMillis;
+
+    // Pause between a thread's requests, which sets how far ahead of the gossip a node can run
+    @Param({"0", "100"})
+    public long pauseMicros;
+
+    public final List<GossipRateLimitStore> nodes = new ArrayList<>();
+    public final LongAdder admitted = new LongAdder();
+    public final AtomicInteger nextNode = new AtomicInteger();
+    public RateLimitRule rule;
+    public RateLimitAlgorithm<?> algorithm;
+
+    long firstWindow;
+    long startNanos;
+    long startBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      List<InetSocketAddress> addresses = new ArrayList<>();
+
+      for (int i = 0; i < NODES; i++) {
+        GossipRateLimitStore node = new GossipRateLimitStore(new InetSocketAddress("127.0.0.1", 0), List.of(),
+          TimeUnit.MILLISECONDS.toNanos(intervalMillis), CLIENT_COUNT, null);
+
+        nodes.add(node);
+        addresses.add(node.getLocalAddress());
+      }
+
+      for (int i = 0; i < NODES; i++) {
+        List<InetSocketAddress> peers = new ArrayList<>(addresses);
+
+        peers.remove(i);
+        nodes.get(i).setPeers(peers);
+      }
+
+      rule = new RateLimitRule(LIMIT, 1, Algorithm.FIXED_WINDOW);
+      algorithm = new FixedWindowAlgorithm();
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+      admitted.reset();
+      firstWindow = System.currentTimeMillis() / 1000;
+      startNanos = System.nanoTime();
+      startBytes = sentBytes();
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportAccuracy() {
+      long windows = System.currentTimeMillis() / 1000 - firstWindow + 1;
+      double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+      System.out.printf("%nadmitted %.3f of the limit, %.0f gossip bytes/s%n",
+        admitted.sum() / (double) (windows * CLIENT_COUNT * LIMIT), (sentBytes() - startBytes) / seconds);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      nodes.forEach(GossipRateLimitStore::close);
+    }
+
+    private long sentBytes() {
+      return nodes.stream().mapToLong(GossipRateLimitStore::getSentBytes).sum();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Client {
+    GossipRateLimitStore node;
+    int position;
+
+    @Setup(Level.Trial)
+    public void setUp(Cluster cluster) {
+      node = cluster.nodes.get(cluster.nextNode.getAndIncrement() % NODES);
+    }
+
+    long next() {
+      return position++ & (CLIENT_COUNT - 1);
+    }
+  }
+
+  @Benchmark
+  @Threads(NODES)
+  public long acquire(Cluster cluster, Client client) {
+    long decision = client.node.tryAcquire(0, client.next(), cluster.rule, cluster.algorithm,
+      RateLimitClock.nanoTime());
+
+    if (RateLimitDecision.isAllowed(decision)) {
+      cluster.admitted.increment();
+    }
+
+    if (cluster.pauseMicros > 0) {
+      LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(cluster.pauseMicros));
+    }
+
+    return decision;
+  }
+}
@@ -0,0 +1,78 @@
+package org.example.ratelimiter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link LeasedRateLimitStore} against a ledger with a simulated round-trip latency. A lease fraction
+ * small enough for one-permit chunks makes every request a round trip, the cost of a shared store without leases.
+ * Read p0.99 from the SampleTime results: with leases, only the requests that find no permits in hand wait.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LeasedRateLimitStoreBenchmark {
+  private static final int KEY_COUNT = 1 << 10;
+
+  @State(Scope.Benchmark)
+  public static class LedgerState {
+    // Simulated round trip to the ledger
+    @Param({"0", "100", "1000"})
+    public long latencyMicros;
+
+    // 1.0E-10 leases one permit at a time, i.e. one round trip per request
+    @Param({"1.0E-10", "0.01", "0.1"})
+    public double leaseFraction;
+
+    public LeasedRateLimitStore store;
+    public RateLimitRule rule;
+    public RateLimitAlgorithm<?> algorithm;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      InMemoryQuotaLedger ledger = new InMemoryQuotaLedger(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+
+      // A generous lease timeout, so slow leases are measured rather than replaced by the fallback
+      store = new LeasedRateLimitStore(ledger, leaseFraction, TimeUnit.SECONDS.toNanos(1), KEY_COUNT, null, null);
+      // A limit high enough that the keys are never exhausted within a window
+      rule = new RateLimitRule(Integer.MAX_VALUE / 2, 1, Algorithm.FIXED_WINDOW);
+      algorithm = new FixedWindowAlgorithm();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Cursor {
+    int position;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+      position = ThreadLocalRandom.current().nextInt(KEY_COUNT);
+    }
+
+    long next() {
+      return position++ & (KEY_COUNT - 1);
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public long acquire1(LedgerState state, Cursor cursor) {
+    return state.store.tryAcquire(0, cursor.next(), state.rule, state.algorithm, RateLimitClock.nanoTime());
+  }
+
+  @Benchmark
+  @Threads(8)
+  public long acquire8(LedgerState state, Cursor cursor) {
+    return state.store.tryAcquire(0, cursor.next(), state.rule, state.algorithm, RateLimitClock.nanoTime());
+  }
+}
@@ -0,0 +1,58 @@
+package org.example.ratelimiter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks each algorithm on each in-process store through
+ * {@link RateLimiterService#allowRequest(String, RateLimitRule)}, over uniformly distributed keys.
+ * Kept apart from {@link RateLimiterServiceBenchmark} so the two grids add up instead of multiplying.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RateLimitAlgorithmBenchmark {
+  @State(Scope.Benchmark)
+  public static class AlgorithmState {
+    @Param({"FIXED_WINDOW", "SLIDING_COUNTER", "TOKEN_BUCKET", "GCRA"})
+    public Algorithm algorithm;
+
+    @Param({"caffeine", "offheap"})
+    public String store;
+
+    public RateLimiterService service;
+    public RateLimitRule rule;
+    public String[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      RateLimiterConfig config = new RateLimiterConfig();
+
+      // No Redis template; the benchmarks only run the in-process stores
+      List<RateLimitAlgorithm<?>> algorithms = List.of(new FixedWindowAlgorithm(), new SlidingLogAlgorithm(),
+        new SlidingCounterAlgorithm(), new TokenBucketAlgorithm(), new GcraAlgorithm());
+      RateLimitStore rateLimitStore = config.rateLimitStore(config.cacheManager(), store, 1 << 20, "", 60, algorithms,
+        null, null, 0.1, 50, 0, new String[0], 100);
+
+      service = new RateLimiterService(rateLimitStore, algorithms, config.subnetMask(24, 64));
+      rule = new RateLimitRule(60, 60, algorithm);
+      keys = RateLimiterServiceBenchmark.buildKeySequence(RateLimiterServiceBenchmark.KeyDistribution.UNIFORM);
+    }
+  }
+
+  @Benchmark
+  @Threads(8)
+  public boolean allowRequest8(AlgorithmState state, RateLimiterServiceBenchmark.Cursor cursor) {
+    return state.service.allowRequest(cursor.next(state.keys), state.rule);
+  }
+}
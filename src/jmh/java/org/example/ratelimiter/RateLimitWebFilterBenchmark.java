@@ -0,0 +1,107 @@
+package org.example.ratelimiter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link RateLimitWebFilter} the way an event loop runs it: one thread per core, each handling requests
+ * back to back, so SampleTime percentiles are the time an event loop spends per request.
+ * A limit of 1 saturates every client and measures the 429 path during a flood; a large limit measures the
+ * pass-through path. {@link #baseline} builds the same exchange without the filter, to subtract its cost.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(Threads.MAX)
+public class RateLimitWebFilterBenchmark {
+  private static final int CLIENT_COUNT = 1 << 16;
+
+  private static final WebFilterChain CHAIN = exchange -> Mono.empty();
+
+  public static class Endpoint {
+    @RateLimit(limit = 1, timeWindowSeconds = 60)
+    public void saturated() {
+    }
+
+    @RateLimit(limit = 65535, timeWindowSeconds = 60, algorithm = Algorithm.GCRA)
+    public void passing() {
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class FilterState {
+    @Param({"saturated", "passing"})
+    public String endpoint;
+
+    @Param({"caffeine", "offheap"})
+    public String store;
+
+    public RateLimitWebFilter filter;
+    public InetSocketAddress[] clients;
+
+    @Setup(Level.Trial)
+    public void setUp() throws NoSuchMethodException {
+      RateLimiterConfig config = new RateLimiterConfig();
+
+      // No Redis template; the benchmarks only run the in-process stores
+      List<RateLimitAlgorithm<?>> algorithms = List.of(new FixedWindowAlgorithm(), new SlidingLogAlgorithm(),
+        new SlidingCounterAlgorithm(), new TokenBucketAlgorithm(), new GcraAlgorithm());
+      RateLimitStore rateLimitStore = config.rateLimitStore(config.cacheManager(), store, 1 << 20, "", 60, algorithms,
+        null, null, 0.1, 50, 0, new String[0], 100);
+
+      RateLimiterService service = new RateLimiterService(rateLimitStore, algorithms, config.subnetMask(24, 64));
+      Endpoint bean = new Endpoint();
+      Mono<Object> handler = Mono.just(new HandlerMethod(bean, Endpoint.class.getMethod(endpoint)));
+
+      filter = new RateLimitWebFilter(service, exchange -> handler, TrustedProxies.none());
+      clients = new InetSocketAddress[CLIENT_COUNT];
+
+      for (int i = 0; i < clients.length; i++) {
+        clients[i] = new InetSocketAddress("10.0." + (i >>> 8) + "." + (i & 0xFF), 40000);
+      }
+    }
+  }
+
+  @Benchmark
+  public Object filter(FilterState state) {
+    MockServerWebExchange exchange = exchange(state);
+
+    state.filter.filter(exchange, CHAIN).block();
+
+    return exchange;
+  }
+
+  @Benchmark
+  public Object baseline(FilterState state) {
+    MockServerWebExchange exchange = exchange(state);
+
+    CHAIN.filter(exchange).block();
+
+    return exchange;
+  }
+
+  // Helper methods
+
+  private static MockServerWebExchange exchange(FilterState state) {
+    InetSocketAddress client = state.clients[ThreadLocalRandom.current().nextInt(CLIENT_COUNT)];
+
+    return MockServerWebExchange.from(MockServerHttpRequest.get("/api/limited").remoteAddress(client).build());
+  }
+}
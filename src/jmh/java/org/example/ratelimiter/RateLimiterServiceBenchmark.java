@@ -0,0 +1,162 @@
+package org.example.ratelimiter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the decision path of {@link RateLimiterService#allowRequest(String, int, int)}.
+ * Each thread count has its own benchmark method since JMH cannot parameterize @Threads.
+ * Run with the gc profiler (enabled in build.gradle.kts) to get the allocation rate per operation,
+ * and read p0.99 from the SampleTime results.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RateLimiterServiceBenchmark {
+  private static final int UNIFORM_KEY_COUNT = 100_000;
+
+  // Length of the precomputed key sequence; a power of two so cursors can wrap with a mask
+  private static final int SEQUENCE_LENGTH = 1 << 20;
+
+  public enum KeyDistribution {
+    HOT_KEY,
+    UNIFORM,
+    ZIPFIAN
+  }
+
+  @State(Scope.Benchmark)
+  public static class LimiterState {
+    @Param({"HOT_KEY", "UNIFORM", "ZIPFIAN"})
+    public KeyDistribution distribution;
+
+    // A small limit exercises the rejection path, a large one keeps every request on the allow path
+    @Param({"60", "65535"})
+    public int limit;
+
+    public RateLimiterService service;
+    public String[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      RateLimiterConfig config = new RateLimiterConfig();
+
+      // The default store; RateLimitAlgorithmBenchmark covers the others
+      List<RateLimitAlgorithm<?>> algorithms = List.of(new FixedWindowAlgorithm(), new SlidingLogAlgorithm(),
+        new SlidingCounterAlgorithm(), new TokenBucketAlgorithm(), new GcraAlgorithm());
+      RateLimitStore rateLimitStore = config.rateLimitStore(config.cacheManager(), "caffeine", 1 << 20, "", 60,
+        algorithms, null, null, 0.1, 50, 0, new String[0], 100);
+
+      service = new RateLimiterService(rateLimitStore, algorithms, config.subnetMask(24, 64));
+      keys = buildKeySequence(distribution);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Cursor {
+    int position;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+      // Start threads at different offsets so they don't walk the sequence in lockstep
+      position = ThreadLocalRandom.current().nextInt(SEQUENCE_LENGTH);
+    }
+
+    String next(String[] keys) {
+      return keys[position++ & (SEQUENCE_LENGTH - 1)];
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public boolean hotPath1(LimiterState state, Cursor cursor) {
+    return state.service.allowRequest(cursor.next(state.keys), state.limit, 60);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public boolean hotPath8(LimiterState state, Cursor cursor) {
+    return state.service.allowRequest(cursor.next(state.keys), state.limit, 60);
+  }
+
+  @Benchmark
+  @Threads(32)
+  public boolean hotPath32(LimiterState state, Cursor cursor) {
+    return state.service.allowRequest(cursor.next(state.keys), state.limit, 60);
+  }
+
+  @Benchmark
+  @Threads(128)
+  public boolean hotPath128(LimiterState state, Cursor cursor) {
+    return state.service.allowRequest(cursor.next(state.keys), state.limit, 60);
+  }
+
+  // Helper methods
+
+  static String[] buildKeySequence(KeyDistribution distribution) {
+    String[] addresses = new String[UNIFORM_KEY_COUNT];
+
+    for (int i = 0; i < addresses.length; i++) {
+      addresses[i] = "10." + ((i >>> 16) & 0xFF) + "." + ((i >>> 8) & 0xFF) + "." + (i & 0xFF);
+    }
+
+    // Fixed seed so every run and every commit sees the same key sequence
+    SplittableRandom random = new SplittableRandom(42);
+    String[] sequence = new String[SEQUENCE_LENGTH];
+    double[] zipfCdf = distribution == KeyDistribution.ZIPFIAN ? zipfCdf(addresses.length, 1.0) : null;
+
+    for (int i = 0; i < sequence.length; i++) {
+      switch (distribution) {
+        case HOT_KEY -> sequence[i] = addresses[0];
+        case UNIFORM -> sequence[i] = addresses[random.nextInt(addresses.length)];
+        case ZIPFIAN -> sequence[i] = addresses[sampleZipf(zipfCdf, random.nextDouble())];
+      }
+    }
+
+    return sequence;
+  }
+
+  private static double[] zipfCdf(int n, double exponent) {
+    double[] cdf = new double[n];
+    double sum = 0;
+
+    for (int rank = 1; rank <= n; rank++) {
+      sum += 1.0 / Math.pow(rank, exponent);
+      cdf[rank - 1] = sum;
+    }
+
+    for (int i = 0; i < n; i++) {
+      cdf[i] /= sum;
+    }
+
+    return cdf;
+  }
+
+  private static int sampleZipf(double[] cdf, double u) {
+    int low = 0;
+    int high = cdf.length - 1;
+
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+
+      if (cdf[mid] < u) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+
+    return low;
+  }
+}
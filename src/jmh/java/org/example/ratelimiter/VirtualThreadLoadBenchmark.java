@@ -0,0 +1,122 @@
+package org.example.ratelimiter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test comparing request throughput on platform and virtual threads while most requests are rejected.
+ * <p>
+ * Each invocation serves {@value #REQUESTS} requests from {@value #CLIENTS} clients, one task per request as
+ * Tomcat does. Allowed requests then wait {@value #BACKEND_MILLIS} ms for a simulated backend, rejected ones return
+ * at once, so the limit keeps most of the traffic on the 429 path. Platform threads are capped at Tomcat's default
+ * of {@value #PLATFORM_THREADS}.
+ * <p>
+ * The {@code virtual} executor needs Java 21 (build with {@code -PjavaVersion=21}). The fork traces pinned virtual
+ * threads, so any rate limiter path that pins a carrier prints its stack trace in the benchmark output.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(VirtualThreadLoadBenchmark.REQUESTS)
+@Fork(value = 1, jvmArgsAppend = "-Djdk.tracePinnedThreads=short")
+public class VirtualThreadLoadBenchmark {
+  static final int REQUESTS = 10_000;
+
+  private static final int CLIENTS = 100;
+  private static final int PLATFORM_THREADS = 200;
+  private static final long BACKEND_MILLIS = 1;
+
+  @State(Scope.Benchmark)
+  public static class LoadState {
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"FIXED_WINDOW", "SLIDING_LOG", "GCRA"})
+    public Algorithm algorithm;
+
+    @Param({"caffeine", "offheap"})
+    public String store;
+
+    public RateLimiterService service;
+    public RateLimitRule rule;
+    public ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException {
+      RateLimiterConfig config = new RateLimiterConfig();
+
+      // No Redis template; the benchmarks only run the in-process stores
+      List<RateLimitAlgorithm<?>> algorithms = List.of(new FixedWindowAlgorithm(), new SlidingLogAlgorithm(),
+        new SlidingCounterAlgorithm(), new TokenBucketAlgorithm(), new GcraAlgorithm());
+      RateLimitStore rateLimitStore = config.rateLimitStore(config.cacheManager(), store, 1 << 20, "", 60, algorithms,
+        null, null, 0.1, 50, 0, new String[0], 100);
+
+      service = new RateLimiterService(rateLimitStore, algorithms, config.subnetMask(24, 64));
+
+      // 50 requests per second per client, far below the offered load
+      rule = new RateLimitRule(50, 1, algorithm);
+      executor = "virtual".equals(threads)
+        ? newVirtualThreadExecutor()
+        : Executors.newFixedThreadPool(PLATFORM_THREADS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      executor.shutdownNow();
+    }
+  }
+
+  @Benchmark
+  public int serve(LoadState state) throws InterruptedException {
+    CountDownLatch done = new CountDownLatch(REQUESTS);
+    AtomicInteger rejected = new AtomicInteger();
+
+    for (int i = 0; i < REQUESTS; i++) {
+      long client = ClientAddress.IPV4_MAPPED_LOW_PREFIX | (i % CLIENTS);
+
+      state.executor.execute(() -> {
+        long decision = state.service.tryAcquire(ClientAddress.IPV4_MAPPED_HIGH, client, state.rule);
+
+        if (RateLimitDecision.isAllowed(decision)) {
+          LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(BACKEND_MILLIS));
+        } else {
+          rejected.incrementAndGet();
+        }
+
+        done.countDown();
+      });
+    }
+
+    done.await();
+
+    return rejected.get();
+  }
+
+  // Helper methods
+
+  private static ExecutorService newVirtualThreadExecutor() throws ReflectiveOperationException {
+    try {
+      // Looked up reflectively so the benchmarks still compile for Java 17
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (NoSuchMethodException e) {
+      throw new IllegalStateException("Virtual threads need Java 21, build with -PjavaVersion=21", e);
+    }
+  }
+}
@@ -2,10 +2,13 @@ package org.example.controller;
 
 import jakarta.servlet.http.HttpServletRequest;
 import org.example.ratelimiter.RateLimit;
+import org.example.ratelimiter.RateLimitKeyResolvers;
+import org.example.ratelimiter.RateLimitScope;
 import org.example.ratelimiter.RateLimiterService;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -17,9 +20,11 @@ import java.util.Map;
 @RequestMapping("/api")
 public class ExampleController {
   private final RateLimiterService rateLimiterService;
+  private final RateLimitKeyResolvers keyResolvers;
 
-  public ExampleController(RateLimiterService rateLimiterService) {
+  public ExampleController(RateLimiterService rateLimiterService, RateLimitKeyResolvers keyResolvers) {
     this.rateLimiterService = rateLimiterService;
+    this.keyResolvers = keyResolvers;
   }
 
   /**
@@ -34,14 +39,24 @@ public class ExampleController {
 
   /**
    * A rate-limited endpoint with custom configuration.
-   * Limited to 5 requests per 30 seconds.
+   * Limited to 5 requests per 30 seconds, reported in RateLimit-* response headers.
    */
   @GetMapping("/limited")
-  @RateLimit(limit = 5, timeWindowSeconds = 30)
+  @RateLimit(limit = 5, timeWindowSeconds = 30, headers = true)
   public ResponseEntity<String> limited() {
     return ResponseEntity.ok("Hello! This endpoint is rate limited to 5 requests per 30 seconds.");
   }
 
+  /**
+   * A rate-limited endpoint with a path variable.
+   * Every user id shares one counter per client, and the registry holds a single entry for the route template.
+   */
+  @GetMapping("/users/{id}")
+  @RateLimit(limit = 10, timeWindowSeconds = 60, scope = RateLimitScope.PER_ROUTE_TEMPLATE)
+  public ResponseEntity<String> user(@PathVariable String id) {
+    return ResponseEntity.ok("Hello, user " + id + "! This endpoint is rate limited to 10 requests per minute.");
+  }
+
   /**
    * An endpoint that is not rate limited
    */
@@ -55,7 +70,7 @@ public class ExampleController {
    */
   @GetMapping(value = "/rate-info", produces = MediaType.APPLICATION_JSON_VALUE)
   public Map<String, Object> getRateInfo(HttpServletRequest request) {
-    String ipAddress = request.getRemoteAddr();
+    String ipAddress = keyResolvers.clientAddress(request);
     List<RateLimiterService.RateLimitStatus> statuses = rateLimiterService.getRateLimitStatus(ipAddress);
 
     Map<String, Object> response = new HashMap<>();
@@ -78,6 +93,7 @@ public class ExampleController {
       limitInfo.put("description", status.getDescription());
       limitInfo.put("limit", status.getLimit());
       limitInfo.put("timeWindowSeconds", status.getTimeWindowSeconds());
+      limitInfo.put("algorithm", status.getAlgorithm());
       limitInfo.put("current", status.getCurrentCount());
       limitInfo.put("remaining", status.getRemainingRequests());
       limitInfo.put("resetsInSeconds", status.getTimeRemainingSeconds());
@@ -0,0 +1,35 @@
+package org.example.ratelimiter;
+
+/**
+ * The rate limiting algorithms that can be selected through {@link RateLimit#algorithm()}.
+ */
+public enum Algorithm {
+  /**
+   * Counts requests in a window that starts with the first request. Cheap, but up to twice the limit
+   * can pass around a window boundary.
+   */
+  FIXED_WINDOW,
+
+  /**
+   * Remembers the timestamp of every allowed request in the window. Exact, but memory grows with the limit.
+   */
+  SLIDING_LOG,
+
+  /**
+   * Weights the previous window's count by how much of it still overlaps the sliding window.
+   * Approximates the sliding log in constant memory per key.
+   */
+  SLIDING_COUNTER,
+
+  /**
+   * Refills tokens continuously at {@link RateLimit#refillPerSecond()} up to {@link RateLimit#capacity()}
+   * and spends one per request. Allows bursts up to the capacity without any boundary resets.
+   */
+  TOKEN_BUCKET,
+
+  /**
+   * Generic cell rate algorithm. Spaces requests {@code timeWindowSeconds / limit} apart while tolerating a burst
+   * of {@code limit}, tracking only the theoretical arrival time of the next request per key.
+   */
+  GCRA
+}
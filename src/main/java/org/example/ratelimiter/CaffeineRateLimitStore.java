@@ -0,0 +1,102 @@
+package org.example.ratelimiter;
+
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+/**
+ * Default store, keeping one state object per client and rule in the Caffeine cache from {@link RateLimiterConfig}.
+ * Supports every algorithm. Each key carries its algorithm's idle timeout, which {@link IdleExpiry} hands to
+ * Caffeine, so idle entries are dropped by Caffeine's own timer wheel instead of waiting for size eviction.
+ */
+public class CaffeineRateLimitStore implements RateLimitStore {
+  // Resolved once; the cache manager creates its caches up front
+  private final Cache cache;
+
+  public CaffeineRateLimitStore(CacheManager cacheManager) {
+    this.cache = cacheManager.getCache(RateLimiterConfig.CACHE_NAME);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public long tryAcquire(long clientHigh, long clientLow, RateLimitRule rule, RateLimitAlgorithm<?> algorithm,
+                         long nowNanos) {
+    if (cache == null) {
+      return RateLimitDecision.allowed(rule.getLimit(), 0);
+    }
+
+    RateLimitAlgorithm<Object> typed = (RateLimitAlgorithm<Object>) algorithm;
+    Key key = new Key(clientHigh, clientLow, rule.getId(), algorithm.idleTimeoutNanos(rule));
+    Object state = cache.get(key, () -> typed.newState(rule));
+
+    return typed.tryAcquire(state, rule, nowNanos);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public long probe(long clientHigh, long clientLow, RateLimitRule rule, RateLimitAlgorithm<?> algorithm,
+                    long nowNanos) {
+    // The lookup key's timeout is the one IdleExpiry applies after the read, so it must be the real one
+    Key key = new Key(clientHigh, clientLow, rule.getId(), algorithm.idleTimeoutNanos(rule));
+    Cache.ValueWrapper valueWrapper = cache == null ? null : cache.get(key);
+
+    if (valueWrapper == null) {
+      return RateLimitDecision.allowed(rule.getLimit(), 0);
+    }
+
+    return ((RateLimitAlgorithm<Object>) algorithm).probe(valueWrapper.get(), rule, nowNanos);
+  }
+
+  /**
+   * Cache key made of the client key and the rule id. The idle timeout rides along for {@link IdleExpiry}
+   * and is not part of the key's identity.
+   */
+  static final class Key {
+    private final long high;
+    private final long low;
+    private final int ruleId;
+    private final long idleTimeoutNanos;
+
+    Key(long high, long low, int ruleId, long idleTimeoutNanos) {
+      this.high = high;
+      this.low = low;
+      this.ruleId = ruleId;
+      this.idleTimeoutNanos = idleTimeoutNanos;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Key key && key.high == high && key.low == low && key.ruleId == ruleId;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) RateLimitStore.hash(high, low, ruleId);
+    }
+  }
+
+  /**
+   * Expires each entry once it has been idle for its algorithm's idle timeout.
+   * Every access restarts the timeout, since each request may have changed the state.
+   */
+  public static class IdleExpiry implements Expiry<Object, Object> {
+    @Override
+    public long expireAfterCreate(Object key, Object value, long currentTime) {
+      return idleTimeout(key);
+    }
+
+    @Override
+    public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+      return idleTimeout(key);
+    }
+
+    @Override
+    public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+      return idleTimeout(key);
+    }
+
+    private static long idleTimeout(Object key) {
+      return key instanceof Key rateLimitKey ? rateLimitKey.idleTimeoutNanos : Long.MAX_VALUE;
+    }
+  }
+}
@@ -0,0 +1,346 @@
+package org.example.ratelimiter;
+
+/**
+ * Parses client addresses into 128-bit numeric keys.
+ * <p>
+ * IPv6 addresses map to their 128 bits, IPv4 addresses to their IPv4-mapped IPv6 form
+ * ({@code ::ffff:a.b.c.d}), so both families share one key space. Anything that is not a valid address is
+ * hashed into the discard-only prefix {@code 100::/64} (RFC 6666), which no real client can come from.
+ * {@link #parse} reads the text once into both halves of a {@link RateLimitKey} and allocates nothing; {@link #high}
+ * and {@link #low} are conveniences for callers outside the request path that want a single half.
+ */
+public final class ClientAddress {
+  /**
+   * Upper half of every IPv4-mapped address
+   */
+  public static final long IPV4_MAPPED_HIGH = 0;
+
+  /**
+   * Bits set in the lower half of every IPv4-mapped address
+   */
+  public static final long IPV4_MAPPED_LOW_PREFIX = 0xFFFF_0000_0000L;
+
+  /**
+   * Upper half of keys that are hashes rather than addresses
+   */
+  public static final long HASHED_HIGH = 0x0100_0000_0000_0000L;
+
+  private static final int NOT_FOUND = -1;
+
+  private ClientAddress() {
+  }
+
+  /**
+   * Sets the key to the address, or to its hash if it is not one
+   */
+  public static void parse(CharSequence address, RateLimitKey key) {
+    parse(address, 0, address.length(), key);
+  }
+
+  /**
+   * Sets the key to the address in {@code address[start, end)}, or to its hash if it is not one
+   */
+  public static void parse(CharSequence address, int start, int end, RateLimitKey key) {
+    // Strip the brackets of a URI-style address and any IPv6 zone id
+    if (end - start >= 2 && address.charAt(start) == '[' && address.charAt(end - 1) == ']') {
+      start++;
+      end--;
+    }
+
+    int zone = indexOf(address, '%', start, end);
+
+    if (zone != NOT_FOUND) {
+      end = zone;
+    }
+
+    if (indexOf(address, ':', start, end) == NOT_FOUND) {
+      long ipv4 = parseIpv4(address, start, end);
+
+      if (ipv4 != NOT_FOUND) {
+        key.set(IPV4_MAPPED_HIGH, IPV4_MAPPED_LOW_PREFIX | ipv4);
+
+        return;
+      }
+    } else if (parseIpv6(address, start, end, key)) {
+      return;
+    }
+
+    key.setHashed(hash(address, start, end));
+  }
+
+  public static long high(CharSequence address) {
+    return high(address, 0, address.length());
+  }
+
+  public static long low(CharSequence address) {
+    return low(address, 0, address.length());
+  }
+
+  /**
+   * Upper 64 bits of the key for the address in {@code address[start, end)}
+   */
+  public static long high(CharSequence address, int start, int end) {
+    RateLimitKey key = new RateLimitKey();
+
+    parse(address, start, end, key);
+
+    return key.getHigh();
+  }
+
+  /**
+   * Lower 64 bits of the key for the address in {@code address[start, end)}
+   */
+  public static long low(CharSequence address, int start, int end) {
+    RateLimitKey key = new RateLimitKey();
+
+    parse(address, start, end, key);
+
+    return key.getLow();
+  }
+
+  /**
+   * Upper 64 bits of the key for a raw 4- or 16-byte address, as returned by {@code InetAddress.getAddress()}
+   */
+  public static long high(byte[] address) {
+    return address.length == 16 ? readLong(address, 0) : IPV4_MAPPED_HIGH;
+  }
+
+  /**
+   * Lower 64 bits of the key for a raw 4- or 16-byte address, as returned by {@code InetAddress.getAddress()}
+   */
+  public static long low(byte[] address) {
+    if (address.length == 16) {
+      return readLong(address, 8);
+    }
+
+    return IPV4_MAPPED_LOW_PREFIX | (readLong(address, 0) >>> 32);
+  }
+
+  /**
+   * Whether the key is an IPv4 address
+   */
+  public static boolean isIpv4(long high, long low) {
+    return high == IPV4_MAPPED_HIGH && (low >>> 32) == (IPV4_MAPPED_LOW_PREFIX >>> 32);
+  }
+
+  /**
+   * Mask of the upper 64 bits covered by a prefix of the given length, from 0 to 128
+   */
+  public static long highMask(int prefixLength) {
+    return prefixLength >= 64 ? -1L : prefixLength == 0 ? 0 : -1L << (64 - prefixLength);
+  }
+
+  /**
+   * Mask of the lower 64 bits covered by a prefix of the given length, from 0 to 128
+   */
+  public static long lowMask(int prefixLength) {
+    return prefixLength <= 64 ? 0 : prefixLength == 128 ? -1L : -1L << (128 - prefixLength);
+  }
+
+  /**
+   * 64-bit hash of {@code value[start, end)}, spread with the MurmurHash3 finalizer
+   */
+  public static long hash(CharSequence value, int start, int end) {
+    long hash = 0xCBF2_9CE4_8422_2325L;
+
+    for (int i = start; i < end; i++) {
+      hash = (hash ^ value.charAt(i)) * 0x0100_0000_01B3L;
+    }
+
+    return mix(hash);
+  }
+
+  /**
+   * MurmurHash3 64-bit finalizer
+   */
+  public static long mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xFF51_AFD7_ED55_8CCDL;
+    value ^= value >>> 33;
+    value *= 0xC4CE_B9FE_1A85_EC53L;
+    value ^= value >>> 33;
+
+    return value;
+  }
+
+  // Helper methods
+
+  /**
+   * Parses dotted-quad IPv4 into its 32 bits, or returns {@link #NOT_FOUND}
+   */
+  private static long parseIpv4(CharSequence address, int start, int end) {
+    long value = 0;
+    int octets = 0;
+    int octet = 0;
+    int digits = 0;
+
+    for (int i = start; i <= end; i++) {
+      char c = i < end ? address.charAt(i) : '.';
+
+      if (c >= '0' && c <= '9') {
+        octet = octet * 10 + (c - '0');
+
+        if (++digits > 3 || octet > 255) {
+          return NOT_FOUND;
+        }
+      } else if (c == '.' && digits > 0 && octets < 4) {
+        value = (value << 8) | octet;
+        octets++;
+        octet = 0;
+        digits = 0;
+      } else {
+        return NOT_FOUND;
+      }
+    }
+
+    return octets == 4 ? value : NOT_FOUND;
+  }
+
+  /**
+   * Parses IPv6 text, including {@code ::} compression and a trailing dotted-quad, into the key
+   *
+   * @return Whether the text is a valid address; the key is left unchanged if not
+   */
+  private static boolean parseIpv6(CharSequence address, int start, int end, RateLimitKey key) {
+    // Groups before "::" accumulate in head, groups after it in tail
+    long headHigh = 0;
+    long headLow = 0;
+    long tailHigh = 0;
+    long tailLow = 0;
+    int headGroups = 0;
+    int tailGroups = 0;
+    boolean compressed = false;
+    int i = start;
+
+    if (end - start >= 2 && address.charAt(start) == ':' && address.charAt(start + 1) == ':') {
+      compressed = true;
+      i += 2;
+    } else if (start < end && address.charAt(start) == ':') {
+      return false;
+    }
+
+    while (i < end) {
+      int groupEnd = i;
+
+      while (groupEnd < end && address.charAt(groupEnd) != ':') {
+        groupEnd++;
+      }
+
+      long group;
+      int width;
+
+      if (groupEnd == end && indexOf(address, '.', i, end) != NOT_FOUND) {
+        // Trailing IPv4 part such as ::ffff:192.0.2.1 counts as two groups
+        group = parseIpv4(address, i, end);
+        width = 2;
+      } else {
+        group = parseHexGroup(address, i, groupEnd);
+        width = 1;
+      }
+
+      if (group == NOT_FOUND) {
+        return false;
+      }
+
+      for (int shift = 16 * (width - 1); shift >= 0; shift -= 16) {
+        long bits = (group >>> shift) & 0xFFFF;
+
+        if (compressed) {
+          tailHigh = (tailHigh << 16) | (tailLow >>> 48);
+          tailLow = (tailLow << 16) | bits;
+          tailGroups++;
+        } else {
+          headHigh = (headHigh << 16) | (headLow >>> 48);
+          headLow = (headLow << 16) | bits;
+          headGroups++;
+        }
+      }
+
+      if (groupEnd == end) {
+        break;
+      }
+
+      // Skip the separator; a second colon right after it marks the compressed run
+      i = groupEnd + 1;
+
+      if (i < end && address.charAt(i) == ':') {
+        if (compressed) {
+          return false;
+        }
+
+        compressed = true;
+        i++;
+      } else if (i == end) {
+        return false;
+      }
+    }
+
+    int groups = headGroups + tailGroups;
+
+    if (groups > 8 || (!compressed && groups != 8) || (compressed && groups == 8)) {
+      return false;
+    }
+
+    // Move the head groups to the top; the compressed run fills the gap with zeros
+    int headShift = 16 * (8 - headGroups);
+
+    if (headShift == 128) {
+      headHigh = 0;
+      headLow = 0;
+    } else if (headShift >= 64) {
+      headHigh = headLow << (headShift - 64);
+      headLow = 0;
+    } else if (headShift > 0) {
+      headHigh = (headHigh << headShift) | (headLow >>> (64 - headShift));
+      headLow = headLow << headShift;
+    }
+
+    key.set(headHigh | tailHigh, headLow | tailLow);
+
+    return true;
+  }
+
+  private static long parseHexGroup(CharSequence address, int start, int end) {
+    if (start == end || end - start > 4) {
+      return NOT_FOUND;
+    }
+
+    long value = 0;
+
+    for (int i = start; i < end; i++) {
+      int digit = Character.digit(address.charAt(i), 16);
+
+      if (digit < 0) {
+        return NOT_FOUND;
+      }
+
+      value = (value << 4) | digit;
+    }
+
+    return value;
+  }
+
+  /**
+   * Reads up to eight bytes big-endian into the top of a long
+   */
+  private static long readLong(byte[] bytes, int offset) {
+    long value = 0;
+    int end = Math.min(bytes.length, offset + 8);
+
+    for (int i = offset; i < end; i++) {
+      value |= (bytes[i] & 0xFFL) << (56 - 8 * (i - offset));
+    }
+
+    return value;
+  }
+
+  private static int indexOf(CharSequence value, char c, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (value.charAt(i) == c) {
+        return i;
+      }
+    }
+
+    return NOT_FOUND;
+  }
+}
@@ -0,0 +1,90 @@
+package org.example.ratelimiter;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Fixed window counter. The window starts with the first request from a key and the count resets once it
+ * has elapsed.
+ * <p>
+ * State layout: the window start in milliseconds in the upper bits and the request count in the lower
+ * {@value #COUNT_BITS} bits. The sign bit is never used, so window starts are good for ~17 years of uptime.
+ */
+@Component
+public class FixedWindowAlgorithm extends PackedStateAlgorithm {
+  private static final int COUNT_BITS = 24;
+  private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+  private static final long NANOS_PER_MILLI = 1_000_000;
+
+  @Override
+  public Algorithm type() {
+    return Algorithm.FIXED_WINDOW;
+  }
+
+  @Override
+  public long idleTimeoutNanos(RateLimitRule rule) {
+    return rule.getWindowNanos();
+  }
+
+  @Override
+  public long next(long state, RateLimitRule rule, long nowNanos) {
+    long count = state & COUNT_MASK;
+    long nowMillis = nowNanos / NANOS_PER_MILLI;
+
+    if (isExpired(state, rule, nowMillis)) {
+      // First request of a new time window
+      return (nowMillis << COUNT_BITS) | 1;
+    }
+
+    if (count >= rule.getLimit()) {
+      return REJECT;
+    }
+
+    // The counter saturates; limits this large are never reached
+    return count == COUNT_MASK ? state : state + 1;
+  }
+
+  @Override
+  public long remaining(long state, RateLimitRule rule, long nowNanos) {
+    if (isExpired(state, rule, nowNanos / NANOS_PER_MILLI)) {
+      return rule.getLimit();
+    }
+
+    return Math.max(0, rule.getLimit() - (state & COUNT_MASK));
+  }
+
+  @Override
+  public long resetNanos(long state, RateLimitRule rule, long nowNanos) {
+    if (isExpired(state, rule, nowNanos / NANOS_PER_MILLI)) {
+      return 0;
+    }
+
+    long windowEndNanos = (state >>> COUNT_BITS) * NANOS_PER_MILLI + rule.getWindowNanos();
+
+    return Math.max(0, windowEndNanos - nowNanos);
+  }
+
+  @Override
+  public long retryAfterNanos(long state, RateLimitRule rule, long nowNanos) {
+    return resetNanos(state, rule, nowNanos);
+  }
+
+  @Override
+  public long rebase(long state, RateLimitRule rule, long thenNanos, long nowNanos) {
+    if (resetNanos(state, rule, thenNanos) == 0) {
+      return 0;
+    }
+
+    long startMillis = (state >>> COUNT_BITS) + (nowNanos - thenNanos) / NANOS_PER_MILLI;
+
+    // A window that started before this clock did starts with it instead, which only lengthens it
+    return (Math.max(0, startMillis) << COUNT_BITS) | (state & COUNT_MASK);
+  }
+
+  // Helper methods
+
+  private boolean isExpired(long state, RateLimitRule rule, long nowMillis) {
+    long windowMillis = rule.getWindowNanos() / NANOS_PER_MILLI;
+
+    return (state & COUNT_MASK) == 0 || nowMillis - (state >>> COUNT_BITS) >= windowMillis;
+  }
+}
@@ -0,0 +1,54 @@
+package org.example.ratelimiter;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Generic cell rate algorithm. The only state per key is the theoretical arrival time (TAT): the time at which
+ * the key's quota would be fully restored. Each allowed request pushes it forward by one emission interval, and
+ * a request is rejected if that would put it more than a window ahead of now.
+ * <p>
+ * Because the TAT says exactly when capacity frees up, the retry-after and reset times fall out of it directly.
+ */
+@Component
+public class GcraAlgorithm extends PackedStateAlgorithm {
+
+  @Override
+  public Algorithm type() {
+    return Algorithm.GCRA;
+  }
+
+  @Override
+  public long idleTimeoutNanos(RateLimitRule rule) {
+    // The theoretical arrival time is never more than a window ahead
+    return rule.getWindowNanos();
+  }
+
+  @Override
+  public long next(long state, RateLimitRule rule, long nowNanos) {
+    long newTat = Math.max(state, nowNanos) + rule.getEmissionIntervalNanos();
+
+    return newTat - nowNanos > rule.getWindowNanos() ? REJECT : newTat;
+  }
+
+  @Override
+  public long remaining(long state, RateLimitRule rule, long nowNanos) {
+    long backlog = Math.max(0, state - nowNanos);
+
+    return Math.max(0, (rule.getWindowNanos() - backlog) / rule.getEmissionIntervalNanos());
+  }
+
+  @Override
+  public long resetNanos(long state, RateLimitRule rule, long nowNanos) {
+    return Math.max(0, state - nowNanos);
+  }
+
+  @Override
+  public long retryAfterNanos(long state, RateLimitRule rule, long nowNanos) {
+    return Math.max(0, state + rule.getEmissionIntervalNanos() - nowNanos - rule.getWindowNanos());
+  }
+
+  @Override
+  public long rebase(long state, RateLimitRule rule, long thenNanos, long nowNanos) {
+    return state > thenNanos ? state - thenNanos + nowNanos : 0;
+  }
+}
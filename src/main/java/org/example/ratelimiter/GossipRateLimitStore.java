@@ -0,0 +1,710 @@
+package org.example.ratelimiter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Store sharing fixed-window limits across replicas without a central store: every replica counts locally and
+ * gossips the counters that changed to its peers over UDP, and enforces the limit against the sum of all replicas'
+ * counts.
+ * <p>
+ * Each client's count in a window is a grow-only counter (G-counter CRDT) with one slot per replica, which only its
+ * own replica increments. Gossip carries the slots themselves rather than deltas, and merging keeps the larger of
+ * two values of a slot, so merges are idempotent and commutative: datagrams may be lost, duplicated or reordered,
+ * and the next gossip of a counter repairs them. Whenever a replica hears from a peer it does not know, such as a
+ * new or restarted one, it gossips all of its counters again, so the newcomer starts from the cluster's counts
+ * instead of zero; a restarted replica's old slot lives on in its peers' counters until the window ends. Idle
+ * replicas send an empty heartbeat every {@value #HEARTBEAT_ROUNDS} rounds so they are noticed.
+ * <p>
+ * Windows are aligned to multiples of the window length on the wall clock, so replicas agree on them as far as
+ * their clocks do. Payloads are compact: each datagram, of at most {@value #MAX_DATAGRAM_BYTES} bytes, lists the
+ * replica ids it mentions once, and each record holds the varint-coded client key, window and
+ * slots referring to that list:
+ * <pre>
+ * datagram := magic:int32 sender:int64 replicaCount:varint replicaId:int64* record*
+ * record   := high:varint low:varint ruleHash:int64 windowSeconds:varint window:varint slotCount:varint slot*
+ * slot     := replicaIndex:varint count:varint
+ * </pre>
+ * A peer's requests are seen one interval plus a network delay late, so a client spread over {@code n} replicas
+ * may exceed the limit by up to {@code n - 1} intervals' worth of its requests. Shorter intervals trade bandwidth,
+ * counted in {@link #getSentBytes()}, for accuracy. A counter keeps at most {@value #MAX_SLOTS} slots, reusing
+ * those of replicas that have fallen behind.
+ * <p>
+ * Rules are identified on the wire by a hash of their signature, and records carry the window length, so counts
+ * for rules a replica has not served yet, such as right after a restart, are kept until it does. Gossip is neither
+ * authenticated nor encrypted, so the port must only be reachable from the other replicas. Algorithms other than
+ * {@link Algorithm#FIXED_WINDOW} are decided by the local store alone.
+ */
+public class GossipRateLimitStore implements RateLimitStore, AutoCloseable {
+  private static final int MAGIC = 0x524C_4732;
+  private static final int MAX_DATAGRAM_BYTES = 1400;
+  private static final int MAX_SLOTS = 32;
+  private static final int HEARTBEAT_ROUNDS = 10;
+  private static final int COUNT_BITS = 32;
+  private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+  // Magic, sender and a replica count of up to two varint bytes
+  private static final int HEADER_BYTES = 14;
+
+  // Replicas one datagram can list
+  private static final int MAX_REPLICAS = MAX_DATAGRAM_BYTES / Long.BYTES;
+
+  // Longest record: key, window length, window and slot count as varints, the rule hash and every slot
+  private static final int MAX_RECORD_BYTES =
+    5 * Varint.MAX_BYTES + Long.BYTES + 2 * (MAX_SLOTS + 1) * Varint.MAX_BYTES;
+
+  private final DatagramChannel channel;
+  private final long nodeId = ThreadLocalRandom.current().nextLong();
+  private final long intervalNanos;
+  private final RateLimitStore localStore;
+  private final Cache<CaffeineRateLimitStore.Key, Counter> counters;
+  private final ConcurrentLinkedQueue<Counter> changed = new ConcurrentLinkedQueue<>();
+  private final Thread sender;
+  private final Thread receiver;
+  private final LongAdder sentBytes = new LongAdder();
+  private final LongAdder receivedBytes = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+
+  // Wall-clock time minus RateLimitClock time, so windows line up across replicas
+  private final long epochOffsetNanos;
+
+  // Counters are keyed on a dense index per rule signature hash, covering rules served here and ones only heard of
+  private final ConcurrentHashMap<Integer, RuleKey> ruleKeysById = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Long, RuleKey> ruleKeysByHash = new ConcurrentHashMap<>();
+  private final AtomicInteger nextRuleIndex = new AtomicInteger();
+
+  // Only touched by the sender: the datagram being assembled and the replicas its records refer to
+  private final ByteBuffer records = ByteBuffer.allocate(MAX_DATAGRAM_BYTES);
+  private final ByteBuffer record = ByteBuffer.allocate(MAX_RECORD_BYTES);
+  private final ByteBuffer datagram = ByteBuffer.allocate(MAX_DATAGRAM_BYTES);
+  private final long[] recordReplicas = new long[MAX_REPLICAS + MAX_SLOTS + 1];
+  private final long[] slotReplicas = new long[MAX_SLOTS + 1];
+  private final long[] slotCounts = new long[MAX_SLOTS + 1];
+  private int recordReplicaCount;
+  private int quietRounds;
+
+  // Only touched by the receiver. Restarted replicas come back under new ids, which are few enough to keep.
+  private final Set<Long> knownReplicas = new HashSet<>();
+  private final long[] receivedReplicas = new long[MAX_REPLICAS];
+
+  private volatile List<InetSocketAddress> peers;
+  private volatile boolean running = true;
+  private volatile boolean fullSyncRequested;
+
+  /**
+   * @param bindAddress   Address gossip is received on
+   * @param peers         Addresses of the other replicas
+   * @param intervalNanos Time between two gossip rounds
+   * @param maximumSize   Maximum number of counters, of local and peer clients together
+   * @param localStore    Store deciding the rules of other algorithms
+   * @throws UncheckedIOException If the address cannot be bound
+   */
+  public GossipRateLimitStore(InetSocketAddress bindAddress, List<InetSocketAddress> peers, long intervalNanos,
+                              long maximumSize, RateLimitStore localStore) {
+    if (intervalNanos <= 0) {
+      throw new IllegalArgumentException("Gossip interval must be positive, got " + intervalNanos);
+    }
+
+    try {
+      this.channel = DatagramChannel.open().bind(bindAddress);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot bind the gossip channel to " + bindAddress, e);
+    }
+
+    this.peers = List.copyOf(peers);
+    this.intervalNanos = intervalNanos;
+    this.localStore = localStore;
+    this.epochOffsetNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - RateLimitClock.nanoTime();
+    this.counters = Caffeine.newBuilder()
+      .maximumSize(maximumSize)
+      .expireAfter(new CaffeineRateLimitStore.IdleExpiry())
+      .build();
+    this.sender = new Thread(this::gossip, "rate-limit-gossip");
+    this.sender.setDaemon(true);
+    this.sender.start();
+    this.receiver = new Thread(this::receive, "rate-limit-gossip-receiver");
+    this.receiver.setDaemon(true);
+    this.receiver.start();
+  }
+
+  /**
+   * Parses peers written as {@code host:port} or {@code [ipv6]:port}
+   *
+   * @throws IllegalArgumentException If a peer is malformed
+   */
+  public static List<InetSocketAddress> peers(Collection<String> peers) {
+    List<InetSocketAddress> addresses = new ArrayList<>();
+
+    for (String peer : peers) {
+      if (peer == null || peer.isBlank()) {
+        continue;
+      }
+
+      String trimmed = peer.trim();
+      int colon = trimmed.lastIndexOf(':');
+      int port;
+
+      try {
+        port = colon < 0 ? -1 : Integer.parseInt(trimmed.substring(colon + 1));
+      } catch (NumberFormatException e) {
+        port = -1;
+      }
+
+      if (port < 0 || port > 0xFFFF) {
+        throw new IllegalArgumentException("Invalid gossip peer '" + peer + "', expected host:port");
+      }
+
+      String host = trimmed.substring(0, colon);
+
+      if (host.startsWith("[") && host.endsWith("]")) {
+        host = host.substring(1, host.length() - 1);
+      }
+
+      addresses.add(new InetSocketAddress(host, port));
+    }
+
+    return addresses;
+  }
+
+  @Override
+  public long tryAcquire(long clientHigh, long clientLow, RateLimitRule rule, RateLimitAlgorithm<?> algorithm,
+                         long nowNanos) {
+    if (rule.getAlgorithm() != Algorithm.FIXED_WINDOW) {
+      return localStore.tryAcquire(clientHigh, clientLow, rule, algorithm, nowNanos);
+    }
+
+    long epochNanos = nowNanos + epochOffsetNanos;
+    long window = (epochNanos / rule.getWindowNanos()) & COUNT_MASK;
+    long resetNanos = rule.getWindowNanos() - epochNanos % rule.getWindowNanos();
+    Counter counter = counter(clientHigh, clientLow, rule);
+
+    while (true) {
+      long current = counter.local.get();
+      long count = (current >>> COUNT_BITS) == window ? current & COUNT_MASK : 0;
+      long total = count + counter.peerCount(window);
+
+      if (total >= rule.getLimit()) {
+        return RateLimitDecision.rejected(resetNanos);
+      }
+
+      if (counter.local.compareAndSet(current, (window << COUNT_BITS) | (count + 1))) {
+        if (counter.queued.compareAndSet(false, true)) {
+          changed.add(counter);
+        }
+
+        return RateLimitDecision.allowed(rule.getLimit() - total - 1, resetNanos);
+      }
+    }
+  }
+
+  @Override
+  public long probe(long clientHigh, long clientLow, RateLimitRule rule, RateLimitAlgorithm<?> algorithm,
+                    long nowNanos) {
+    if (rule.getAlgorithm() != Algorithm.FIXED_WINDOW) {
+      return localStore.probe(clientHigh, clientLow, rule, algorithm, nowNanos);
+    }
+
+    // With the idle timeout counter() uses, since the read restarts it; expiring here would drop every peer's slot
+    Counter counter = counters.getIfPresent(
+      new CaffeineRateLimitStore.Key(clientHigh, clientLow, ruleKey(rule).index, 2 * rule.getWindowNanos()));
+
+    if (counter == null) {
+      return RateLimitDecision.allowed(rule.getLimit(), 0);
+    }
+
+    long epochNanos = nowNanos + epochOffsetNanos;
+    long window = (epochNanos / rule.getWindowNanos()) & COUNT_MASK;
+    long current = counter.local.get();
+    long total = ((current >>> COUNT_BITS) == window ? current & COUNT_MASK : 0) + counter.peerCount(window);
+    long resetNanos = rule.getWindowNanos() - epochNanos % rule.getWindowNanos();
+
+    return total >= rule.getLimit()
+      ? RateLimitDecision.rejected(resetNanos)
+      : RateLimitDecision.allowed(rule.getLimit() - total, resetNanos);
+  }
+
+  /**
+   * Replaces the replicas gossip is sent to, such as after a membership change
+   */
+  public void setPeers(List<InetSocketAddress> peers) {
+    this.peers = List.copyOf(peers);
+  }
+
+  /**
+   * Address gossip is received on, with the actual port if bound to port 0
+   */
+  public InetSocketAddress getLocalAddress() {
+    try {
+      return (InetSocketAddress) channel.getLocalAddress();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Number of gossip bytes sent, to all peers together
+   */
+  public long getSentBytes() {
+    return sentBytes.sum();
+  }
+
+  public long getReceivedBytes() {
+    return receivedBytes.sum();
+  }
+
+  /**
+   * Number of datagrams that failed to be sent or received, or were not gossip
+   */
+  public long getErrorCount() {
+    return errors.sum();
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    sender.interrupt();
+
+    try {
+      // Also wakes the receiver up from its blocking receive
+      channel.close();
+    } catch (IOException e) {
+      errors.increment();
+    }
+  }
+
+  // Helper methods
+
+  private Counter counter(long clientHigh, long clientLow, RateLimitRule rule) {
+    return counter(clientHigh, clientLow, ruleKey(rule), rule.getWindowNanos());
+  }
+
+  private Counter counter(long clientHigh, long clientLow, RuleKey ruleKey, long windowNanos) {
+    CaffeineRateLimitStore.Key key = new CaffeineRateLimitStore.Key(clientHigh, clientLow, ruleKey.index,
+      2 * windowNanos);
+    Counter counter = counters.getIfPresent(key);
+
+    return counter != null
+      ? counter
+      : counters.get(key, k -> new Counter(clientHigh, clientLow, ruleKey.hash, windowNanos));
+  }
+
+  private RuleKey ruleKey(RateLimitRule rule) {
+    RuleKey ruleKey = ruleKeysById.get(rule.getId());
+
+    if (ruleKey == null) {
+      String signature = rule.getSignature();
+      long hash = ClientAddress.hash(signature, 0, signature.length());
+
+      ruleKey = ruleKeysById.computeIfAbsent(rule.getId(), id -> ruleKey(hash));
+    }
+
+    return ruleKey;
+  }
+
+  private RuleKey ruleKey(long hash) {
+    return ruleKeysByHash.computeIfAbsent(hash, h -> new RuleKey(h, nextRuleIndex.getAndIncrement()));
+  }
+
+  /**
+   * Sends the changed counters every interval, or all of them once a new peer has been heard from, until closed
+   */
+  private void gossip() {
+    while (running) {
+      LockSupport.parkNanos(intervalNanos);
+
+      long nowNanos = RateLimitClock.nanoTime();
+      Counter counter;
+
+      if (fullSyncRequested) {
+        fullSyncRequested = false;
+
+        for (Counter live : counters.asMap().values()) {
+          add(live, nowNanos);
+        }
+      }
+
+      while ((counter = changed.poll()) != null) {
+        // Cleared before reading, so an increment from now on queues the counter again
+        counter.queued.set(false);
+        add(counter, nowNanos);
+      }
+
+      if (records.position() > 0 || ++quietRounds >= HEARTBEAT_ROUNDS) {
+        flush();
+      }
+    }
+  }
+
+  /**
+   * Adds a counter's slots in the current window to the datagram, sending the datagram first if they do not fit
+   */
+  private void add(Counter counter, long nowNanos) {
+    long window = (nowNanos + epochOffsetNanos) / counter.windowNanos;
+    int replicaMark = recordReplicaCount;
+
+    record.clear();
+
+    if (!encode(counter, window, record)) {
+      return;
+    }
+
+    if (HEADER_BYTES + Long.BYTES * recordReplicaCount + records.position() + record.position()
+      > MAX_DATAGRAM_BYTES) {
+      recordReplicaCount = replicaMark;
+      flush();
+      record.clear();
+      encode(counter, window, record);
+    }
+
+    records.put(record.flip());
+  }
+
+  /**
+   * Writes a counter's record, adding the replicas it refers to to the datagram's list
+   *
+   * @return Whether the counter has any count in the window
+   */
+  private boolean encode(Counter counter, long window, ByteBuffer buffer) {
+    long windowBits = window & COUNT_MASK;
+    long local = counter.local.get();
+    Slots slots = counter.peers;
+    int slotCount = 0;
+
+    // Each slot is read once, since peers may update it meanwhile
+    if ((local >>> COUNT_BITS) == windowBits && (local & COUNT_MASK) > 0) {
+      slotReplicas[slotCount] = nodeId;
+      slotCounts[slotCount++] = local & COUNT_MASK;
+    }
+
+    for (int i = 0; i < slots.replicas.length; i++) {
+      long slot = slots.counts.get(i);
+
+      if ((slot >>> COUNT_BITS) == windowBits && (slot & COUNT_MASK) > 0) {
+        slotReplicas[slotCount] = slots.replicas[i];
+        slotCounts[slotCount++] = slot & COUNT_MASK;
+      }
+    }
+
+    if (slotCount == 0) {
+      return false;
+    }
+
+    Varint.put(buffer, counter.high);
+    Varint.put(buffer, counter.low);
+    buffer.putLong(counter.ruleHash);
+    Varint.put(buffer, TimeUnit.NANOSECONDS.toSeconds(counter.windowNanos));
+    Varint.put(buffer, window);
+    Varint.put(buffer, slotCount);
+
+    for (int i = 0; i < slotCount; i++) {
+      Varint.put(buffer, recordReplicaIndex(slotReplicas[i]));
+      Varint.put(buffer, slotCounts[i]);
+    }
+
+    return true;
+  }
+
+  private int recordReplicaIndex(long replica) {
+    for (int i = 0; i < recordReplicaCount; i++) {
+      if (recordReplicas[i] == replica) {
+        return i;
+      }
+    }
+
+    recordReplicas[recordReplicaCount] = replica;
+
+    return recordReplicaCount++;
+  }
+
+  /**
+   * Sends the datagram assembled so far, or a heartbeat if it is empty, and starts the next one
+   */
+  private void flush() {
+    datagram.clear();
+    datagram.putInt(MAGIC).putLong(nodeId);
+    Varint.put(datagram, recordReplicaCount);
+
+    for (int i = 0; i < recordReplicaCount; i++) {
+      datagram.putLong(recordReplicas[i]);
+    }
+
+    datagram.put(records.flip());
+    records.clear();
+    recordReplicaCount = 0;
+    quietRounds = 0;
+    send(datagram);
+  }
+
+  private void send(ByteBuffer batch) {
+    batch.flip();
+
+    for (InetSocketAddress peer : peers) {
+      try {
+        batch.position(0);
+        sentBytes.add(channel.send(batch, peer));
+      } catch (ClosedChannelException e) {
+        return;
+      } catch (IOException e) {
+        errors.increment();
+      }
+    }
+  }
+
+  /**
+   * Merges the counters received from peers, until closed
+   */
+  private void receive() {
+    ByteBuffer batch = ByteBuffer.allocate(MAX_DATAGRAM_BYTES);
+
+    while (running) {
+      batch.clear();
+
+      try {
+        channel.receive(batch);
+      } catch (ClosedChannelException e) {
+        return;
+      } catch (IOException e) {
+        errors.increment();
+
+        continue;
+      }
+
+      batch.flip();
+      receivedBytes.add(batch.remaining());
+
+      try {
+        merge(batch);
+      } catch (IllegalArgumentException | BufferUnderflowException e) {
+        errors.increment();
+      }
+    }
+  }
+
+  /**
+   * Merges one datagram; records up to a malformed one are kept, since merging is idempotent anyway
+   *
+   * @throws IllegalArgumentException If the datagram is not gossip or malformed
+   * @throws BufferUnderflowException If the datagram is truncated
+   */
+  private void merge(ByteBuffer batch) {
+    if (batch.getInt() != MAGIC) {
+      throw new IllegalArgumentException("Not gossip");
+    }
+
+    long senderId = batch.getLong();
+
+    // Our own gossip, if we are among the peers
+    if (senderId == nodeId) {
+      return;
+    }
+
+    // A new or restarted peer, which needs every count
+    if (knownReplicas.add(senderId)) {
+      fullSyncRequested = true;
+    }
+
+    long replicaCount = Varint.get(batch);
+
+    if (replicaCount > MAX_REPLICAS) {
+      throw new IllegalArgumentException("Too many replicas: " + replicaCount);
+    }
+
+    for (int i = 0; i < replicaCount; i++) {
+      receivedReplicas[i] = batch.getLong();
+    }
+
+    while (batch.hasRemaining()) {
+      long clientHigh = Varint.get(batch);
+      long clientLow = Varint.get(batch);
+      long ruleHash = batch.getLong();
+      long windowSeconds = Varint.get(batch);
+      long window = Varint.get(batch) & COUNT_MASK;
+      long slotCount = Varint.get(batch);
+
+      if (windowSeconds == 0 || windowSeconds > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Invalid window length: " + windowSeconds);
+      }
+
+      Counter counter = counter(clientHigh, clientLow, ruleKey(ruleHash), TimeUnit.SECONDS.toNanos(windowSeconds));
+
+      for (long i = 0; i < slotCount; i++) {
+        long index = Varint.get(batch);
+        long count = Math.min(Varint.get(batch), COUNT_MASK);
+
+        if (index >= replicaCount) {
+          throw new IllegalArgumentException("Unknown replica index: " + index);
+        }
+
+        // Our own slot is ours to count; peers only ever echo older values of it
+        if (receivedReplicas[(int) index] != nodeId) {
+          counter.merge(receivedReplicas[(int) index], window, count);
+        }
+      }
+    }
+  }
+
+  /**
+   * How many windows the given one is ahead of a slot's, positive if the slot is older. Window indexes are 32 bits
+   * and compared by serial number arithmetic so they can wrap, which would put an epoch-second index past 2^31
+   * behind window 0; a slot never written is therefore checked for separately and always older.
+   */
+  private static int age(long window, long slot) {
+    return slot == 0 ? 1 : (int) (window - (slot >>> COUNT_BITS));
+  }
+
+  /**
+   * Count of one client under one rule: a G-counter of the current window with a slot per replica
+   */
+  private static final class Counter {
+    final long high;
+    final long low;
+    final long ruleHash;
+    final long windowNanos;
+    // This replica's slot: the window index, truncated, in the upper bits and the count in the lower ones
+    final AtomicLong local = new AtomicLong();
+    final AtomicBoolean queued = new AtomicBoolean();
+
+    // The other replicas' slots, laid out the same; only the receiver writes them
+    volatile Slots peers = Slots.EMPTY;
+
+    Counter(long high, long low, long ruleHash, long windowNanos) {
+      this.high = high;
+      this.low = low;
+      this.ruleHash = ruleHash;
+      this.windowNanos = windowNanos;
+    }
+
+    long peerCount(long window) {
+      Slots slots = peers;
+      long count = 0;
+
+      for (int i = 0; i < slots.replicas.length; i++) {
+        long slot = slots.counts.get(i);
+
+        count += (slot >>> COUNT_BITS) == window ? slot & COUNT_MASK : 0;
+      }
+
+      return count;
+    }
+
+    /**
+     * Merges a replica's slot: a later window replaces the slot, the same window keeps the larger count and an
+     * earlier window is ignored
+     */
+    void merge(long replica, long window, long count) {
+      Slots slots = peers;
+      int index = slots.indexOf(replica);
+
+      if (index < 0) {
+        index = slots.replicas.length < MAX_SLOTS ? slots.replicas.length : slots.staleIndex(window);
+
+        // Every slot belongs to a replica still counting in this window
+        if (index < 0) {
+          return;
+        }
+
+        slots = slots.with(index, replica);
+        peers = slots;
+      }
+
+      long slot = slots.counts.get(index);
+      int age = age(window, slot);
+
+      if (age > 0 || (age == 0 && count > (slot & COUNT_MASK))) {
+        slots.counts.set(index, (window << COUNT_BITS) | count);
+      }
+    }
+  }
+
+  /**
+   * A rule signature's hash, as sent on the wire, and its index in counter keys
+   */
+  private static final class RuleKey {
+    final long hash;
+    final int index;
+
+    RuleKey(long hash, int index) {
+      this.hash = hash;
+      this.index = index;
+    }
+  }
+
+  /**
+   * Replicas and their slots, copied on write when a replica is added
+   */
+  private static final class Slots {
+    static final Slots EMPTY = new Slots(new long[0], new AtomicLongArray(0));
+
+    final long[] replicas;
+    final AtomicLongArray counts;
+
+    Slots(long[] replicas, AtomicLongArray counts) {
+      this.replicas = replicas;
+      this.counts = counts;
+    }
+
+    int indexOf(long replica) {
+      for (int i = 0; i < replicas.length; i++) {
+        if (replicas[i] == replica) {
+          return i;
+        }
+      }
+
+      return -1;
+    }
+
+    /**
+     * A slot of an earlier window than the given one, or -1 if there is none
+     */
+    int staleIndex(long window) {
+      for (int i = 0; i < replicas.length; i++) {
+        if (age(window, counts.get(i)) > 0) {
+          return i;
+        }
+      }
+
+      return -1;
+    }
+
+    /**
+     * Copy with the given replica's empty slot at an index, either past the end or replacing a stale slot
+     */
+    Slots with(int index, long replica) {
+      long[] nextReplicas = Arrays.copyOf(replicas, Math.max(replicas.length, index + 1));
+      AtomicLongArray nextCounts = new AtomicLongArray(nextReplicas.length);
+
+      for (int i = 0; i < replicas.length; i++) {
+        nextCounts.set(i, counts.get(i));
+      }
+
+      nextReplicas[index] = replica;
+      nextCounts.set(index, 0);
+
+      return new Slots(nextReplicas, nextCounts);
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package org.example.ratelimiter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ledger kept in this JVM, with an optional simulated round-trip latency, for trying out and benchmarking
+ * {@link LeasedRateLimitStore} without a shared store. Several stores sharing one instance behave like nodes
+ * sharing a remote ledger. Windows are never removed, so it is not meant for production traffic.
+ */
+public class InMemoryQuotaLedger implements QuotaLedger {
+  private static final int USED_BITS = 32;
+  private static final long USED_MASK = (1L << USED_BITS) - 1;
+
+  // Per client and rule: the window index in the upper bits and the permits granted in it in the lower ones
+  private final ConcurrentHashMap<CaffeineRateLimitStore.Key, AtomicLong> windows = new ConcurrentHashMap<>();
+  private final Executor executor;
+  private final LongAdder leases = new LongAdder();
+
+  /**
+   * @param latencyNanos Delay before each lease is granted, or 0 to grant on the calling thread
+   */
+  public InMemoryQuotaLedger(long latencyNanos) {
+    this.executor = latencyNanos > 0
+      ? CompletableFuture.delayedExecutor(latencyNanos, TimeUnit.NANOSECONDS)
+      : Runnable::run;
+  }
+
+  @Override
+  public CompletableFuture<Grant> lease(long clientHigh, long clientLow, RateLimitRule rule, int permits) {
+    return CompletableFuture.supplyAsync(() -> grant(clientHigh, clientLow, rule, permits), executor);
+  }
+
+  /**
+   * Number of leases granted so far, i.e. round trips a remote ledger would have served
+   */
+  public long getLeaseCount() {
+    return leases.sum();
+  }
+
+  // Helper methods
+
+  private Grant grant(long clientHigh, long clientLow, RateLimitRule rule, int permits) {
+    long nowNanos = RateLimitClock.nanoTime();
+    long windowNanos = rule.getWindowNanos();
+    long window = nowNanos / windowNanos;
+    long windowBits = window & USED_MASK;
+    CaffeineRateLimitStore.Key key = new CaffeineRateLimitStore.Key(clientHigh, clientLow, rule.getId(), 0);
+    AtomicLong state = windows.computeIfAbsent(key, k -> new AtomicLong());
+
+    leases.increment();
+
+    while (true) {
+      long current = state.get();
+      long used = (current >>> USED_BITS) == windowBits ? current & USED_MASK : 0;
+      int granted = (int) Math.max(0, Math.min(permits, rule.getLimit() - used));
+
+      if (granted == 0 || state.compareAndSet(current, (windowBits << USED_BITS) | (used + granted))) {
+        return new Grant(granted, window, windowNanos - nowNanos % windowNanos, rule.getLimit() - used - granted);
+      }
+    }
+  }
+}
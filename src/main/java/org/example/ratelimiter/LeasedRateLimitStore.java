@@ -0,0 +1,283 @@
+package org.example.ratelimiter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Store sharing fixed-window limits across replicas without a round trip per request: each replica reserves a
+ * chunk of a client's quota from a {@link QuotaLedger} and spends it locally with a lock-free decrement.
+ * <p>
+ * A chunk is {@code leaseFraction} of the limit. Once half of it is spent, the next one is reserved in the
+ * background, so a steady client never waits for the ledger; only a client without any permits in hand does, for at
+ * most the lease timeout. Once the ledger has nothing left to grant, requests are rejected locally until the window
+ * ends. The ledger never grants more than the limit per window, so replicas never admit more than the limit in
+ * total, except for the few requests a replica admits between a window ending on the ledger and its local clock.
+ * Permits still in hand when a window ends are lost, so a client spread over many replicas may be rejected up to
+ * one chunk per replica early; smaller fractions trade more leases for less of that.
+ * <p>
+ * Algorithms other than {@link Algorithm#FIXED_WINDOW} cannot be split into leases and are left to the exact store.
+ * If the ledger fails or times out, the fallback store decides and the decision is counted in
+ * {@link #getFallbackCount()}.
+ */
+public class LeasedRateLimitStore implements RateLimitStore {
+  private static final int PERMIT_BITS = 32;
+  private static final long PERMIT_MASK = (1L << PERMIT_BITS) - 1;
+
+  private final QuotaLedger ledger;
+  private final double leaseFraction;
+  private final long leaseTimeoutNanos;
+  private final RateLimitStore exactStore;
+  private final RateLimitStore fallback;
+  private final Cache<CaffeineRateLimitStore.Key, Lease> leases;
+  private final LongAdder leaseCount = new LongAdder();
+  private final LongAdder fallbacks = new LongAdder();
+
+  /**
+   * @param leaseFraction     Share of the limit reserved per lease, in (0, 1]
+   * @param leaseTimeoutNanos How long a request without permits waits for a lease before the fallback decides
+   * @param maximumSize       Maximum number of clients with leases in hand
+   * @param exactStore        Store deciding the rules of other algorithms
+   * @param fallback          Store deciding while the ledger is unavailable
+   */
+  public LeasedRateLimitStore(QuotaLedger ledger, double leaseFraction, long leaseTimeoutNanos, long maximumSize,
+                              RateLimitStore exactStore, RateLimitStore fallback) {
+    if (!(leaseFraction > 0 && leaseFraction <= 1)) {
+      throw new IllegalArgumentException("The lease fraction must be in (0, 1]: " + leaseFraction);
+    }
+
+    this.ledger = ledger;
+    this.leaseFraction = leaseFraction;
+    this.leaseTimeoutNanos = leaseTimeoutNanos;
+    this.exactStore = exactStore;
+    this.fallback = fallback;
+    this.leases = Caffeine.newBuilder()
+      .maximumSize(maximumSize)
+      .expireAfter(new CaffeineRateLimitStore.IdleExpiry())
+      .build();
+  }
+
+  @Override
+  public long tryAcquire(long clientHigh, long clientLow, RateLimitRule rule, RateLimitAlgorithm<?> algorithm,
+                         long nowNanos) {
+    if (rule.getAlgorithm() != Algorithm.FIXED_WINDOW) {
+      return exactStore.tryAcquire(clientHigh, clientLow, rule, algorithm, nowNanos);
+    }
+
+    CaffeineRateLimitStore.Key key = new CaffeineRateLimitStore.Key(clientHigh, clientLow, rule.getId(),
+      algorithm.idleTimeoutNanos(rule));
+    Lease lease = leases.get(key, k -> new Lease());
+    int chunk = chunk(rule);
+
+    while (true) {
+      long permits = lease.take(nowNanos);
+
+      if (permits >= 0) {
+        // Reserve the next chunk while this one still lasts, unless the ledger is known to be empty
+        if (permits <= chunk / 2 && lease.ledgerRemaining > 0) {
+          renew(lease, clientHigh, clientLow, rule, chunk);
+        }
+
+        return RateLimitDecision.allowed(permits + lease.ledgerRemaining, lease.windowEndNanos - nowNanos);
+      }
+
+      if (nowNanos < lease.exhaustedUntilNanos) {
+        return RateLimitDecision.rejected(lease.exhaustedUntilNanos - nowNanos);
+      }
+
+      if (!await(renew(lease, clientHigh, clientLow, rule, chunk))) {
+        fallbacks.increment();
+
+        return fallback.tryAcquire(clientHigh, clientLow, rule, algorithm, nowNanos);
+      }
+
+      // The lease may have taken a while; decide on the time it arrived
+      nowNanos = Math.max(nowNanos, RateLimitClock.nanoTime());
+    }
+  }
+
+  @Override
+  public long probe(long clientHigh, long clientLow, RateLimitRule rule, RateLimitAlgorithm<?> algorithm,
+                    long nowNanos) {
+    if (rule.getAlgorithm() != Algorithm.FIXED_WINDOW) {
+      return exactStore.probe(clientHigh, clientLow, rule, algorithm, nowNanos);
+    }
+
+    // With the same idle timeout as tryAcquire, since the read restarts it; a lease expired early loses its permits
+    CaffeineRateLimitStore.Key key = new CaffeineRateLimitStore.Key(clientHigh, clientLow, rule.getId(),
+      algorithm.idleTimeoutNanos(rule));
+    Lease lease = leases.getIfPresent(key);
+
+    if (lease == null || nowNanos >= Math.max(lease.windowEndNanos, lease.exhaustedUntilNanos)) {
+      return RateLimitDecision.allowed(rule.getLimit(), 0);
+    }
+
+    if (nowNanos < lease.exhaustedUntilNanos) {
+      return RateLimitDecision.rejected(lease.exhaustedUntilNanos - nowNanos);
+    }
+
+    return RateLimitDecision.allowed((lease.state.get() & PERMIT_MASK) + lease.ledgerRemaining,
+      lease.windowEndNanos - nowNanos);
+  }
+
+  /**
+   * A client with no permits in hand waits for a lease, and other algorithms make a round trip each
+   */
+  @Override
+  public boolean isBlocking() {
+    return true;
+  }
+
+  /**
+   * Number of leases requested from the ledger
+   */
+  public long getLeaseCount() {
+    return leaseCount.sum();
+  }
+
+  /**
+   * Number of decisions made by the fallback store because the ledger failed or timed out
+   */
+  public long getFallbackCount() {
+    return fallbacks.sum();
+  }
+
+  // Helper methods
+
+  private int chunk(RateLimitRule rule) {
+    return (int) Math.max(1, Math.ceil(rule.getLimit() * leaseFraction));
+  }
+
+  /**
+   * Starts reserving a chunk unless a lease is already on its way
+   *
+   * @return The lease on its way
+   */
+  private CompletableFuture<QuotaLedger.Grant> renew(Lease lease, long clientHigh, long clientLow,
+                                                     RateLimitRule rule, int chunk) {
+    CompletableFuture<QuotaLedger.Grant> started = new CompletableFuture<>();
+    CompletableFuture<QuotaLedger.Grant> pending = lease.pending.compareAndExchange(null, started);
+
+    if (pending != null) {
+      return pending;
+    }
+
+    leaseCount.increment();
+
+    try {
+      ledger.lease(clientHigh, clientLow, rule, chunk).whenComplete((grant, error) -> {
+        if (grant != null) {
+          lease.apply(grant, RateLimitClock.nanoTime());
+        }
+
+        // Cleared first, so a waiter finding the grant already spent can reserve the next one
+        lease.pending.set(null);
+
+        if (error != null) {
+          started.completeExceptionally(error);
+        } else {
+          started.complete(grant);
+        }
+      });
+    } catch (RuntimeException e) {
+      lease.pending.set(null);
+      started.completeExceptionally(e);
+    }
+
+    return started;
+  }
+
+  /**
+   * Waits for a lease to be applied
+   *
+   * @return Whether it was, false if the ledger failed or timed out
+   */
+  private boolean await(CompletableFuture<QuotaLedger.Grant> pending) {
+    try {
+      pending.get(leaseTimeoutNanos, TimeUnit.NANOSECONDS);
+
+      return true;
+    } catch (ExecutionException | TimeoutException e) {
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+
+      return false;
+    }
+  }
+
+  /**
+   * Permits a replica holds for one client and rule
+   */
+  private static final class Lease {
+    // The ledger window's index, truncated, in the upper bits and the permits in hand in the lower ones
+    final AtomicLong state = new AtomicLong();
+    final AtomicReference<CompletableFuture<QuotaLedger.Grant>> pending = new AtomicReference<>();
+    volatile long windowEndNanos;
+    volatile long exhaustedUntilNanos;
+    volatile long ledgerRemaining;
+
+    /**
+     * Takes a permit of the current window
+     *
+     * @return The permits left after taking one, or -1 if there was none
+     */
+    long take(long nowNanos) {
+      while (true) {
+        long current = state.get();
+
+        if ((current & PERMIT_MASK) == 0 || nowNanos >= windowEndNanos) {
+          return -1;
+        }
+
+        if (state.compareAndSet(current, current - 1)) {
+          return (current & PERMIT_MASK) - 1;
+        }
+      }
+    }
+
+    /**
+     * Adds granted permits to those of the same window, replaces those of an earlier one and ignores late grants
+     * of an earlier window
+     */
+    void apply(QuotaLedger.Grant grant, long nowNanos) {
+      long window = grant.getWindow() & PERMIT_MASK;
+      long windowEnd = nowNanos + grant.getWindowRemainingNanos();
+
+      while (true) {
+        long current = state.get();
+        // Windows wrap at 32 bits and compare by serial number arithmetic, so a state never granted anything,
+        // at window 0, is checked for separately: an epoch index past 2^31 would otherwise count as older
+        int age = current == 0 ? 1 : (int) (window - (current >>> PERMIT_BITS));
+
+        if (age < 0) {
+          return;
+        }
+
+        // Published before the permits, so no thread sees them with the previous window's end
+        if (age > 0 || windowEnd > windowEndNanos) {
+          windowEndNanos = windowEnd;
+        }
+
+        long permits = (age == 0 ? current & PERMIT_MASK : 0) + grant.getPermits();
+
+        if (state.compareAndSet(current, (window << PERMIT_BITS) | Math.min(permits, PERMIT_MASK))) {
+          break;
+        }
+      }
+
+      ledgerRemaining = grant.getRemaining();
+
+      if (grant.getPermits() == 0) {
+        exhaustedUntilNanos = windowEnd;
+      }
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package org.example.ratelimiter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file mapped into memory in chunks of {@value #CHUNK_BYTES} bytes, since a single mapping cannot exceed 2 GB.
+ * Longs are read and written in bulk through little-endian {@link java.nio.LongBuffer} views rather than one at a
+ * time. A chunk is a multiple of eight bytes, so an aligned long never straddles two chunks.
+ */
+final class MappedFile {
+  private static final int CHUNK_SHIFT = 30;
+  private static final int CHUNK_BYTES = 1 << CHUNK_SHIFT;
+  private static final long CHUNK_MASK = CHUNK_BYTES - 1;
+
+  private final MappedByteBuffer[] chunks;
+
+  private MappedFile(MappedByteBuffer[] chunks) {
+    this.chunks = chunks;
+  }
+
+  /**
+   * Maps the first {@code size} bytes of a file, growing it if it is shorter and the mode allows writing
+   */
+  static MappedFile map(FileChannel channel, FileChannel.MapMode mode, long size) throws IOException {
+    MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_SHIFT)];
+
+    for (int i = 0; i < chunks.length; i++) {
+      long position = (long) i << CHUNK_SHIFT;
+
+      chunks[i] = channel.map(mode, position, Math.min(CHUNK_BYTES, size - position));
+      chunks[i].order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    return new MappedFile(chunks);
+  }
+
+  /**
+   * The first chunk as a little-endian buffer positioned at the start of the file, for reading or writing a header
+   */
+  ByteBuffer head() {
+    return chunks[0].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  void getLongs(long position, long[] longs, int length) {
+    int done = 0;
+
+    while (done < length) {
+      int count = count(position, length - done);
+
+      chunk(position, count).asLongBuffer().get(longs, done, count);
+      done += count;
+      position += (long) count * Long.BYTES;
+    }
+  }
+
+  void putLongs(long position, long[] longs, int length) {
+    int done = 0;
+
+    while (done < length) {
+      int count = count(position, length - done);
+
+      chunk(position, count).asLongBuffer().put(longs, done, count);
+      done += count;
+      position += (long) count * Long.BYTES;
+    }
+  }
+
+  /**
+   * Writes the mapped contents to the storage device
+   */
+  void force() {
+    for (MappedByteBuffer chunk : chunks) {
+      chunk.force();
+    }
+  }
+
+  // Helper methods
+
+  /**
+   * How many of the given number of longs from a position lie in the position's chunk
+   */
+  private int count(long position, int length) {
+    int remaining = chunks[(int) (position >>> CHUNK_SHIFT)].capacity() - (int) (position & CHUNK_MASK);
+
+    return Math.min(length, remaining / Long.BYTES);
+  }
+
+  private ByteBuffer chunk(long position, int count) {
+    return chunks[(int) (position >>> CHUNK_SHIFT)].slice((int) (position & CHUNK_MASK), count * Long.BYTES)
+      .order(ByteOrder.LITTLE_ENDIAN);
+  }
+}
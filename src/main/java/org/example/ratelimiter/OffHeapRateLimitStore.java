@@ -0,0 +1,819 @@
+package org.example.ratelimiter;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Store for tens of millions of clients without GC pressure. State lives off-heap in an open-addressing table of
+ * primitive longs, so a decision allocates nothing and the heap holds no per-client objects.
+ * <p>
+ * Each slot is four longs: a tag (0 when empty, {@value #TOMBSTONE} once reclaimed, otherwise the rule id plus one),
+ * the two halves of the client key, and the packed algorithm state. Lookups and state updates are lock-free;
+ * inserting a new client takes a lock so two threads can never claim different slots for the same key.
+ * Only {@link PackedStateAlgorithm}s fit in a slot, other algorithms are handed to the fallback store.
+ * <p>
+ * Every occupied slot has one entry on a {@link TimingWheel}, which reclaims it once its state has its full quota
+ * again. Requests never pay for cleanup. A request racing the reclaim of its own idle slot checks the slot still
+ * holds its key once it has decided, and decides again on a new slot if not. Should another key have claimed the
+ * slot in between with an equal state, the request's update is undone, unless that key has already updated the
+ * state on top of it and so is charged one request too many.
+ * <p>
+ * Reclaimed slots become tombstones so the probe chains running through them stay intact. A run of tombstones
+ * followed by an empty slot lies on no chain, so it is emptied again, and lookups of absent keys under client churn
+ * stop there instead of walking all {@value #MAX_PROBES} probes.
+ * <p>
+ * If a key finds no free slot within {@value #MAX_PROBES} probes the request is allowed and counted in
+ * {@link #getOverflowCount()}, the same fail-open behavior the service has without a cache.
+ * <p>
+ * The table can be written to a file with {@link #snapshot(Path)} and read back into a new JVM with
+ * {@link #restore(Path, Collection)}, so a restart does not hand every client a fresh quota. The file holds the
+ * rules' parameters followed by each rule's live entries as {@code high, low, state} little-endian longs, which
+ * both sides copy in bulk through memory-mapped buffers. Timestamps in restored states are moved onto the new
+ * JVM's clock, with the time the process was down counted as elapsed.
+ */
+public class OffHeapRateLimitStore implements RateLimitStore, AutoCloseable {
+  private static final int MAX_PROBES = 32;
+  private static final long EMPTY = 0;
+  private static final long TOMBSTONE = -1;
+  private static final long WHEEL_TICK_NANOS = 100_000_000;
+  private static final int SLOT_BYTES = 32;
+  private static final int HIGH_OFFSET = 8;
+  private static final int LOW_OFFSET = 16;
+  private static final int STATE_OFFSET = 24;
+
+  private static final long SNAPSHOT_MAGIC = 0x5241_5445_4C49_4D31L;
+  private static final int SNAPSHOT_VERSION = 1;
+  private static final int SNAPSHOT_HEADER_BYTES = 32;
+
+  // Fixed part of a rule's header entry, ahead of its algorithm name and scope
+  private static final int SNAPSHOT_RULE_BYTES = 40;
+  private static final int ENTRY_LONGS = 3;
+
+  // Entries copied per bulk read or write, and inserted per hold of the insert lock on restore
+  private static final int SNAPSHOT_BLOCK_ENTRIES = 4096;
+
+  // Slots per direct buffer; a single ByteBuffer cannot exceed 2 GB
+  private static final int SEGMENT_SHIFT = 24;
+  private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+  private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+  private final ByteBuffer[] segments;
+  private final long mask;
+  private final RateLimitStore fallback;
+  private final ReentrantLock insertLock = new ReentrantLock();
+  private final LongAdder size = new LongAdder();
+  private final LongAdder overflows = new LongAdder();
+  private final LongAdder tombstones = new LongAdder();
+  private final TimingWheel timingWheel;
+  private final ReentrantLock snapshotLock = new ReentrantLock();
+  private final LongAdder snapshotFailures = new LongAdder();
+
+  // Set by enableSnapshots
+  private volatile Path snapshotPath;
+  private volatile Thread snapshotter;
+  private volatile boolean running = true;
+
+  // Rules and algorithms by rule id, so the timing wheel can judge a slot from its tag alone.
+  // Copied on write under the insert lock.
+  private volatile RateLimitRule[] rules = new RateLimitRule[0];
+  private volatile PackedStateAlgorithm[] algorithms = new PackedStateAlgorithm[0];
+
+  /**
+   * @param capacity Number of slots, rounded up to a power of two
+   * @param fallback Store for algorithms whose state does not fit in a single long
+   */
+  public OffHeapRateLimitStore(long capacity, RateLimitStore fallback) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Off-heap store capacity must be positive, got " + capacity);
+    }
+
+    long slots = Long.highestOneBit(capacity - 1) << 1;
+    slots = Math.max(slots, 1);
+
+    int segmentCount = (int) ((slots + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+    int slotsPerSegment = (int) Math.min(slots, 1L << SEGMENT_SHIFT);
+
+    this.segments = new ByteBuffer[segmentCount];
+    this.mask = slots - 1;
+    this.fallback = fallback;
+
+    for (int i = 0; i < segmentCount; i++) {
+      segments[i] = ByteBuffer.allocateDirect(slotsPerSegment * SLOT_BYTES).order(ByteOrder.nativeOrder());
+    }
+
+    this.timingWheel = new TimingWheel(WHEEL_TICK_NANOS, RateLimitClock.nanoTime(), this::reclaimIfIdle);
+    this.timingWheel.start();
+  }
+
+  @Override
+  public long tryAcquire(long clientHigh, long clientLow, RateLimitRule rule, RateLimitAlgorithm<?> algorithm,
+                         long nowNanos) {
+    if (!(algorithm instanceof PackedStateAlgorithm packed)) {
+      return fallback.tryAcquire(clientHigh, clientLow, rule, algorithm, nowNanos);
+    }
+
+    long tag = rule.getId() + 1L;
+    long slot = findOrInsert(clientHigh, clientLow, rule, packed, nowNanos);
+
+    while (true) {
+      if (slot < 0) {
+        overflows.increment();
+
+        return RateLimitDecision.allowed(rule.getLimit(), 0);
+      }
+
+      ByteBuffer segment = segment(slot);
+      int stateOffset = offset(slot) + STATE_OFFSET;
+      long current = (long) LONGS.getVolatile(segment, stateOffset);
+      long next = packed.next(current, rule, nowNanos);
+      boolean writes = next != PackedStateAlgorithm.REJECT && next != current;
+
+      if (writes && !LONGS.compareAndSet(segment, stateOffset, current, next)) {
+        // Lost a race; if the slot was reclaimed in the meantime, look the key up again
+        if (!owns(slot, tag, clientHigh, clientLow)) {
+          slot = findOrInsert(clientHigh, clientLow, rule, packed, nowNanos);
+        }
+
+        continue;
+      }
+
+      // The slot may have been reclaimed and claimed by another key since the lookup, with a state equal to the
+      // one read here. The decision was then made on that key's state: undo the write and decide again.
+      if (!owns(slot, tag, clientHigh, clientLow)) {
+        if (writes) {
+          LONGS.compareAndSet(segment, stateOffset, next, current);
+        }
+
+        slot = findOrInsert(clientHigh, clientLow, rule, packed, nowNanos);
+
+        continue;
+      }
+
+      if (next == PackedStateAlgorithm.REJECT) {
+        return RateLimitDecision.rejected(packed.retryAfterNanos(current, rule, nowNanos));
+      }
+
+      return RateLimitDecision.allowed(packed.remaining(next, rule, nowNanos), packed.resetNanos(next, rule, nowNanos));
+    }
+  }
+
+  @Override
+  public long probe(long clientHigh, long clientLow, RateLimitRule rule, RateLimitAlgorithm<?> algorithm,
+                    long nowNanos) {
+    if (!(algorithm instanceof PackedStateAlgorithm packed)) {
+      return fallback.probe(clientHigh, clientLow, rule, algorithm, nowNanos);
+    }
+
+    long slot = find(clientHigh, clientLow, rule.getId());
+
+    if (slot < 0) {
+      return RateLimitDecision.allowed(rule.getLimit(), 0);
+    }
+
+    long state = (long) LONGS.getVolatile(segment(slot), offset(slot) + STATE_OFFSET);
+
+    return packed.decide(state, rule, nowNanos);
+  }
+
+  /**
+   * Number of slots in the table
+   */
+  public long getCapacity() {
+    return mask + 1;
+  }
+
+  /**
+   * Number of occupied slots
+   */
+  public long getSize() {
+    return size.sum();
+  }
+
+  /**
+   * Number of requests allowed unchecked because their key found no free slot
+   */
+  public long getOverflowCount() {
+    return overflows.sum();
+  }
+
+  /**
+   * Number of reclaimed slots not yet emptied or reused
+   */
+  public long getTombstoneCount() {
+    return tombstones.sum();
+  }
+
+  /**
+   * The wheel reclaiming idle slots, for its occupancy and expiry metrics
+   */
+  public TimingWheel getTimingWheel() {
+    return timingWheel;
+  }
+
+  /**
+   * Number of snapshots that failed to be read at startup or written since
+   */
+  public long getSnapshotFailureCount() {
+    return snapshotFailures.sum();
+  }
+
+  /**
+   * Writes every live entry to a file, replacing it atomically once complete. Requests carry on meanwhile, so
+   * an entry updated during the snapshot is saved in either its old or its new state.
+   *
+   * @return Number of entries written
+   */
+  public long snapshot(Path path) throws IOException {
+    snapshotLock.lock();
+
+    try {
+      RateLimitRule[] rules = this.rules;
+      long[] counts = new long[rules.length];
+
+      for (long slot = 0; slot <= mask; slot++) {
+        long tag = tagAt(slot);
+
+        if (tag > 0 && tag <= rules.length) {
+          counts[(int) (tag - 1)]++;
+        }
+      }
+
+      byte[][] names = new byte[rules.length][];
+      byte[][] scopes = new byte[rules.length][];
+      long[] offsets = new long[rules.length];
+      long position = SNAPSHOT_HEADER_BYTES;
+
+      for (int id = 0; id < rules.length; id++) {
+        if (counts[id] > 0) {
+          names[id] = rules[id].getAlgorithm().name().getBytes(StandardCharsets.UTF_8);
+          scopes[id] = rules[id].getScope() == null ? null : rules[id].getScope().getBytes(StandardCharsets.UTF_8);
+          position += SNAPSHOT_RULE_BYTES + names[id].length + (scopes[id] == null ? 0 : scopes[id].length);
+        }
+      }
+
+      // Entries start on a long boundary so each chunk of the mapping holds whole longs
+      position = (position + Long.BYTES - 1) & -Long.BYTES;
+
+      for (int id = 0; id < rules.length; id++) {
+        offsets[id] = position;
+        position += counts[id] * ENTRY_LONGS * Long.BYTES;
+      }
+
+      Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+      long total = 0;
+
+      try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        MappedFile file = MappedFile.map(channel, FileChannel.MapMode.READ_WRITE, position);
+        long[] saved = writeEntries(file, rules, counts, offsets);
+        ByteBuffer header = file.head();
+        int ruleCount = 0;
+
+        for (int id = 0; id < rules.length; id++) {
+          ruleCount += counts[id] > 0 ? 1 : 0;
+        }
+
+        header.putLong(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(ruleCount)
+          .putLong(TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis())).putLong(RateLimitClock.nanoTime());
+
+        for (int id = 0; id < rules.length; id++) {
+          if (counts[id] == 0) {
+            continue;
+          }
+
+          RateLimitRule rule = rules[id];
+
+          header.putInt(rule.getLimit()).putInt(rule.getTimeWindowSeconds()).putDouble(rule.getRefillPerSecond())
+            .putLong(offsets[id]).putLong(saved[id]).putInt(names[id].length).put(names[id])
+            .putInt(scopes[id] == null ? -1 : scopes[id].length);
+
+          if (scopes[id] != null) {
+            header.put(scopes[id]);
+          }
+
+          total += saved[id];
+        }
+
+        file.force();
+      }
+
+      Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+      return total;
+    } finally {
+      snapshotLock.unlock();
+    }
+  }
+
+  /**
+   * Reads a snapshot into the table. Entries whose quota has refilled since are skipped, as are rules whose
+   * algorithm is not among the given ones, and keys already in the table keep their current state.
+   *
+   * @param algorithms The algorithms requests will use; only {@link PackedStateAlgorithm}s are restored
+   * @return Number of entries restored
+   * @throws IOException If the file cannot be read or is not a valid snapshot, in which case nothing is restored
+   */
+  public long restore(Path path, Collection<? extends RateLimitAlgorithm<?>> algorithms) throws IOException {
+    Map<Algorithm, PackedStateAlgorithm> packedByType = new EnumMap<>(Algorithm.class);
+
+    for (RateLimitAlgorithm<?> algorithm : algorithms) {
+      if (algorithm instanceof PackedStateAlgorithm packed) {
+        packedByType.put(packed.type(), packed);
+      }
+    }
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+
+      if (fileSize < SNAPSHOT_HEADER_BYTES) {
+        throw new IOException("Truncated rate limit snapshot " + path);
+      }
+
+      MappedFile file = MappedFile.map(channel, FileChannel.MapMode.READ_ONLY, fileSize);
+      ByteBuffer header = file.head();
+
+      if (header.getLong() != SNAPSHOT_MAGIC || header.getInt() != SNAPSHOT_VERSION) {
+        throw new IOException("Not a rate limit snapshot: " + path);
+      }
+
+      int ruleCount = header.getInt();
+      long savedWallNanos = header.getLong();
+      long savedClockNanos = header.getLong();
+
+      if (ruleCount < 0 || ruleCount > (fileSize - SNAPSHOT_HEADER_BYTES) / SNAPSHOT_RULE_BYTES) {
+        throw new IOException("Corrupt rate limit snapshot " + path);
+      }
+
+      // Every rule header is checked before any entry is inserted, so a corrupt file leaves the table empty
+      RateLimitRule[] rules = new RateLimitRule[ruleCount];
+      PackedStateAlgorithm[] ruleAlgorithms = new PackedStateAlgorithm[ruleCount];
+      long[] offsets = new long[ruleCount];
+      long[] counts = new long[ruleCount];
+
+      for (int i = 0; i < ruleCount; i++) {
+        int limit = header.getInt();
+        int windowSeconds = header.getInt();
+        double refillPerSecond = header.getDouble();
+        long offset = header.getLong();
+        long count = header.getLong();
+        String name = readString(header);
+        String scope = readString(header);
+
+        // Divided rather than multiplied, so a corrupt count cannot overflow past the check
+        if (offset < 0 || offset > fileSize || count < 0 || count > (fileSize - offset) / (ENTRY_LONGS * Long.BYTES)) {
+          throw new IOException("Truncated rate limit snapshot " + path);
+        }
+
+        PackedStateAlgorithm algorithm = packedByType.get(algorithmNamed(name));
+
+        if (algorithm != null) {
+          rules[i] = new RateLimitRule(limit, windowSeconds, algorithm.type(), refillPerSecond, scope);
+          ruleAlgorithms[i] = algorithm;
+          offsets[i] = offset;
+          counts[i] = count;
+        }
+      }
+
+      long nowNanos = RateLimitClock.nanoTime();
+
+      // What the saving JVM's clock would read now; a wall clock stepped back counts as no downtime
+      long wallNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+      long thenNanos = savedClockNanos + Math.max(0, wallNanos - savedWallNanos);
+      long[] block = new long[SNAPSHOT_BLOCK_ENTRIES * ENTRY_LONGS];
+      long restored = 0;
+
+      for (int i = 0; i < ruleCount; i++) {
+        for (long done = 0; done < counts[i]; done += SNAPSHOT_BLOCK_ENTRIES) {
+          int entries = (int) Math.min(SNAPSHOT_BLOCK_ENTRIES, counts[i] - done);
+
+          file.getLongs(offsets[i] + done * ENTRY_LONGS * Long.BYTES, block, entries * ENTRY_LONGS);
+          restored += restoreBlock(block, entries, rules[i], ruleAlgorithms[i], thenNanos, nowNanos);
+        }
+      }
+
+      return restored;
+    } catch (RuntimeException e) {
+      // Whatever a corrupt file trips over, such as a buffer underflow or an invalid rule, fails the restore alone
+      throw new IOException("Corrupt rate limit snapshot " + path, e);
+    }
+  }
+
+  /**
+   * Restores the snapshot at the given path if there is one, then saves the table there periodically and once
+   * more on {@link #close()}. A snapshot that cannot be read is counted in {@link #getSnapshotFailureCount()} and
+   * the store starts empty, as failed saves are counted and retried at the next interval.
+   *
+   * @param algorithms The algorithms requests will use, see {@link #restore(Path, Collection)}
+   * @return Number of entries restored
+   */
+  public long enableSnapshots(Path path, long intervalNanos, Collection<? extends RateLimitAlgorithm<?>> algorithms) {
+    if (intervalNanos <= 0) {
+      throw new IllegalArgumentException("Snapshot interval must be positive, got " + intervalNanos);
+    }
+
+    if (snapshotPath != null) {
+      throw new IllegalStateException("Snapshots are already enabled to " + snapshotPath);
+    }
+
+    long restored = 0;
+
+    try {
+      restored = Files.exists(path) ? restore(path, algorithms) : 0;
+    } catch (IOException e) {
+      snapshotFailures.increment();
+    }
+
+    Thread thread = new Thread(() -> saveEvery(path, intervalNanos), "rate-limit-snapshot");
+
+    thread.setDaemon(true);
+    snapshotPath = path;
+    snapshotter = thread;
+    thread.start();
+
+    return restored;
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    timingWheel.close();
+
+    Thread thread = snapshotter;
+
+    if (thread != null) {
+      thread.interrupt();
+      save(snapshotPath);
+    }
+  }
+
+  // Helper methods
+
+  private long find(long high, long low, int ruleId) {
+    long tag = ruleId + 1L;
+    long hash = RateLimitStore.hash(high, low, ruleId);
+
+    for (int probe = 0; probe < MAX_PROBES; probe++) {
+      long slot = (hash + probe) & mask;
+      long slotTag = tagAt(slot);
+
+      // Keys are only ever inserted before the first empty slot; tombstones keep the chain intact
+      if (slotTag == EMPTY) {
+        return -1;
+      }
+
+      if (slotTag == tag && matches(slot, high, low)) {
+        return slot;
+      }
+    }
+
+    return -1;
+  }
+
+  private long findOrInsert(long high, long low, RateLimitRule rule, PackedStateAlgorithm algorithm, long nowNanos) {
+    long slot = find(high, low, rule.getId());
+
+    if (slot >= 0) {
+      return slot;
+    }
+
+    insertLock.lock();
+
+    try {
+      // Inserted by another thread since our lock-free lookup
+      slot = find(high, low, rule.getId());
+
+      if (slot >= 0) {
+        return slot;
+      }
+
+      slot = claimLocked(high, low, rule, algorithm, 0);
+
+      if (slot >= 0) {
+        size.increment();
+
+        // The first request lands right after this, so its state is idle one timeout from now at the earliest
+        timingWheel.schedule(slot, nowNanos + algorithm.idleTimeoutNanos(rule));
+      }
+
+      return slot;
+    } finally {
+      insertLock.unlock();
+    }
+  }
+
+  /**
+   * Claims the first free slot on the probe sequence of a key not in the table, reusing tombstones. Keys are
+   * written before the tag is published with release semantics, so a lock-free reader that sees the tag also sees
+   * the key. Callers hold the insert lock, then count the slot in the size and schedule it on the timing wheel.
+   *
+   * @return The claimed slot, or -1 if it found none free
+   */
+  private long claimLocked(long high, long low, RateLimitRule rule, PackedStateAlgorithm algorithm, long state) {
+    long hash = RateLimitStore.hash(high, low, rule.getId());
+    long free = -1;
+
+    for (int probe = 0; probe < MAX_PROBES; probe++) {
+      long slot = (hash + probe) & mask;
+      long slotTag = tagAt(slot);
+
+      if (slotTag == TOMBSTONE && free < 0) {
+        free = slot;
+      } else if (slotTag == EMPTY) {
+        free = free < 0 ? slot : free;
+        break;
+      }
+    }
+
+    if (free < 0) {
+      return -1;
+    }
+
+    registerRule(rule, algorithm);
+
+    if (tagAt(free) == TOMBSTONE) {
+      tombstones.decrement();
+    }
+
+    ByteBuffer segment = segment(free);
+    int offset = offset(free);
+
+    // No fence per write: publishing the tag with release semantics orders all three before it
+    segment.putLong(offset + HIGH_OFFSET, high);
+    segment.putLong(offset + LOW_OFFSET, low);
+    segment.putLong(offset + STATE_OFFSET, state);
+    LONGS.setRelease(segment, offset, rule.getId() + 1L);
+
+    return free;
+  }
+
+  private void registerRule(RateLimitRule rule, PackedStateAlgorithm algorithm) {
+    int id = rule.getId();
+
+    if (id < rules.length && rules[id] != null) {
+      return;
+    }
+
+    RateLimitRule[] grownRules = Arrays.copyOf(rules, Math.max(rules.length, id + 1));
+    PackedStateAlgorithm[] grownAlgorithms = Arrays.copyOf(algorithms, grownRules.length);
+
+    grownRules[id] = rule;
+    grownAlgorithms[id] = algorithm;
+    algorithms = grownAlgorithms;
+    rules = grownRules;
+  }
+
+  /**
+   * Timing wheel callback: tombstones the slot if its state has its full quota again, otherwise asks to be
+   * called back when it will
+   */
+  private long reclaimIfIdle(long slot, long nowNanos) {
+    ByteBuffer segment = segment(slot);
+    int offset = offset(slot);
+    long tag = tagAt(slot);
+
+    if (tag == EMPTY || tag == TOMBSTONE) {
+      return TimingWheel.NO_DEADLINE;
+    }
+
+    int ruleId = (int) (tag - 1);
+    RateLimitRule rule = rules[ruleId];
+    long state = (long) LONGS.getVolatile(segment, offset + STATE_OFFSET);
+    long resetNanos = algorithms[ruleId].resetNanos(state, rule, nowNanos);
+
+    if (resetNanos > 0) {
+      return nowNanos + resetNanos;
+    }
+
+    // Only inserts turn tombstones back into live slots, and they hold the lock
+    if (LONGS.compareAndSet(segment, offset, tag, TOMBSTONE)) {
+      size.decrement();
+      tombstones.increment();
+      clearTombstones(slot);
+    }
+
+    return TimingWheel.NO_DEADLINE;
+  }
+
+  /**
+   * Empties the run of tombstones ending at the given slot if the slot after it is empty. Keys are only inserted
+   * before the first empty slot on their probe sequence, so no live key's chain runs through such a run.
+   */
+  private void clearTombstones(long slot) {
+    if (tagAt((slot + 1) & mask) != EMPTY) {
+      return;
+    }
+
+    insertLock.lock();
+
+    try {
+      // Checked again, as an insert may have claimed the empty slot or the tombstone since
+      if (tagAt((slot + 1) & mask) != EMPTY) {
+        return;
+      }
+
+      // Bounded by the capacity, in case the whole table is tombstones
+      for (long run = slot, n = 0; n <= mask && tagAt(run) == TOMBSTONE; run = (run - 1) & mask, n++) {
+        LONGS.setRelease(segment(run), offset(run), EMPTY);
+        tombstones.decrement();
+      }
+    } finally {
+      insertLock.unlock();
+    }
+  }
+
+  /**
+   * Copies each rule's live entries to its place in the file, a block at a time. Slots may change while the table
+   * is scanned, so each entry is checked against its tag again after being read, and a rule gets no more entries
+   * than it was given room for.
+   *
+   * @return Number of entries written per rule id
+   */
+  private long[] writeEntries(MappedFile file, RateLimitRule[] rules, long[] counts, long[] offsets) {
+    long[][] blocks = new long[rules.length][];
+    int[] filled = new int[rules.length];
+    long[] saved = new long[rules.length];
+
+    for (long slot = 0; slot <= mask; slot++) {
+      long tag = tagAt(slot);
+
+      if (tag <= 0 || tag > rules.length) {
+        continue;
+      }
+
+      int id = (int) (tag - 1);
+      ByteBuffer segment = segment(slot);
+      int offset = offset(slot);
+      long high = segment.getLong(offset + HIGH_OFFSET);
+      long low = segment.getLong(offset + LOW_OFFSET);
+      long state = (long) LONGS.getVolatile(segment, offset + STATE_OFFSET);
+
+      // A state of 0 has its full quota, so there is nothing to save
+      if (state == 0 || tagAt(slot) != tag || saved[id] + filled[id] / ENTRY_LONGS >= counts[id]) {
+        continue;
+      }
+
+      if (blocks[id] == null) {
+        blocks[id] = new long[(int) Math.min(SNAPSHOT_BLOCK_ENTRIES, counts[id]) * ENTRY_LONGS];
+      }
+
+      long[] block = blocks[id];
+
+      block[filled[id]++] = high;
+      block[filled[id]++] = low;
+      block[filled[id]++] = state;
+
+      if (filled[id] == block.length) {
+        file.putLongs(offsets[id] + saved[id] * ENTRY_LONGS * Long.BYTES, block, filled[id]);
+        saved[id] += filled[id] / ENTRY_LONGS;
+        filled[id] = 0;
+      }
+    }
+
+    for (int id = 0; id < rules.length; id++) {
+      if (filled[id] > 0) {
+        file.putLongs(offsets[id] + saved[id] * ENTRY_LONGS * Long.BYTES, blocks[id], filled[id]);
+        saved[id] += filled[id] / ENTRY_LONGS;
+      }
+    }
+
+    return saved;
+  }
+
+  /**
+   * Rebases and inserts a block of entries read from a snapshot, holding the insert lock and then the timing
+   * wheel's lock once for all of them
+   *
+   * @return Number of entries inserted
+   */
+  private long restoreBlock(long[] block, int entries, RateLimitRule rule, PackedStateAlgorithm algorithm,
+                            long thenNanos, long nowNanos) {
+    int scheduled = 0;
+
+    insertLock.lock();
+
+    try {
+      for (int i = 0; i < entries * ENTRY_LONGS; i += ENTRY_LONGS) {
+        long high = block[i];
+        long low = block[i + 1];
+        long state = algorithm.rebase(block[i + 2], rule, thenNanos, nowNanos);
+
+        if (state == 0 || find(high, low, rule.getId()) >= 0) {
+          continue;
+        }
+
+        long slot = claimLocked(high, low, rule, algorithm, state);
+
+        if (slot >= 0) {
+          // Reuses the block, whose entries before this one have been consumed
+          block[scheduled++] = slot;
+          block[scheduled++] = nowNanos + Math.max(1, algorithm.resetNanos(state, rule, nowNanos));
+        }
+      }
+    } finally {
+      insertLock.unlock();
+    }
+
+    size.add(scheduled / 2);
+    timingWheel.scheduleAll(block, scheduled);
+
+    return scheduled / 2;
+  }
+
+  private void saveEvery(Path path, long intervalNanos) {
+    while (running) {
+      LockSupport.parkNanos(intervalNanos);
+
+      if (running) {
+        save(path);
+      }
+    }
+  }
+
+  private void save(Path path) {
+    try {
+      snapshot(path);
+    } catch (IOException | RuntimeException e) {
+      snapshotFailures.increment();
+    }
+  }
+
+  /**
+   * Reads a length-prefixed UTF-8 string, where a length of -1 stands for null
+   */
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+
+    if (length < 0) {
+      return null;
+    }
+
+    // Checked before allocating, so a corrupt length cannot ask for gigabytes
+    if (length > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+
+    byte[] bytes = new byte[length];
+
+    buffer.get(bytes);
+
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * The algorithm with the given name, or null if this version has none, such as after a rename
+   */
+  private static Algorithm algorithmNamed(String name) {
+    for (Algorithm algorithm : Algorithm.values()) {
+      if (algorithm.name().equals(name)) {
+        return algorithm;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Whether the slot holds the given key under the rule with the given tag
+   */
+  private boolean owns(long slot, long tag, long high, long low) {
+    return tagAt(slot) == tag && matches(slot, high, low);
+  }
+
+  private boolean matches(long slot, long high, long low) {
+    ByteBuffer segment = segment(slot);
+    int offset = offset(slot);
+
+    return segment.getLong(offset + HIGH_OFFSET) == high && segment.getLong(offset + LOW_OFFSET) == low;
+  }
+
+  private long tagAt(long slot) {
+    return (long) LONGS.getAcquire(segment(slot), offset(slot));
+  }
+
+  private ByteBuffer segment(long slot) {
+    return segments[(int) (slot >>> SEGMENT_SHIFT)];
+  }
+
+  private static int offset(long slot) {
+    return (int) (slot & SEGMENT_MASK) * SLOT_BYTES;
+  }
+}
@@ -0,0 +1,82 @@
+package org.example.ratelimiter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base class for algorithms whose whole per-key state fits in a single long.
+ * Subclasses only describe the state transition; this class applies it with a CAS loop, so the
+ * decision is lock-free and concurrent requests can never overwrite each other's updates.
+ * <p>
+ * Packed states are never negative, and a state of zero must mean "no requests seen yet".
+ */
+public abstract class PackedStateAlgorithm implements RateLimitAlgorithm<AtomicLong> {
+  /**
+   * Returned by {@link #next} when the request has to be rejected
+   */
+  public static final long REJECT = -1;
+
+  /**
+   * Computes the state after one more request, or {@link #REJECT} if the request is over the limit
+   */
+  public abstract long next(long state, RateLimitRule rule, long nowNanos);
+
+  /**
+   * Requests still available in the given state
+   */
+  public abstract long remaining(long state, RateLimitRule rule, long nowNanos);
+
+  /**
+   * Time until the given state has its full quota again
+   */
+  public abstract long resetNanos(long state, RateLimitRule rule, long nowNanos);
+
+  /**
+   * Time until a request rejected in the given state could succeed
+   */
+  public abstract long retryAfterNanos(long state, RateLimitRule rule, long nowNanos);
+
+  /**
+   * Moves a state saved by another JVM onto this JVM's {@link RateLimitClock}
+   *
+   * @param thenNanos The saving JVM's clock reading at the instant this one reads {@code nowNanos}
+   * @return The state on this clock, or 0 if it has its full quota back by now
+   */
+  public abstract long rebase(long state, RateLimitRule rule, long thenNanos, long nowNanos);
+
+  @Override
+  public AtomicLong newState(RateLimitRule rule) {
+    return new AtomicLong();
+  }
+
+  @Override
+  public long tryAcquire(AtomicLong state, RateLimitRule rule, long nowNanos) {
+    while (true) {
+      long current = state.get();
+      long next = next(current, rule, nowNanos);
+
+      if (next == REJECT) {
+        return RateLimitDecision.rejected(retryAfterNanos(current, rule, nowNanos));
+      }
+
+      if (next == current || state.compareAndSet(current, next)) {
+        return RateLimitDecision.allowed(remaining(next, rule, nowNanos), resetNanos(next, rule, nowNanos));
+      }
+    }
+  }
+
+  @Override
+  public long probe(AtomicLong state, RateLimitRule rule, long nowNanos) {
+    return decide(state.get(), rule, nowNanos);
+  }
+
+  /**
+   * Builds the decision a probe of the given state would return
+   */
+  public long decide(long state, RateLimitRule rule, long nowNanos) {
+    long remaining = remaining(state, rule, nowNanos);
+
+    return remaining > 0
+      ? RateLimitDecision.allowed(remaining, resetNanos(state, rule, nowNanos))
+      : RateLimitDecision.rejected(retryAfterNanos(state, rule, nowNanos));
+  }
+}
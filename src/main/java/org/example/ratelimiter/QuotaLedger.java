@@ -0,0 +1,65 @@
+package org.example.ratelimiter;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Shared account of every client's quota that {@link LeasedRateLimitStore} nodes reserve chunks of requests from.
+ * <p>
+ * Quota is counted in fixed windows aligned to multiples of the rule's window on the ledger's own clock, so all
+ * nodes agree on where a window starts. A ledger never grants more than the rule's limit per client and window in
+ * total, across all nodes.
+ */
+public interface QuotaLedger {
+  /**
+   * Reserves up to {@code permits} requests of the client's quota in the current window
+   *
+   * @return The reservation, possibly of fewer permits than requested or none, completed exceptionally if the
+   * ledger is unavailable
+   */
+  CompletableFuture<Grant> lease(long clientHigh, long clientLow, RateLimitRule rule, int permits);
+
+  /**
+   * Requests reserved from a ledger window
+   */
+  final class Grant {
+    private final int permits;
+    private final long window;
+    private final long windowRemainingNanos;
+    private final long remaining;
+
+    public Grant(int permits, long window, long windowRemainingNanos, long remaining) {
+      this.permits = permits;
+      this.window = window;
+      this.windowRemainingNanos = windowRemainingNanos;
+      this.remaining = remaining;
+    }
+
+    /**
+     * Number of requests reserved, 0 if the window's quota is used up
+     */
+    public int getPermits() {
+      return permits;
+    }
+
+    /**
+     * Index of the window the permits belong to; later windows have larger indexes
+     */
+    public long getWindow() {
+      return window;
+    }
+
+    /**
+     * Time until the window ends and its permits expire, as of when the ledger granted them
+     */
+    public long getWindowRemainingNanos() {
+      return windowRemainingNanos;
+    }
+
+    /**
+     * Requests left in the ledger for the window after this grant, across all nodes
+     */
+    public long getRemaining() {
+      return remaining;
+    }
+  }
+}
@@ -11,6 +11,13 @@ import java.lang.annotation.Target;
  *
  * @param limit             The maximum number of requests allowed within the time window
  * @param timeWindowSeconds The time window in seconds for the rate limit
+ * @param algorithm         The algorithm used to count requests within the time window
+ * @param capacity          The token bucket size, only used by {@link Algorithm#TOKEN_BUCKET}
+ * @param refillPerSecond   The token refill rate, only used by {@link Algorithm#TOKEN_BUCKET}
+ * @param headers           Whether allowed responses carry RateLimit-* headers
+ * @param scope             Which of a client's requests share a counter
+ * @param key               What identifies a client, see {@link RateLimitKeyResolvers}
+ * @param subnetLimit       The limit shared by all clients of a subnet, on top of the per-client limit
  */
 @Target(ElementType.METHOD)
 @Retention(RetentionPolicy.RUNTIME)
@@ -26,4 +33,50 @@ public @interface RateLimit {
    * Default is 60 seconds (1 minute).
    */
   int timeWindowSeconds() default 60;
-} 
\ No newline at end of file
+
+  /**
+   * The algorithm used to enforce the limit.
+   * Default is a fixed window that starts with the first request.
+   */
+  Algorithm algorithm() default Algorithm.FIXED_WINDOW;
+
+  /**
+   * The maximum number of tokens a token bucket holds, i.e. the largest burst it allows.
+   * Default is 0, meaning the bucket holds {@link #limit()} tokens.
+   */
+  int capacity() default 0;
+
+  /**
+   * The number of tokens added to a token bucket per second.
+   * Default is 0, meaning {@link #limit()} tokens per {@link #timeWindowSeconds()}.
+   */
+  double refillPerSecond() default 0;
+
+  /**
+   * Whether allowed responses carry RateLimit-Limit, RateLimit-Remaining and RateLimit-Reset headers,
+   * so clients can throttle themselves before hitting 429s. Rejections always carry them.
+   * Default is false.
+   */
+  boolean headers() default false;
+
+  /**
+   * Which requests of a client count against the same limit.
+   * Default is one counter per annotated method.
+   */
+  RateLimitScope scope() default RateLimitScope.PER_METHOD;
+
+  /**
+   * What identifies a client: {@code ip}, {@code subnet}, {@code principal}, {@code header:<name>},
+   * {@code spel:<expression>}, {@code bean:<name>}, or a combination such as {@code principal+header:X-Api-Key}.
+   * Default is the client IP.
+   */
+  String key() default RateLimitKeyResolvers.CLIENT_IP;
+
+  /**
+   * The maximum number of requests from all addresses of a subnet together (a /24 for IPv4 and a /64 for IPv6 by
+   * default), checked in the same pass as the per-client limit. Stops clients that rotate through the addresses
+   * of their subnet. For {@link Algorithm#TOKEN_BUCKET} it is the capacity of the subnet's bucket.
+   * Default is 0, meaning no subnet limit.
+   */
+  int subnetLimit() default 0;
+}
\ No newline at end of file
@@ -0,0 +1,42 @@
+package org.example.ratelimiter;
+
+/**
+ * Strategy that decides whether a request may pass, given the per-key state it keeps.
+ * Implementations are Spring beans; {@link RateLimiterService} dispatches to the one whose
+ * {@link #type()} matches the rule. Implementations must be thread-safe, since the same state
+ * is used concurrently by every request with the same key.
+ *
+ * @param <S> The per-key state, created by {@link #newState(RateLimitRule)} and stored by the service
+ */
+public interface RateLimitAlgorithm<S> {
+  /**
+   * The algorithm this strategy implements
+   */
+  Algorithm type();
+
+  /**
+   * Creates the state for a key that has not been seen yet
+   */
+  S newState(RateLimitRule rule);
+
+  /**
+   * Attempts to take one request from the quota.
+   *
+   * @param nowNanos Monotonic time in nanoseconds, never negative
+   * @return A {@link RateLimitDecision}
+   */
+  long tryAcquire(S state, RateLimitRule rule, long nowNanos);
+
+  /**
+   * Reports the current quota without consuming any of it.
+   *
+   * @return A {@link RateLimitDecision}
+   */
+  long probe(S state, RateLimitRule rule, long nowNanos);
+
+  /**
+   * How long after its last request a key's state becomes indistinguishable from a new one.
+   * Stores use this to drop idle state without changing any decision.
+   */
+  long idleTimeoutNanos(RateLimitRule rule);
+}
@@ -6,56 +6,62 @@ import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.reflect.MethodSignature;
-import org.springframework.http.HttpStatus;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.stereotype.Component;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
 
-import java.lang.reflect.Method;
-
+/**
+ * Enforces {@link RateLimit} around the controller method. This is the default enforcement mode;
+ * {@code ratelimiter.enforcement=filter} switches to {@link RateLimitFilter} instead.
+ */
 @Aspect
 @Component
+@ConditionalOnProperty(name = "ratelimiter.enforcement", havingValue = "aspect", matchIfMissing = true)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class RateLimitAspect {
   private final RateLimiterService rateLimiterService;
+  private final RateLimitKeyResolvers keyResolvers;
 
-  public RateLimitAspect(RateLimiterService rateLimiterService) {
+  public RateLimitAspect(RateLimiterService rateLimiterService, RateLimitKeyResolvers keyResolvers) {
     this.rateLimiterService = rateLimiterService;
+    this.keyResolvers = keyResolvers;
   }
 
   @Around("@annotation(org.example.ratelimiter.RateLimit)")
   public Object checkRateLimit(ProceedingJoinPoint joinPoint) throws Throwable {
     MethodSignature methodSignature = (MethodSignature) joinPoint.getSignature();
-    Method method = methodSignature.getMethod();
-    RateLimit rateLimitAnnotation = method.getAnnotation(RateLimit.class);
-
-    // Extract limit parameters
-    int limit = rateLimitAnnotation.limit();
-    int timeWindowSeconds = rateLimitAnnotation.timeWindowSeconds();
+    RateLimitedMethod rateLimitedMethod = RateLimitedMethod.of(methodSignature.getMethod());
 
-    // Get the current request and extract client IP
+    // Get the current request and resolve the client key, by default the client IP
     ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.currentRequestAttributes();
     HttpServletRequest request = attributes.getRequest();
-    String ipAddress = request.getRemoteAddr();
+    RateLimitKeyResolver keyResolver = keyResolvers.resolverFor(rateLimitedMethod);
+    RateLimitKey key = new RateLimitKey();
 
-    // Register this endpoint for rate limit tracking
-    String requestURI = request.getRequestURI();
-    String methodName = method.getDeclaringClass().getSimpleName() + "." + method.getName();
-    String description = methodName + " (limit: " + limit + " requests per " +
-      (timeWindowSeconds == 60 ? "minute" : timeWindowSeconds + " seconds") + ")";
+    keyResolver.resolve(request, keyResolver.usesArguments() ? joinPoint.getArgs() : null, key);
 
-    rateLimiterService.registerRateLimit(requestURI, limit, timeWindowSeconds, description);
+    RateLimitRule rule = rateLimitedMethod.getScope() == RateLimitScope.PER_ROUTE_TEMPLATE
+      ? rateLimitedMethod.getRule((String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE))
+      : rateLimitedMethod.getRule();
 
     // Check if the request should be allowed
-    if (rateLimiterService.allowRequest(ipAddress, limit, timeWindowSeconds)) {
+    long decision = rateLimiterService.tryAcquire(key.getHigh(), key.getLow(), rule);
+
+    HttpServletResponse response = attributes.getResponse();
+
+    if (RateLimitDecision.isAllowed(decision)) {
+      if (response != null && rateLimitedMethod.isHeaders()) {
+        RateLimitResponses.setHeaders(response, rule, decision);
+      }
+
       return joinPoint.proceed();
     } else {
       // Rate limit exceeded, return 429 Too Many Requests
-      HttpServletResponse response = attributes.getResponse();
-
       if (response != null) {
-        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
-        response.getWriter().write("Rate limit exceeded. Try again later.");
-        response.getWriter().flush();
+        RateLimitResponses.writeRejected(response, rule, decision);
       }
 
       return null;
@@ -0,0 +1,17 @@
+package org.example.ratelimiter;
+
+/**
+ * Monotonic clock shared by everything that stores rate limit state.
+ * Times are nanoseconds since this class was loaded, so they start at zero and never go negative, which the
+ * packed algorithm states rely on.
+ */
+public final class RateLimitClock {
+  private static final long ORIGIN_NANOS = System.nanoTime();
+
+  private RateLimitClock() {
+  }
+
+  public static long nanoTime() {
+    return System.nanoTime() - ORIGIN_NANOS;
+  }
+}
@@ -0,0 +1,56 @@
+package org.example.ratelimiter;
+
+/**
+ * Encodes the outcome of a rate limit check in a single long so the hot path never allocates.
+ * <p>
+ * Layout: the sign bit is set for rejected requests, the next 31 bits hold the remaining requests and
+ * the low 32 bits hold a wait in milliseconds (saturating). For allowed requests the wait is the time until
+ * the quota is fully restored; for rejected requests it is the time until a retry can succeed.
+ */
+public final class RateLimitDecision {
+  private static final long REJECTED_BIT = 1L << 63;
+  private static final int REMAINING_SHIFT = 32;
+  private static final long REMAINING_MASK = 0x7FFF_FFFFL;
+  private static final long MILLIS_MASK = 0xFFFF_FFFFL;
+
+  private RateLimitDecision() {
+  }
+
+  public static long allowed(long remaining, long resetNanos) {
+    return (clamp(remaining, REMAINING_MASK) << REMAINING_SHIFT) | toMillis(resetNanos);
+  }
+
+  public static long rejected(long retryAfterNanos) {
+    return REJECTED_BIT | toMillis(retryAfterNanos);
+  }
+
+  public static boolean isAllowed(long decision) {
+    return decision >= 0;
+  }
+
+  public static int remaining(long decision) {
+    return (int) ((decision >>> REMAINING_SHIFT) & REMAINING_MASK);
+  }
+
+  public static long waitMillis(long decision) {
+    return decision & MILLIS_MASK;
+  }
+
+  /**
+   * The wait rounded up to whole seconds, as used by the Retry-After style headers
+   */
+  public static long waitSeconds(long decision) {
+    return (waitMillis(decision) + 999) / 1000;
+  }
+
+  // Helper methods
+
+  private static long toMillis(long nanos) {
+    // Round up so a client that waits the reported time is never early
+    return clamp((Math.max(0, nanos) + 999_999) / 1_000_000, MILLIS_MASK);
+  }
+
+  private static long clamp(long value, long max) {
+    return Math.max(0, Math.min(value, max));
+  }
+}
@@ -0,0 +1,45 @@
+package org.example.ratelimiter;
+
+import java.lang.reflect.Method;
+
+/**
+ * Immutable entry of the rate limit registry: the route templates of a rate-limited handler that share a counter.
+ * Ids are dense indexes into the registry, assigned in registration order.
+ */
+public final class RateLimitEndpoint {
+  private final int id;
+  private final String path;
+  private final RateLimiterService.RateLimitInfo info;
+  private final Method handler;
+
+  public RateLimitEndpoint(int id, String path, RateLimiterService.RateLimitInfo info, Method handler) {
+    this.id = id;
+    this.path = path;
+    this.info = info;
+    this.handler = handler;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public RateLimiterService.RateLimitInfo getInfo() {
+    return info;
+  }
+
+  /**
+   * The annotated handler method, or null if the endpoint was registered by hand
+   */
+  public Method getHandler() {
+    return handler;
+  }
+
+  @Override
+  public String toString() {
+    return id + ":" + path;
+  }
+}
@@ -0,0 +1,58 @@
+package org.example.ratelimiter;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Registers every {@link RateLimit} handler method at startup, before the web server accepts requests,
+ * so the registry is complete from the first request and the request path never writes to it.
+ * Key specifications are compiled at the same time, so an invalid one fails the startup.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class RateLimitEndpointScanner implements SmartInitializingSingleton {
+  private final RateLimiterService rateLimiterService;
+  private final RequestMappingHandlerMapping handlerMapping;
+  private final RateLimitKeyResolvers keyResolvers;
+
+  public RateLimitEndpointScanner(RateLimiterService rateLimiterService,
+                                  @Qualifier("requestMappingHandlerMapping")
+                                  RequestMappingHandlerMapping handlerMapping,
+                                  RateLimitKeyResolvers keyResolvers) {
+    this.rateLimiterService = rateLimiterService;
+    this.handlerMapping = handlerMapping;
+    this.keyResolvers = keyResolvers;
+  }
+
+  @Override
+  public void afterSingletonsInstantiated() {
+    List<RateLimiterService.HandlerRoute> routes = new ArrayList<>();
+
+    for (Map.Entry<RequestMappingInfo, HandlerMethod> entry : handlerMapping.getHandlerMethods().entrySet()) {
+      Set<RequestMethod> requestMethods = entry.getKey().getMethodsCondition().getMethods();
+      Method method = entry.getValue().getMethod();
+
+      for (String path : entry.getKey().getPatternValues()) {
+        routes.add(new RateLimiterService.HandlerRoute(path, requestMethods, method));
+      }
+
+      if (method.isAnnotationPresent(RateLimit.class)) {
+        keyResolvers.resolverFor(RateLimitedMethod.of(method));
+      }
+    }
+
+    rateLimiterService.registerHandlerMethods(routes);
+  }
+}
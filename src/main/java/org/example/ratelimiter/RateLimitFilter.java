@@ -0,0 +1,134 @@
+package org.example.ratelimiter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.util.ServletRequestPathUtils;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+/**
+ * Enforces {@link RateLimit} in a servlet filter, enabled with {@code ratelimiter.enforcement=filter}.
+ * <p>
+ * The filter resolves the handler itself and rejects over-limit requests before the DispatcherServlet runs, so a
+ * rejected request costs no argument resolution, message conversion or controller proxy call. Allowed requests pay
+ * for one extra handler lookup. It replaces {@link RateLimitAspect}, never runs alongside it.
+ * <p>
+ * It runs right after Spring Security's filter chain, so {@code principal} keys see the authenticated user. Handler
+ * arguments are not bound yet, so an endpoint whose key reads them, such as {@code spel:} keys, fails the startup.
+ */
+@Component
+@ConditionalOnProperty(name = "ratelimiter.enforcement", havingValue = "filter")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@Order(RateLimitFilter.ORDER)
+public class RateLimitFilter extends OncePerRequestFilter implements SmartInitializingSingleton {
+  /**
+   * After Spring Security's filter chain, which sets the principal, and ahead of the DispatcherServlet
+   */
+  public static final int ORDER = SecurityProperties.DEFAULT_FILTER_ORDER + 10;
+
+  private final RateLimiterService rateLimiterService;
+  private final RequestMappingHandlerMapping handlerMapping;
+  private final RateLimitKeyResolvers keyResolvers;
+
+  public RateLimitFilter(RateLimiterService rateLimiterService,
+                         @Qualifier("requestMappingHandlerMapping") RequestMappingHandlerMapping handlerMapping,
+                         RateLimitKeyResolvers keyResolvers) {
+    this.rateLimiterService = rateLimiterService;
+    this.handlerMapping = handlerMapping;
+    this.keyResolvers = keyResolvers;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+    throws ServletException, IOException {
+    RateLimitedMethod rateLimitedMethod = resolve(request);
+
+    if (rateLimitedMethod == null) {
+      filterChain.doFilter(request, response);
+
+      return;
+    }
+
+    // The handler lookup has left the matched route template in the request attributes
+    RateLimitRule rule = rateLimitedMethod.getScope() == RateLimitScope.PER_ROUTE_TEMPLATE
+      ? rateLimitedMethod.getRule((String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE))
+      : rateLimitedMethod.getRule();
+
+    // Handler arguments are not bound yet; keys that read them were rejected at startup
+    RateLimitKey key = new RateLimitKey();
+
+    keyResolvers.resolverFor(rateLimitedMethod).resolve(request, null, key);
+
+    long decision = rateLimiterService.tryAcquire(key.getHigh(), key.getLow(), rule);
+
+    if (RateLimitDecision.isAllowed(decision)) {
+      if (rateLimitedMethod.isHeaders()) {
+        RateLimitResponses.setHeaders(response, rule, decision);
+      }
+
+      filterChain.doFilter(request, response);
+    } else {
+      RateLimitResponses.writeRejected(response, rule, decision);
+    }
+  }
+
+  @Override
+  public void afterSingletonsInstantiated() {
+    for (HandlerMethod handlerMethod : handlerMapping.getHandlerMethods().values()) {
+      Method method = handlerMethod.getMethod();
+
+      if (method.isAnnotationPresent(RateLimit.class)
+        && keyResolvers.resolverFor(RateLimitedMethod.of(method)).usesArguments()) {
+        throw new IllegalStateException("@RateLimit key '" + method.getAnnotation(RateLimit.class).key() + "' on "
+          + method + " reads handler arguments, which are not bound yet in ratelimiter.enforcement=filter");
+      }
+    }
+  }
+
+  // Helper methods
+
+  /**
+   * Finds the rate limit of the handler the request maps to, or null if it has none
+   */
+  private RateLimitedMethod resolve(HttpServletRequest request) {
+    // The handler mapping reads the parsed path the DispatcherServlet would normally have cached
+    boolean parsedHere = !ServletRequestPathUtils.hasParsedRequestPath(request);
+
+    if (parsedHere) {
+      ServletRequestPathUtils.parseAndCache(request);
+    }
+
+    try {
+      HandlerExecutionChain chain = handlerMapping.getHandler(request);
+
+      if (chain != null && chain.getHandler() instanceof HandlerMethod handlerMethod
+        && handlerMethod.getMethod().isAnnotationPresent(RateLimit.class)) {
+        return RateLimitedMethod.of(handlerMethod.getMethod());
+      }
+
+      return null;
+    } catch (Exception e) {
+      // No match, such as an unsupported HTTP method; let the DispatcherServlet produce the error response
+      return null;
+    } finally {
+      if (parsedHere) {
+        ServletRequestPathUtils.clearParsedRequestPath(request);
+      }
+    }
+  }
+}
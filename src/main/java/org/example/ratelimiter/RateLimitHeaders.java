@@ -0,0 +1,47 @@
+package org.example.ratelimiter;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Header names and pre-encoded content of rate limit responses, shared by the servlet and WebFlux enforcement.
+ * <p>
+ * Headers follow the IETF RateLimit header fields draft, with {@code Retry-After} on rejections. Header values are
+ * small non-negative numbers, so their strings are cached rather than formatted per response.
+ */
+public final class RateLimitHeaders {
+  public static final String LIMIT = "RateLimit-Limit";
+  public static final String REMAINING = "RateLimit-Remaining";
+  public static final String RESET = "RateLimit-Reset";
+  public static final String RETRY_AFTER = "Retry-After";
+
+  /**
+   * Body of every 429 response, encoded once
+   */
+  static final byte[] REJECTED_BODY = "Rate limit exceeded. Try again later.".getBytes(StandardCharsets.UTF_8);
+
+  static final String REJECTED_CONTENT_TYPE = "text/plain;charset=UTF-8";
+
+  // Covers limits, remaining counts and resets up to a little over an hour; filled lazily, races are benign
+  private static final String[] VALUES = new String[4096];
+
+  private RateLimitHeaders() {
+  }
+
+  /**
+   * Header value for a non-negative number, without formatting it again if it is small
+   */
+  public static String value(long number) {
+    if (number < 0 || number >= VALUES.length) {
+      return Long.toString(number);
+    }
+
+    String value = VALUES[(int) number];
+
+    if (value == null) {
+      value = Long.toString(number);
+      VALUES[(int) number] = value;
+    }
+
+    return value;
+  }
+}
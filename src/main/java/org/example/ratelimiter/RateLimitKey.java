@@ -0,0 +1,40 @@
+package org.example.ratelimiter;
+
+/**
+ * Mutable 128-bit client key filled in by a {@link RateLimitKeyResolver}.
+ * <p>
+ * Client addresses use their own 128 bits (see {@link ClientAddress}). Every other key is a 64-bit hash placed in the
+ * discard-only prefix {@link ClientAddress#HASHED_HIGH}, so it can never collide with a real address.
+ * <p>
+ * Enforcement creates one instance per request and reuses it for the whole decision. It is not kept in a thread
+ * local: with virtual threads every request starts on a fresh thread, where a thread-local holder costs more than
+ * this one small object.
+ */
+public final class RateLimitKey {
+  private long high;
+  private long low;
+
+  public long getHigh() {
+    return high;
+  }
+
+  public long getLow() {
+    return low;
+  }
+
+  /**
+   * Sets the key to a client address
+   */
+  public void set(long high, long low) {
+    this.high = high;
+    this.low = low;
+  }
+
+  /**
+   * Sets the key to a hashed value such as a user name or API key
+   */
+  public void setHashed(long hash) {
+    this.high = ClientAddress.HASHED_HIGH;
+    this.low = hash;
+  }
+}
@@ -0,0 +1,29 @@
+package org.example.ratelimiter;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Derives the client key a request is counted under. Selected per endpoint with {@link RateLimit#key()};
+ * custom resolvers are beans referenced as {@code bean:<name>}.
+ * <p>
+ * Implementations write primitive keys into the caller's {@link RateLimitKey} rather than returning objects, so a
+ * decision allocates that one key and nothing in the resolver. Hash strings with {@link ClientAddress#hash} and store
+ * them with {@link RateLimitKey#setHashed}.
+ */
+@FunctionalInterface
+public interface RateLimitKeyResolver {
+  /**
+   * Resolves the key of a request
+   *
+   * @param arguments The handler method's arguments, or null when enforcing before the handler is invoked
+   * @return Whether a key was resolved; requests without one, such as anonymous ones, are keyed on the client IP
+   */
+  boolean resolve(HttpServletRequest request, Object[] arguments, RateLimitKey key);
+
+  /**
+   * Whether {@link #resolve} reads the handler method's arguments, which are only copied for resolvers that do
+   */
+  default boolean usesArguments() {
+    return false;
+  }
+}
@@ -0,0 +1,342 @@
+package org.example.ratelimiter;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Compiles {@link RateLimit#key()} specifications into {@link RateLimitKeyResolver}s, once per method.
+ * <p>
+ * Supported keys, combinable with {@code +} to count every distinct combination separately:
+ * <ul>
+ *   <li>{@code ip}: The client IP (default), taken from {@code X-Forwarded-For} behind {@link TrustedProxies}</li>
+ *   <li>{@code subnet}: The client's subnet, per {@link SubnetMask}, so rotating addresses within it does not help</li>
+ *   <li>{@code principal}: The authenticated user name</li>
+ *   <li>{@code header:<name>}: The value of a request header, such as an API key</li>
+ *   <li>{@code spel:<expression>}: A SpEL expression over the handler method's arguments, such as {@code #userId};
+ *   only in the aspect enforcement mode, and always the last part of a combination</li>
+ *   <li>{@code bean:<name>}: A {@link RateLimitKeyResolver} bean</li>
+ * </ul>
+ * Requests for which a key cannot be resolved, such as anonymous ones, are keyed on their client IP.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class RateLimitKeyResolvers {
+  public static final String CLIENT_IP = "ip";
+
+  private static final String SUBNET = "subnet";
+  private static final String PRINCIPAL = "principal";
+  private static final String HEADER_PREFIX = "header:";
+  private static final String SPEL_PREFIX = "spel:";
+  private static final String BEAN_PREFIX = "bean:";
+  private static final char COMBINATION_SEPARATOR = '+';
+
+  // Salts keep equal values of different key types apart, e.g. a user named like an API key
+  private static final long PRINCIPAL_SALT = 0x5052_494E_4349_5041L;
+
+  private final BeanFactory beanFactory;
+  private final TrustedProxies trustedProxies;
+  private final RateLimitKeyResolver clientIp;
+  private final RateLimitKeyResolver subnet;
+  private final SpelExpressionParser expressionParser = new SpelExpressionParser();
+  private final ParameterNameDiscoverer parameterNames = new DefaultParameterNameDiscoverer();
+  private final ConcurrentHashMap<RateLimitedMethod, RateLimitKeyResolver> resolvers = new ConcurrentHashMap<>();
+  private final Function<RateLimitedMethod, RateLimitKeyResolver> compiler = this::compile;
+
+  public RateLimitKeyResolvers(BeanFactory beanFactory, TrustedProxies trustedProxies, SubnetMask subnetMask) {
+    this.beanFactory = beanFactory;
+    this.trustedProxies = trustedProxies;
+    this.clientIp = new ClientIpResolver(trustedProxies);
+    this.subnet = new SubnetResolver(clientIp, subnetMask);
+  }
+
+  /**
+   * Gets the resolver for a method's {@link RateLimit#key()}, compiling it on first use.
+   * The returned resolver always resolves a key, falling back to the client IP.
+   *
+   * @throws IllegalArgumentException If the key specification is invalid
+   */
+  public RateLimitKeyResolver resolverFor(RateLimitedMethod method) {
+    RateLimitKeyResolver resolver = resolvers.get(method);
+
+    return resolver != null ? resolver : resolvers.computeIfAbsent(method, compiler);
+  }
+
+  /**
+   * Textual client IP of a request, as the {@code ip} key sees it
+   */
+  public String clientAddress(HttpServletRequest request) {
+    String peer = request.getRemoteAddr();
+
+    return trustedProxies.isEmpty() ? peer : trustedProxies.clientAddress(peer, lastForwardedFor(request));
+  }
+
+  // Helper methods
+
+  private RateLimitKeyResolver compile(RateLimitedMethod method) {
+    String spec = method.getKey().trim();
+
+    if (spec.equals(CLIENT_IP)) {
+      return clientIp;
+    }
+
+    List<RateLimitKeyResolver> parts = new ArrayList<>();
+    int start = 0;
+
+    while (start <= spec.length()) {
+      // A SpEL expression may contain the separator itself, so it takes the rest of the specification
+      int end = spec.startsWith(SPEL_PREFIX, start) ? -1 : spec.indexOf(COMBINATION_SEPARATOR, start);
+      String part = (end < 0 ? spec.substring(start) : spec.substring(start, end)).trim();
+
+      parts.add(compilePart(part, method.getMethod()));
+      start = end < 0 ? spec.length() + 1 : end + 1;
+    }
+
+    RateLimitKeyResolver resolver = parts.size() == 1
+      ? parts.get(0)
+      : new CombinedResolver(parts.toArray(new RateLimitKeyResolver[0]));
+
+    return new FallbackResolver(resolver, clientIp);
+  }
+
+  private RateLimitKeyResolver compilePart(String part, Method method) {
+    if (part.equals(CLIENT_IP)) {
+      return clientIp;
+    }
+
+    if (part.equals(SUBNET)) {
+      return subnet;
+    }
+
+    if (part.equals(PRINCIPAL)) {
+      return new PrincipalResolver();
+    }
+
+    if (part.startsWith(HEADER_PREFIX) && part.length() > HEADER_PREFIX.length()) {
+      return new HeaderResolver(part.substring(HEADER_PREFIX.length()).trim());
+    }
+
+    if (part.startsWith(SPEL_PREFIX) && part.length() > SPEL_PREFIX.length()) {
+      String expression = part.substring(SPEL_PREFIX.length()).trim();
+
+      return new SpelResolver(expressionParser.parseExpression(expression), expression, method, parameterNames);
+    }
+
+    if (part.startsWith(BEAN_PREFIX) && part.length() > BEAN_PREFIX.length()) {
+      return beanFactory.getBean(part.substring(BEAN_PREFIX.length()).trim(), RateLimitKeyResolver.class);
+    }
+
+    throw new IllegalArgumentException("Invalid @RateLimit key '" + part + "' on " + method
+      + ", expected ip, subnet, principal, header:<name>, spel:<expression> or bean:<name>");
+  }
+
+  /**
+   * The last forwarded header, the one our own proxies appended to; earlier ones are client-supplied
+   */
+  private static String lastForwardedFor(HttpServletRequest request) {
+    Enumeration<String> headers = request.getHeaders(TrustedProxies.FORWARDED_FOR);
+    String last = null;
+
+    while (headers != null && headers.hasMoreElements()) {
+      last = headers.nextElement();
+    }
+
+    return last;
+  }
+
+  private static long salted(CharSequence value, long salt) {
+    return ClientAddress.mix(ClientAddress.hash(value, 0, value.length()) ^ salt);
+  }
+
+  /**
+   * The client IP as reported by the servlet container, or as forwarded by a trusted proxy
+   */
+  private static final class ClientIpResolver implements RateLimitKeyResolver {
+    private final TrustedProxies trustedProxies;
+
+    ClientIpResolver(TrustedProxies trustedProxies) {
+      this.trustedProxies = trustedProxies;
+    }
+
+    @Override
+    public boolean resolve(HttpServletRequest request, Object[] arguments, RateLimitKey key) {
+      ClientAddress.parse(request.getRemoteAddr(), key);
+
+      // Only requests from trusted proxies pay for reading the header
+      if (trustedProxies.contains(key.getHigh(), key.getLow())) {
+        trustedProxies.resolve(key.getHigh(), key.getLow(), lastForwardedFor(request), key);
+      }
+
+      return true;
+    }
+  }
+
+  private static final class SubnetResolver implements RateLimitKeyResolver {
+    private final RateLimitKeyResolver clientIp;
+    private final SubnetMask subnetMask;
+
+    SubnetResolver(RateLimitKeyResolver clientIp, SubnetMask subnetMask) {
+      this.clientIp = clientIp;
+      this.subnetMask = subnetMask;
+    }
+
+    @Override
+    public boolean resolve(HttpServletRequest request, Object[] arguments, RateLimitKey key) {
+      clientIp.resolve(request, arguments, key);
+      key.set(subnetMask.high(key.getHigh(), key.getLow()), subnetMask.low(key.getHigh(), key.getLow()));
+
+      return true;
+    }
+  }
+
+  private static final class PrincipalResolver implements RateLimitKeyResolver {
+    @Override
+    public boolean resolve(HttpServletRequest request, Object[] arguments, RateLimitKey key) {
+      Principal principal = request.getUserPrincipal();
+
+      if (principal == null || principal.getName() == null) {
+        return false;
+      }
+
+      key.setHashed(salted(principal.getName(), PRINCIPAL_SALT));
+
+      return true;
+    }
+  }
+
+  private static final class HeaderResolver implements RateLimitKeyResolver {
+    private final String name;
+    private final long salt;
+
+    HeaderResolver(String name) {
+      // Header names are case-insensitive, so every spelling of one shares its counters
+      String saltText = HEADER_PREFIX + name.toLowerCase(Locale.ROOT);
+
+      this.name = name;
+      this.salt = ClientAddress.hash(saltText, 0, saltText.length());
+    }
+
+    @Override
+    public boolean resolve(HttpServletRequest request, Object[] arguments, RateLimitKey key) {
+      String value = request.getHeader(name);
+
+      if (value == null || value.isEmpty()) {
+        return false;
+      }
+
+      key.setHashed(salted(value, salt));
+
+      return true;
+    }
+  }
+
+  private static final class SpelResolver implements RateLimitKeyResolver {
+    private final Expression expression;
+    private final long salt;
+    private final Method method;
+    private final ParameterNameDiscoverer parameterNames;
+
+    SpelResolver(Expression expression, String source, Method method, ParameterNameDiscoverer parameterNames) {
+      this.expression = expression;
+      this.salt = ClientAddress.hash(SPEL_PREFIX + source, 0, SPEL_PREFIX.length() + source.length());
+      this.method = method;
+      this.parameterNames = parameterNames;
+    }
+
+    @Override
+    public boolean resolve(HttpServletRequest request, Object[] arguments, RateLimitKey key) {
+      if (arguments == null) {
+        return false;
+      }
+
+      Object value = expression.getValue(new MethodBasedEvaluationContext(null, method, arguments, parameterNames));
+
+      if (value == null) {
+        return false;
+      }
+
+      key.setHashed(salted(value.toString(), salt));
+
+      return true;
+    }
+
+    @Override
+    public boolean usesArguments() {
+      return true;
+    }
+  }
+
+  /**
+   * Keys on the combination of several keys; resolves nothing unless all of them resolve
+   */
+  private static final class CombinedResolver implements RateLimitKeyResolver {
+    private final RateLimitKeyResolver[] parts;
+
+    CombinedResolver(RateLimitKeyResolver[] parts) {
+      this.parts = parts;
+    }
+
+    @Override
+    public boolean resolve(HttpServletRequest request, Object[] arguments, RateLimitKey key) {
+      long combined = 0;
+
+      for (RateLimitKeyResolver part : parts) {
+        if (!part.resolve(request, arguments, key)) {
+          return false;
+        }
+
+        combined = ClientAddress.mix(combined ^ key.getHigh()) + key.getLow();
+      }
+
+      key.setHashed(ClientAddress.mix(combined));
+
+      return true;
+    }
+
+    @Override
+    public boolean usesArguments() {
+      for (RateLimitKeyResolver part : parts) {
+        if (part.usesArguments()) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+  }
+
+  private static final class FallbackResolver implements RateLimitKeyResolver {
+    private final RateLimitKeyResolver primary;
+    private final RateLimitKeyResolver fallback;
+
+    FallbackResolver(RateLimitKeyResolver primary, RateLimitKeyResolver fallback) {
+      this.primary = primary;
+      this.fallback = fallback;
+    }
+
+    @Override
+    public boolean resolve(HttpServletRequest request, Object[] arguments, RateLimitKey key) {
+      return primary.resolve(request, arguments, key) || fallback.resolve(request, arguments, key);
+    }
+
+    @Override
+    public boolean usesArguments() {
+      return primary.usesArguments();
+    }
+  }
+}
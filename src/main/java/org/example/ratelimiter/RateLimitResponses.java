@@ -0,0 +1,47 @@
+package org.example.ratelimiter;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+
+/**
+ * Writes the rate limit responses of the servlet enforcement modes.
+ * The body is written as cached bytes and every header value comes from the decision, so shedding a request
+ * during a flood costs no writer, no charset encoding and no second store lookup.
+ */
+public final class RateLimitResponses {
+  private RateLimitResponses() {
+  }
+
+  /**
+   * Sets the RateLimit-* headers of an allowed request from the decision that allowed it
+   *
+   * @param decision The allowing {@link RateLimitDecision}
+   */
+  public static void setHeaders(HttpServletResponse response, RateLimitRule rule, long decision) {
+    response.setHeader(RateLimitHeaders.LIMIT, RateLimitHeaders.value(rule.getLimit()));
+    response.setHeader(RateLimitHeaders.REMAINING, RateLimitHeaders.value(RateLimitDecision.remaining(decision)));
+    response.setHeader(RateLimitHeaders.RESET, RateLimitHeaders.value(RateLimitDecision.waitSeconds(decision)));
+  }
+
+  /**
+   * Rejects the request with 429 Too Many Requests, telling the client when its quota comes back
+   *
+   * @param decision The rejecting {@link RateLimitDecision}
+   */
+  public static void writeRejected(HttpServletResponse response, RateLimitRule rule, long decision)
+    throws IOException {
+    String retryAfter = RateLimitHeaders.value(RateLimitDecision.waitSeconds(decision));
+
+    response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+    response.setHeader(RateLimitHeaders.RETRY_AFTER, retryAfter);
+    response.setHeader(RateLimitHeaders.LIMIT, RateLimitHeaders.value(rule.getLimit()));
+    response.setHeader(RateLimitHeaders.REMAINING, RateLimitHeaders.value(0));
+    response.setHeader(RateLimitHeaders.RESET, retryAfter);
+    response.setContentType(RateLimitHeaders.REJECTED_CONTENT_TYPE);
+    response.setContentLength(RateLimitHeaders.REJECTED_BODY.length);
+    response.getOutputStream().write(RateLimitHeaders.REJECTED_BODY);
+    response.flushBuffer();
+  }
+}
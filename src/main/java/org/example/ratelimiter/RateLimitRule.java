@@ -0,0 +1,206 @@
+package org.example.ratelimiter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable rate limit parameters handed to a {@link RateLimitAlgorithm}.
+ * Derived values such as the window length in nanoseconds are computed once here instead of per request.
+ * For {@link Algorithm#TOKEN_BUCKET} the limit is the bucket capacity.
+ * <p>
+ * A rule may be scoped to a method or route template (see {@link RateLimitScope}); the scope is part of the id,
+ * so differently scoped rules never share counters even with identical parameters.
+ * A rule may also carry a subnet rule, a second, usually looser limit shared by every client of a subnet.
+ */
+public final class RateLimitRule {
+  // Rules with the same parameters and scope share an id, and with it their counters
+  private static final ConcurrentHashMap<String, Integer> IDS = new ConcurrentHashMap<>();
+  private static final AtomicInteger NEXT_ID = new AtomicInteger();
+  private static final String SUBNET_SCOPE_SUFFIX = "#subnet";
+
+  private final int id;
+  private final int limit;
+  private final int timeWindowSeconds;
+  private final Algorithm algorithm;
+  private final double refillPerSecond;
+  private final String scope;
+  private final String signature;
+  private final long windowNanos;
+  private final long emissionIntervalNanos;
+  private final RateLimitRule subnetRule;
+
+  public RateLimitRule(int limit, int timeWindowSeconds, Algorithm algorithm) {
+    this(limit, timeWindowSeconds, algorithm, (double) limit / timeWindowSeconds);
+  }
+
+  public RateLimitRule(int limit, int timeWindowSeconds, Algorithm algorithm, double refillPerSecond) {
+    this(limit, timeWindowSeconds, algorithm, refillPerSecond, null);
+  }
+
+  /**
+   * @param scope What the rule's counters belong to, such as a method or route template, or null to share them
+   *              with every rule of the same parameters
+   */
+  public RateLimitRule(int limit, int timeWindowSeconds, Algorithm algorithm, double refillPerSecond, String scope) {
+    this(limit, timeWindowSeconds, algorithm, refillPerSecond, scope, 0);
+  }
+
+  private RateLimitRule(int limit, int timeWindowSeconds, Algorithm algorithm, double refillPerSecond, String scope,
+                        int subnetLimit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Rate limit must be positive, got " + limit);
+    }
+
+    if (timeWindowSeconds <= 0) {
+      throw new IllegalArgumentException("Rate limit time window must be positive, got " + timeWindowSeconds);
+    }
+
+    if (!(refillPerSecond > 0)) {
+      throw new IllegalArgumentException("Rate limit refill rate must be positive, got " + refillPerSecond);
+    }
+
+    if (algorithm == Algorithm.TOKEN_BUCKET && limit > TokenBucketAlgorithm.MAX_CAPACITY) {
+      throw new IllegalArgumentException("Token bucket capacity must be at most " + TokenBucketAlgorithm.MAX_CAPACITY
+        + ", got " + limit);
+    }
+
+    this.limit = limit;
+    this.timeWindowSeconds = timeWindowSeconds;
+    this.algorithm = algorithm;
+    this.refillPerSecond = refillPerSecond;
+    this.scope = scope;
+    this.windowNanos = TimeUnit.SECONDS.toNanos(timeWindowSeconds);
+    this.emissionIntervalNanos = Math.max(1, windowNanos / limit);
+
+    String signature = algorithm == Algorithm.TOKEN_BUCKET
+      ? algorithm + ":" + limit + ":" + refillPerSecond
+      : algorithm + ":" + limit + ":" + timeWindowSeconds;
+
+    if (scope != null) {
+      signature += "@" + scope;
+    }
+
+    this.signature = signature;
+    this.id = IDS.computeIfAbsent(signature, key -> NEXT_ID.getAndIncrement());
+
+    // The subnet tier refills proportionally faster, and keeps its counters apart from the per-client ones
+    this.subnetRule = subnetLimit > 0
+      ? new RateLimitRule(subnetLimit, timeWindowSeconds, algorithm, refillPerSecond * subnetLimit / limit,
+      (scope != null ? scope : "") + SUBNET_SCOPE_SUFFIX)
+      : null;
+  }
+
+  /**
+   * Creates the rule described by a {@link RateLimit} annotation
+   */
+  public static RateLimitRule from(RateLimit rateLimit) {
+    if (rateLimit.algorithm() != Algorithm.TOKEN_BUCKET) {
+      return new RateLimitRule(rateLimit.limit(), rateLimit.timeWindowSeconds(), rateLimit.algorithm())
+        .withSubnetLimit(rateLimit.subnetLimit());
+    }
+
+    int capacity = rateLimit.capacity() > 0 ? rateLimit.capacity() : rateLimit.limit();
+    double refillPerSecond = rateLimit.refillPerSecond() > 0
+      ? rateLimit.refillPerSecond()
+      : (double) rateLimit.limit() / rateLimit.timeWindowSeconds();
+
+    return new RateLimitRule(capacity, rateLimit.timeWindowSeconds(), Algorithm.TOKEN_BUCKET, refillPerSecond)
+      .withSubnetLimit(rateLimit.subnetLimit());
+  }
+
+  /**
+   * The same limit with its counters scoped to the given method or route template
+   */
+  public RateLimitRule withScope(String scope) {
+    return new RateLimitRule(limit, timeWindowSeconds, algorithm, refillPerSecond, scope, getSubnetLimit());
+  }
+
+  /**
+   * The same limit with an additional limit for all clients of a subnet together
+   *
+   * @param subnetLimit The subnet limit, in the same units as {@link #getLimit()}, or 0 for none
+   */
+  public RateLimitRule withSubnetLimit(int subnetLimit) {
+    if (subnetLimit < 0) {
+      throw new IllegalArgumentException("Subnet rate limit must not be negative, got " + subnetLimit);
+    }
+
+    if (subnetLimit == getSubnetLimit()) {
+      return this;
+    }
+
+    return new RateLimitRule(limit, timeWindowSeconds, algorithm, refillPerSecond, scope, subnetLimit);
+  }
+
+  /**
+   * Small integer identifying the rule's parameters and scope, used in place of string keys by the stores
+   */
+  public int getId() {
+    return id;
+  }
+
+  /**
+   * Text identifying the rule's parameters and scope, the same in every JVM, unlike {@link #getId()}
+   */
+  public String getSignature() {
+    return signature;
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  public int getTimeWindowSeconds() {
+    return timeWindowSeconds;
+  }
+
+  public Algorithm getAlgorithm() {
+    return algorithm;
+  }
+
+  /**
+   * Tokens added per second, only used by {@link Algorithm#TOKEN_BUCKET}
+   */
+  public double getRefillPerSecond() {
+    return refillPerSecond;
+  }
+
+  /**
+   * What the rule's counters belong to, or null if they are shared by every rule with the same parameters
+   */
+  public String getScope() {
+    return scope;
+  }
+
+  /**
+   * The limit shared by every client of a subnet, checked after the rule itself, or null if there is none
+   */
+  public RateLimitRule getSubnetRule() {
+    return subnetRule;
+  }
+
+  public int getSubnetLimit() {
+    return subnetRule != null ? subnetRule.limit : 0;
+  }
+
+  public long getWindowNanos() {
+    return windowNanos;
+  }
+
+  /**
+   * Spacing between requests at the sustained rate of limit per window
+   */
+  public long getEmissionIntervalNanos() {
+    return emissionIntervalNanos;
+  }
+
+  @Override
+  public String toString() {
+    if (algorithm == Algorithm.TOKEN_BUCKET) {
+      return algorithm + " " + limit + " tokens, " + refillPerSecond + "/s";
+    }
+
+    return algorithm + " " + limit + "/" + timeWindowSeconds + "s";
+  }
+}
@@ -0,0 +1,21 @@
+package org.example.ratelimiter;
+
+/**
+ * Which requests of a client share a counter, selected through {@link RateLimit#scope()}.
+ */
+public enum RateLimitScope {
+  /**
+   * One counter for every endpoint with the same limit parameters.
+   */
+  GLOBAL,
+
+  /**
+   * One counter per annotated handler method, whatever path reached it.
+   */
+  PER_METHOD,
+
+  /**
+   * One counter per route template, such as {@code /api/users/{id}}, shared by all methods mapped to it.
+   */
+  PER_ROUTE_TEMPLATE
+}
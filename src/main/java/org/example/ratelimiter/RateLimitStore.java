@@ -0,0 +1,38 @@
+package org.example.ratelimiter;
+
+/**
+ * Storage backend holding the per-client state of every rule.
+ * Clients are identified by the 128-bit keys produced by {@link ClientAddress}, rules by {@link RateLimitRule#getId()}.
+ * The store owns the state and runs the given algorithm against it atomically.
+ */
+public interface RateLimitStore {
+  /**
+   * Takes one request from the client's quota under the given rule
+   *
+   * @return A {@link RateLimitDecision}
+   */
+  long tryAcquire(long clientHigh, long clientLow, RateLimitRule rule, RateLimitAlgorithm<?> algorithm,
+                  long nowNanos);
+
+  /**
+   * Reports the client's quota under the given rule without consuming any of it or creating state
+   *
+   * @return A {@link RateLimitDecision}
+   */
+  long probe(long clientHigh, long clientLow, RateLimitRule rule, RateLimitAlgorithm<?> algorithm, long nowNanos);
+
+  /**
+   * Whether a call may wait on the network, such as a Redis round trip, rather than only touch memory.
+   * Callers that must never block, like a WebFlux event loop, hand such stores to a thread that may.
+   */
+  default boolean isBlocking() {
+    return false;
+  }
+
+  /**
+   * Well-mixed hash of a store key, for stores that do their own hashing
+   */
+  static long hash(long clientHigh, long clientLow, int ruleId) {
+    return ClientAddress.mix(ClientAddress.mix(clientHigh ^ ruleId) + clientLow);
+  }
+}
@@ -0,0 +1,194 @@
+package org.example.ratelimiter;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.result.method.RequestMappingInfo;
+import org.springframework.web.reactive.result.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Enforces {@link RateLimit} in WebFlux applications, where {@link RateLimitAspect} has no servlet request to read.
+ * <p>
+ * Uses the same {@link RateLimiterService} decision engine. The client key comes straight from the remote
+ * address bytes, or from {@code X-Forwarded-For} behind {@link TrustedProxies}. The decision never blocks the
+ * event loop: stores that wait on the network decide on the bounded elastic scheduler, and the request then
+ * continues on the parallel one. The 429 body is encoded once and only wrapped per response, with headers taken
+ * from the decision. Also registers the rate-limited endpoints of the reactive handler mapping at startup.
+ */
+@Component
+@ConditionalOnClass(name = "org.springframework.web.server.WebFilter")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Order(RateLimitWebFilter.ORDER)
+public class RateLimitWebFilter implements WebFilter, SmartInitializingSingleton {
+  /**
+   * Early enough to shed load ahead of most other filters
+   */
+  public static final int ORDER = Ordered.HIGHEST_PRECEDENCE + 10;
+
+  private final RateLimiterService rateLimiterService;
+  private final HandlerMapping handlerMapping;
+  private final TrustedProxies trustedProxies;
+
+  public RateLimitWebFilter(RateLimiterService rateLimiterService,
+                            @Qualifier("requestMappingHandlerMapping") HandlerMapping handlerMapping,
+                            TrustedProxies trustedProxies) {
+    this.rateLimiterService = rateLimiterService;
+    this.handlerMapping = handlerMapping;
+    this.trustedProxies = trustedProxies;
+  }
+
+  @Override
+  public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+    // A failed lookup, such as an unsupported HTTP method, is left to the DispatcherHandler to report
+    return handlerMapping.getHandler(exchange)
+      .onErrorResume(ResponseStatusException.class, e -> Mono.empty())
+      .flatMap(handler -> decide(handler, exchange))
+      .defaultIfEmpty(Boolean.TRUE)
+      .flatMap(allowed -> allowed ? chain.filter(exchange) : reject(exchange.getResponse()));
+  }
+
+  @Override
+  public void afterSingletonsInstantiated() {
+    if (!(handlerMapping instanceof RequestMappingHandlerMapping requestMapping)) {
+      return;
+    }
+
+    List<RateLimiterService.HandlerRoute> routes = new ArrayList<>();
+
+    for (Map.Entry<RequestMappingInfo, HandlerMethod> entry : requestMapping.getHandlerMethods().entrySet()) {
+      for (PathPattern pattern : entry.getKey().getPatternsCondition().getPatterns()) {
+        routes.add(new RateLimiterService.HandlerRoute(pattern.getPatternString(),
+          entry.getKey().getMethodsCondition().getMethods(), entry.getValue().getMethod()));
+      }
+
+      // Key resolvers read servlet requests; reactive endpoints are keyed on the client IP only
+      RateLimit rateLimit = entry.getValue().getMethod().getAnnotation(RateLimit.class);
+
+      if (rateLimit != null && !rateLimit.key().trim().equals(RateLimitKeyResolvers.CLIENT_IP)) {
+        throw new IllegalStateException("@RateLimit key '" + rateLimit.key() + "' on " + entry.getValue().getMethod()
+          + " is not supported in reactive applications, only " + RateLimitKeyResolvers.CLIENT_IP);
+      }
+    }
+
+    rateLimiterService.registerHandlerMethods(routes);
+  }
+
+  // Helper methods
+
+  /**
+   * Decides whether the request may proceed, on the event loop unless the store may block
+   */
+  private Mono<Boolean> decide(Object handler, ServerWebExchange exchange) {
+    if (!(handler instanceof HandlerMethod handlerMethod)
+      || !handlerMethod.getMethod().isAnnotationPresent(RateLimit.class)) {
+      return Mono.just(Boolean.TRUE);
+    }
+
+    RateLimitedMethod rateLimitedMethod = RateLimitedMethod.of(handlerMethod.getMethod());
+
+    if (!rateLimiterService.isBlocking()) {
+      return Mono.just(allow(rateLimitedMethod, exchange));
+    }
+
+    // Remote stores wait on the network, which the event loop must never do. The server's event loop is out of
+    // reach here, so the rest of the chain moves on to non-blocking threads rather than staying on elastic ones.
+    return Mono.fromCallable(() -> allow(rateLimitedMethod, exchange))
+      .subscribeOn(Schedulers.boundedElastic())
+      .publishOn(Schedulers.parallel());
+  }
+
+  /**
+   * Decides whether the request may proceed, and sets the response status and headers from the decision
+   */
+  private Boolean allow(RateLimitedMethod rateLimitedMethod, ServerWebExchange exchange) {
+    RateLimitRule rule = rateLimitedMethod.getRule();
+
+    if (rateLimitedMethod.getScope() == RateLimitScope.PER_ROUTE_TEMPLATE) {
+      // The handler lookup has left the matched route template in the exchange attributes
+      PathPattern pattern = exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+
+      rule = rateLimitedMethod.getRule(pattern != null ? pattern.getPatternString() : null);
+    }
+
+    InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+    InetAddress address = remoteAddress != null ? remoteAddress.getAddress() : null;
+    long decision;
+
+    if (address != null) {
+      byte[] bytes = address.getAddress();
+      long high = ClientAddress.high(bytes);
+      long low = ClientAddress.low(bytes);
+
+      if (trustedProxies.contains(high, low)) {
+        // The last header is the one our own proxies appended to; earlier ones are client-supplied
+        List<String> forwardedFor = exchange.getRequest().getHeaders().get(TrustedProxies.FORWARDED_FOR);
+        RateLimitKey key = new RateLimitKey();
+
+        trustedProxies.resolve(high, low,
+          forwardedFor == null || forwardedFor.isEmpty() ? null : forwardedFor.get(forwardedFor.size() - 1), key);
+        high = key.getHigh();
+        low = key.getLow();
+      }
+
+      decision = rateLimiterService.tryAcquire(high, low, rule);
+    } else {
+      // Unresolved or missing remote address; key on whatever text the server reported
+      String host = remoteAddress != null ? remoteAddress.getHostString() : "";
+
+      decision = rateLimiterService.tryAcquire(host, rule);
+    }
+
+    ServerHttpResponse response = exchange.getResponse();
+    HttpHeaders headers = response.getHeaders();
+
+    if (RateLimitDecision.isAllowed(decision)) {
+      if (rateLimitedMethod.isHeaders()) {
+        headers.set(RateLimitHeaders.LIMIT, RateLimitHeaders.value(rule.getLimit()));
+        headers.set(RateLimitHeaders.REMAINING, RateLimitHeaders.value(RateLimitDecision.remaining(decision)));
+        headers.set(RateLimitHeaders.RESET, RateLimitHeaders.value(RateLimitDecision.waitSeconds(decision)));
+      }
+
+      return Boolean.TRUE;
+    }
+
+    // Rate limit exceeded, return 429 Too Many Requests
+    String retryAfter = RateLimitHeaders.value(RateLimitDecision.waitSeconds(decision));
+
+    response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+    headers.set(RateLimitHeaders.RETRY_AFTER, retryAfter);
+    headers.set(RateLimitHeaders.LIMIT, RateLimitHeaders.value(rule.getLimit()));
+    headers.set(RateLimitHeaders.REMAINING, RateLimitHeaders.value(0));
+    headers.set(RateLimitHeaders.RESET, retryAfter);
+    headers.set(HttpHeaders.CONTENT_TYPE, RateLimitHeaders.REJECTED_CONTENT_TYPE);
+    headers.setContentLength(RateLimitHeaders.REJECTED_BODY.length);
+
+    return Boolean.FALSE;
+  }
+
+  private Mono<Void> reject(ServerHttpResponse response) {
+    return response.writeWith(Mono.just(response.bufferFactory().wrap(RateLimitHeaders.REJECTED_BODY)));
+  }
+}
@@ -0,0 +1,135 @@
+package org.example.ratelimiter;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Immutable rate limit metadata of a {@link RateLimit} handler method.
+ * <p>
+ * The annotation, the rule and the description are resolved once per declaring class, the first time any of its
+ * methods is called, and kept in a {@link ClassValue}, so the request path only does a map lookup.
+ * Rules scoped {@link RateLimitScope#PER_ROUTE_TEMPLATE} are derived once per template and cached as well.
+ */
+public final class RateLimitedMethod {
+  private static final ClassValue<Map<Method, RateLimitedMethod>> METHODS = new ClassValue<>() {
+    @Override
+    protected Map<Method, RateLimitedMethod> computeValue(Class<?> type) {
+      Map<Method, RateLimitedMethod> methods = new HashMap<>();
+
+      for (Method method : type.getDeclaredMethods()) {
+        RateLimit rateLimit = method.getAnnotation(RateLimit.class);
+
+        if (rateLimit != null) {
+          methods.put(method, new RateLimitedMethod(method, rateLimit));
+        }
+      }
+
+      return Map.copyOf(methods);
+    }
+  };
+
+  private final Method method;
+  private final RateLimitScope scope;
+  private final RateLimitRule rule;
+  private final String description;
+  private final RateLimiterService.RateLimitInfo info;
+  private final boolean headers;
+  private final String key;
+  private final ConcurrentHashMap<String, RateLimitRule> routeRules = new ConcurrentHashMap<>();
+  private final Function<String, RateLimitRule> routeRuleFactory;
+
+  private RateLimitedMethod(Method method, RateLimit rateLimit) {
+    RateLimitRule parameters = RateLimitRule.from(rateLimit);
+
+    this.method = method;
+
+    // Route template rules are derived per template; without a template they fall back to the method
+    this.scope = rateLimit.scope();
+    this.rule = scope == RateLimitScope.GLOBAL ? parameters : parameters.withScope(method.toString());
+    this.routeRuleFactory = parameters::withScope;
+
+    int timeWindowSeconds = rule.getTimeWindowSeconds();
+    String methodName = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+
+    this.description = methodName + " (limit: " + rule.getLimit() + " requests per " +
+      (timeWindowSeconds == 60 ? "minute" : timeWindowSeconds + " seconds") + ")";
+    this.info = new RateLimiterService.RateLimitInfo(rule, description);
+    this.headers = rateLimit.headers();
+    this.key = rateLimit.key();
+  }
+
+  /**
+   * Gets the metadata of a method annotated with {@link RateLimit}
+   *
+   * @throws IllegalArgumentException If the method is not annotated
+   */
+  public static RateLimitedMethod of(Method method) {
+    RateLimitedMethod rateLimitedMethod = METHODS.get(method.getDeclaringClass()).get(method);
+
+    if (rateLimitedMethod == null) {
+      throw new IllegalArgumentException("Method " + method + " is not annotated with @RateLimit");
+    }
+
+    return rateLimitedMethod;
+  }
+
+  public Method getMethod() {
+    return method;
+  }
+
+  public RateLimitScope getScope() {
+    return scope;
+  }
+
+  /**
+   * The rule of the method, for every request unless it is scoped per route template
+   */
+  public RateLimitRule getRule() {
+    return rule;
+  }
+
+  /**
+   * The rule for a request that matched the given route template
+   *
+   * @param routeTemplate The best matching pattern of the request, or null if unknown
+   */
+  public RateLimitRule getRule(String routeTemplate) {
+    if (scope != RateLimitScope.PER_ROUTE_TEMPLATE || routeTemplate == null) {
+      return rule;
+    }
+
+    RateLimitRule routeRule = routeRules.get(routeTemplate);
+
+    return routeRule != null ? routeRule : routeRules.computeIfAbsent(routeTemplate, routeRuleFactory);
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  /**
+   * Registry entry for the method under the given route template
+   */
+  public RateLimiterService.RateLimitInfo getInfo(String routeTemplate) {
+    RateLimitRule routeRule = getRule(routeTemplate);
+
+    return routeRule == rule ? info : new RateLimiterService.RateLimitInfo(routeRule, description);
+  }
+
+  /**
+   * Whether allowed responses carry RateLimit-* headers
+   */
+  public boolean isHeaders() {
+    return headers;
+  }
+
+  /**
+   * The key specification of the method, compiled by {@link RateLimitKeyResolvers}
+   */
+  public String getKey() {
+    return key;
+  }
+}
\ No newline at end of file
@@ -1,11 +1,22 @@
 package org.example.ratelimiter;
 
 import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 @EnableCaching
@@ -13,15 +24,108 @@ public class RateLimiterConfig {
   // Cache name constant to match the one used in RateLimiterService
   public static final String CACHE_NAME = "ipRateLimitCache";
 
+  // Threads making lease calls to Redis; leases are occasional, so a few suffice
+  private static final int LEASE_THREADS = 4;
+
+  // Counters the leased and gossip stores keep per client and rule at most
+  private static final long DISTRIBUTED_MAXIMUM_SIZE = 100_000;
+
   @Bean
   public CacheManager cacheManager() {
     CaffeineCacheManager cacheManager = new CaffeineCacheManager(CACHE_NAME);
 
     cacheManager.setCaffeine(Caffeine.newBuilder()
-      // We don't need expiry here since we handle it manually in the service
-      // for more precise control over the time windows
+      // Each entry expires once idle long enough to be indistinguishable from a new one,
+      // so memory stays bounded under IP churn without waiting for size eviction
+      .expireAfter(new CaffeineRateLimitStore.IdleExpiry())
       .maximumSize(10000));
 
     return cacheManager;
   }
-} 
\ No newline at end of file
+
+  /**
+   * Selects where per-client state lives through the {@code ratelimiter.store} property:
+   * {@code caffeine} (default), {@code offheap} for very large client populations, {@code redis} to share limits
+   * across replicas, {@code leased} to share them with Redis leases rather than a round trip per request or
+   * {@code gossip} to share them approximately between peers, without any central store.
+   * <p>
+   * With {@code ratelimiter.snapshot.path} set, the off-heap store restores its state from that file at startup
+   * and saves it there every {@code ratelimiter.snapshot.interval-seconds} and on shutdown.
+   */
+  @Bean
+  public RateLimitStore rateLimitStore(CacheManager cacheManager,
+                                       @Value("${ratelimiter.store:caffeine}") String store,
+                                       @Value("${ratelimiter.offheap.capacity:1048576}") long offHeapCapacity,
+                                       @Value("${ratelimiter.snapshot.path:}") String snapshotPath,
+                                       @Value("${ratelimiter.snapshot.interval-seconds:60}") long snapshotSeconds,
+                                       List<RateLimitAlgorithm<?>> algorithms,
+                                       ObjectProvider<StringRedisTemplate> redisTemplate,
+                                       @Value("${ratelimiter.redis.key-prefix:ratelimiter:}") String redisKeyPrefix,
+                                       @Value("${ratelimiter.lease.fraction:0.1}") double leaseFraction,
+                                       @Value("${ratelimiter.lease.timeout-millis:50}") long leaseTimeoutMillis,
+                                       @Value("${ratelimiter.gossip.port:7946}") int gossipPort,
+                                       @Value("${ratelimiter.gossip.peers:}") String[] gossipPeers,
+                                       @Value("${ratelimiter.gossip.interval-millis:100}") long gossipIntervalMillis) {
+    RateLimitStore caffeineStore = new CaffeineRateLimitStore(cacheManager);
+
+    return switch (store) {
+      case "caffeine" -> caffeineStore;
+      case "offheap" -> offHeapStore(offHeapCapacity, caffeineStore, snapshotPath, snapshotSeconds, algorithms);
+      case "redis" -> new RedisRateLimitStore(redisTemplate.getObject(), redisKeyPrefix, caffeineStore);
+      case "leased" -> new LeasedRateLimitStore(
+        new RedisQuotaLedger(redisTemplate.getObject(), redisKeyPrefix + "lease:", leaseExecutor()), leaseFraction,
+        TimeUnit.MILLISECONDS.toNanos(leaseTimeoutMillis), DISTRIBUTED_MAXIMUM_SIZE,
+        new RedisRateLimitStore(redisTemplate.getObject(), redisKeyPrefix, caffeineStore), caffeineStore);
+      case "gossip" -> new GossipRateLimitStore(new InetSocketAddress(gossipPort),
+        GossipRateLimitStore.peers(Arrays.asList(gossipPeers)), TimeUnit.MILLISECONDS.toNanos(gossipIntervalMillis),
+        DISTRIBUTED_MAXIMUM_SIZE, caffeineStore);
+      default -> throw new IllegalArgumentException("Unknown ratelimiter.store '" + store + "'");
+    };
+  }
+
+  /**
+   * Proxies whose {@code X-Forwarded-For} header is believed, from the {@code ratelimiter.trusted-proxies} list of
+   * networks such as {@code 10.0.0.0/8, 2001:db8::/32}. Empty by default, so the header is ignored.
+   * {@code ratelimiter.max-forwarded-hops} bounds how many header entries a request may make us examine.
+   */
+  @Bean
+  public TrustedProxies trustedProxies(@Value("${ratelimiter.trusted-proxies:}") String[] networks,
+                                       @Value("${ratelimiter.max-forwarded-hops:8}") int maxForwardedHops) {
+    return TrustedProxies.of(Arrays.asList(networks), maxForwardedHops);
+  }
+
+  /**
+   * The subnets that {@link RateLimit#subnetLimit()} and the {@code subnet} key count together, sized by
+   * {@code ratelimiter.subnet.ipv4-prefix} (default 24) and {@code ratelimiter.subnet.ipv6-prefix} (default 64)
+   */
+  @Bean
+  public SubnetMask subnetMask(@Value("${ratelimiter.subnet.ipv4-prefix:24}") int ipv4PrefixLength,
+                               @Value("${ratelimiter.subnet.ipv6-prefix:64}") int ipv6PrefixLength) {
+    return new SubnetMask(ipv4PrefixLength, ipv6PrefixLength);
+  }
+
+  // Helper methods
+
+  private static OffHeapRateLimitStore offHeapStore(long capacity, RateLimitStore fallback, String snapshotPath,
+                                                    long snapshotSeconds, List<RateLimitAlgorithm<?>> algorithms) {
+    OffHeapRateLimitStore store = new OffHeapRateLimitStore(capacity, fallback);
+
+    if (snapshotPath.isEmpty()) {
+      return store;
+    }
+
+    store.enableSnapshots(Path.of(snapshotPath), TimeUnit.SECONDS.toNanos(snapshotSeconds), algorithms);
+
+    return store;
+  }
+
+  private static Executor leaseExecutor() {
+    return Executors.newFixedThreadPool(LEASE_THREADS, runnable -> {
+      Thread thread = new Thread(runnable, "ratelimiter-lease");
+
+      thread.setDaemon(true);
+
+      return thread;
+    });
+  }
+}
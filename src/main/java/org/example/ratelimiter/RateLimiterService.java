@@ -1,100 +1,246 @@
 package org.example.ratelimiter;
 
-import org.springframework.cache.Cache;
-import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
+import org.springframework.web.bind.annotation.RequestMethod;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Service responsible for enforcing rate limits
+ * Service responsible for enforcing rate limits.
+ * The counting itself is delegated to the {@link RateLimitAlgorithm} selected by each rule.
  */
 @Service
 public class RateLimiterService {
-  private final CacheManager cacheManager;
   private static final int DEFAULT_LIMIT = 60;
   private static final int DEFAULT_TIME_WINDOW_SECONDS = 60;
 
-  // Map to store expiry times for different rate limits
-  private final ConcurrentHashMap<String, Long> expiryTimes = new ConcurrentHashMap<>();
+  private final RateLimitStore store;
+  private final SubnetMask subnetMask;
+  private final EnumMap<Algorithm, RateLimitAlgorithm<?>> algorithms = new EnumMap<>(Algorithm.class);
 
-  // Map to store all registered rate limits (endpointPath -> RateLimitInfo)
-  private final ConcurrentHashMap<String, RateLimitInfo> rateLimitRegistry = new ConcurrentHashMap<>();
+  // All registered rate limits, indexed by endpoint id, and the same entries by endpoint path.
+  // Both are frozen and replaced as a whole on registration, which only happens at startup.
+  private volatile RateLimitEndpoint[] endpoints = new RateLimitEndpoint[0];
+  private volatile Map<String, RateLimitInfo> rateLimitRegistry = Map.of();
+  private final ReentrantLock registrationLock = new ReentrantLock();
 
-  public RateLimiterService(CacheManager cacheManager) {
-    this.cacheManager = cacheManager;
+  // Rules for the (limit, window) overloads by both packed into a long, and the last one handed out
+  private final ConcurrentHashMap<Long, RateLimitRule> fixedWindowRules = new ConcurrentHashMap<>();
+  private volatile RateLimitRule lastFixedWindowRule;
+
+  public RateLimiterService(RateLimitStore store, List<RateLimitAlgorithm<?>> algorithms, SubnetMask subnetMask) {
+    this.store = store;
+    this.subnetMask = subnetMask;
+
+    for (RateLimitAlgorithm<?> algorithm : algorithms) {
+      this.algorithms.put(algorithm.type(), algorithm);
+    }
   }
 
   /**
    * Registers a rate-limited endpoint in the registry
    */
-  public void registerRateLimit(String endpointPath, int limit, int timeWindowSeconds, String description) {
-    rateLimitRegistry.put(endpointPath, new RateLimitInfo(limit, timeWindowSeconds, description));
+  public void registerRateLimit(String endpointPath, RateLimitRule rule, String description) {
+    registerRateLimit(endpointPath, new RateLimitInfo(rule, description));
   }
 
   /**
-   * Checks if the request from the given IP should be allowed based on default rate limits
+   * Registers a rate-limited endpoint in the registry. A path that is already registered keeps its endpoint id.
+   *
+   * @return The registered endpoint
    */
-  public boolean allowRequest(String ipAddress) {
-    return allowRequest(ipAddress, DEFAULT_LIMIT, DEFAULT_TIME_WINDOW_SECONDS);
+  public RateLimitEndpoint registerRateLimit(String endpointPath, RateLimitInfo info) {
+    return registerRateLimit(endpointPath, info, null);
   }
 
   /**
-   * Checks if the request from the given IP should be allowed based on specified rate limits
+   * Registers a rate-limited handler method in the registry. A path that is already registered keeps its endpoint id.
+   *
+   * @param handler The annotated handler method, or null for endpoints registered by hand
+   * @return The registered endpoint
    */
-  public boolean allowRequest(String ipAddress, int limit, int timeWindowSeconds) {
-    Cache cache = cacheManager.getCache(RateLimiterConfig.CACHE_NAME);
+  public RateLimitEndpoint registerRateLimit(String endpointPath, RateLimitInfo info, Method handler) {
+    registrationLock.lock();
+
+    try {
+      RateLimitEndpoint[] current = endpoints;
+      int id = current.length;
+
+      for (RateLimitEndpoint endpoint : current) {
+        if (endpoint.getPath().equals(endpointPath)) {
+          id = endpoint.getId();
+        }
+      }
+
+      RateLimitEndpoint[] updated = Arrays.copyOf(current, Math.max(current.length, id + 1));
+      Map<String, RateLimitInfo> registry = new LinkedHashMap<>();
+
+      updated[id] = new RateLimitEndpoint(id, endpointPath, info, handler);
+
+      for (RateLimitEndpoint endpoint : updated) {
+        registry.put(endpoint.getPath(), endpoint.getInfo());
+      }
+
+      endpoints = updated;
+      rateLimitRegistry = Collections.unmodifiableMap(registry);
 
-    if (cache == null) {
-      return true;
+      return updated[id];
+    } finally {
+      registrationLock.unlock();
     }
+  }
 
-    String cacheKey = buildCacheKey(ipAddress, limit, timeWindowSeconds);
-    checkAndResetExpiredCounter(cache, cacheKey);
+  /**
+   * Registers the {@link RateLimit} methods among the given handler routes.
+   * Routes that share a handler and a counter become one endpoint, so the registry holds one entry per annotated
+   * handler, or per route template for {@link RateLimitScope#PER_ROUTE_TEMPLATE}, however many URIs they serve.
+   * Handlers mapped to the same pattern for different HTTP methods remain separate endpoints.
+   */
+  public void registerHandlerMethods(List<HandlerRoute> routes) {
+    // Sorted by route so endpoint ids are the same on every start; rules are per method, so they identify the counter
+    Map<RateLimitRule, List<String>> routesByRule = new LinkedHashMap<>();
+    Map<RateLimitRule, HandlerRoute> firstRouteByRule = new HashMap<>();
+    List<HandlerRoute> sorted = new ArrayList<>(routes);
 
-    Cache.ValueWrapper valueWrapper = cache.get(cacheKey);
-    AtomicInteger counter;
+    sorted.sort(Comparator.comparing(HandlerRoute::getName));
 
-    if (valueWrapper == null) {
-      // First request in this time window
-      counter = new AtomicInteger(1);
-      cache.put(cacheKey, counter);
-      updateExpiryTime(cacheKey, timeWindowSeconds);
+    for (HandlerRoute route : sorted) {
+      Method method = route.getMethod();
 
-      return true;
-    } else {
-      // Subsequent request in this time window
-      counter = (AtomicInteger) valueWrapper.get();
-      int currentCount = counter.incrementAndGet();
+      if (method.isAnnotationPresent(RateLimit.class)) {
+        RateLimitRule rule = RateLimitedMethod.of(method).getRule(route.getPattern());
 
-      // If this is a new time window, update the expiry time
-      if (!expiryTimes.containsKey(cacheKey)) {
-        updateExpiryTime(cacheKey, timeWindowSeconds);
+        routesByRule.computeIfAbsent(rule, key -> new ArrayList<>()).add(route.getName());
+        firstRouteByRule.putIfAbsent(rule, route);
       }
+    }
+
+    for (Map.Entry<RateLimitRule, List<String>> endpoint : routesByRule.entrySet()) {
+      HandlerRoute route = firstRouteByRule.get(endpoint.getKey());
 
-      return currentCount <= limit;
+      registerRateLimit(String.join(", ", endpoint.getValue()),
+        RateLimitedMethod.of(route.getMethod()).getInfo(route.getPattern()), route.getMethod());
     }
   }
 
   /**
-   * Gets the current count of requests for the given IP address
+   * Whether decisions may wait on the network; see {@link RateLimitStore#isBlocking()}
    */
-  public int getCurrentCount(String ipAddress, int limit, int timeWindowSeconds) {
-    Cache cache = cacheManager.getCache(RateLimiterConfig.CACHE_NAME);
+  public boolean isBlocking() {
+    return store.isBlocking();
+  }
+
+  /**
+   * Gets a registered endpoint by id
+   */
+  public RateLimitEndpoint getEndpoint(int id) {
+    return endpoints[id];
+  }
+
+  /**
+   * Gets all registered endpoints, in id order
+   */
+  public List<RateLimitEndpoint> getEndpoints() {
+    return List.of(endpoints);
+  }
+
+  /**
+   * Checks if the request from the given IP should be allowed based on default rate limits
+   */
+  public boolean allowRequest(String ipAddress) {
+    return allowRequest(ipAddress, DEFAULT_LIMIT, DEFAULT_TIME_WINDOW_SECONDS);
+  }
+
+  /**
+   * Checks if the request from the given IP should be allowed based on specified fixed window limits
+   */
+  public boolean allowRequest(String ipAddress, int limit, int timeWindowSeconds) {
+    return allowRequest(ipAddress, fixedWindowRule(limit, timeWindowSeconds));
+  }
+
+  /**
+   * Checks if the request from the given IP should be allowed under the given rule
+   */
+  public boolean allowRequest(String ipAddress, RateLimitRule rule) {
+    return RateLimitDecision.isAllowed(tryAcquire(ipAddress, rule));
+  }
+
+  /**
+   * Takes one request from the quota of the given IP under the given rule.
+   * The address is parsed once into a numeric key.
+   *
+   * @return A {@link RateLimitDecision}
+   */
+  public long tryAcquire(String ipAddress, RateLimitRule rule) {
+    RateLimitKey key = new RateLimitKey();
+
+    ClientAddress.parse(ipAddress, key);
 
-    if (cache == null) {
-      return 0;
+    return tryAcquire(key.getHigh(), key.getLow(), rule);
+  }
+
+  /**
+   * Takes one request from the quota of the given client key under the given rule, and then from the quota of the
+   * client's subnet if the rule has a subnet limit. A request the subnet rejects has still used its client's quota.
+   *
+   * @return A {@link RateLimitDecision}: the rejecting one, or the client's if both allow the request
+   */
+  public long tryAcquire(long clientHigh, long clientLow, RateLimitRule rule) {
+    long now = RateLimitClock.nanoTime();
+    long decision = store.tryAcquire(clientHigh, clientLow, rule, algorithmFor(rule), now);
+    RateLimitRule subnetRule = rule.getSubnetRule();
+
+    // Keys that are not addresses have no subnet
+    if (subnetRule == null || !RateLimitDecision.isAllowed(decision) || clientHigh == ClientAddress.HASHED_HIGH) {
+      return decision;
     }
 
-    String cacheKey = buildCacheKey(ipAddress, limit, timeWindowSeconds);
-    Cache.ValueWrapper valueWrapper = cache.get(cacheKey);
+    long subnetHigh = subnetMask.high(clientHigh, clientLow);
+    long subnetLow = subnetMask.low(clientHigh, clientLow);
+    long subnetDecision = store.tryAcquire(subnetHigh, subnetLow, subnetRule, algorithmFor(subnetRule), now);
+
+    return RateLimitDecision.isAllowed(subnetDecision) ? decision : subnetDecision;
+  }
+
+  /**
+   * Reports the quota of the given IP under the given rule without consuming any of it
+   *
+   * @return A {@link RateLimitDecision}
+   */
+  public long probe(String ipAddress, RateLimitRule rule) {
+    RateLimitKey key = new RateLimitKey();
+
+    ClientAddress.parse(ipAddress, key);
+
+    return store.probe(key.getHigh(), key.getLow(), rule, algorithmFor(rule), RateLimitClock.nanoTime());
+  }
+
+  /**
+   * Gets the current count of requests for the given IP address
+   */
+  public int getCurrentCount(String ipAddress, int limit, int timeWindowSeconds) {
+    return getCurrentCount(ipAddress, fixedWindowRule(limit, timeWindowSeconds));
+  }
 
-    return valueWrapper == null ? 0 : ((AtomicInteger) valueWrapper.get()).get();
+  /**
+   * Gets the current count of requests for the given IP address under the given rule
+   */
+  public int getCurrentCount(String ipAddress, RateLimitRule rule) {
+    return rule.getLimit() - RateLimitDecision.remaining(probe(ipAddress, rule));
   }
 
   /**
@@ -108,7 +254,7 @@ public class RateLimiterService {
    * Gets the registry of all rate-limited endpoints
    */
   public Map<String, RateLimitInfo> getRateLimitRegistry() {
-    return Collections.unmodifiableMap(rateLimitRegistry);
+    return rateLimitRegistry;
   }
 
   /**
@@ -118,23 +264,22 @@ public class RateLimiterService {
     List<RateLimitStatus> statusList = new ArrayList<>();
 
     // Check each registered rate limit
-    for (Map.Entry<String, RateLimitInfo> entry : rateLimitRegistry.entrySet()) {
-      String endpoint = entry.getKey();
-      RateLimitInfo info = entry.getValue();
+    for (RateLimitEndpoint endpoint : endpoints) {
+      RateLimitInfo info = endpoint.getInfo();
 
-      int currentCount = getCurrentCount(ipAddress, info.getLimit(), info.getTimeWindowSeconds());
-      long remainingRequests = Math.max(0, info.getLimit() - currentCount);
+      long decision = probe(ipAddress, info.getRule());
+      long remainingRequests = RateLimitDecision.remaining(decision);
+      int currentCount = (int) (info.getLimit() - remainingRequests);
 
-      // Calculate time remaining in the current window
-      String cacheKey = buildCacheKey(ipAddress, info.getLimit(), info.getTimeWindowSeconds());
-      Long expiryTime = expiryTimes.get(cacheKey);
-      long timeRemainingMs = expiryTime != null ? Math.max(0, expiryTime - System.currentTimeMillis()) : 0;
+      // Time until the quota is restored
+      long timeRemainingMs = RateLimitDecision.waitMillis(decision);
 
       statusList.add(new RateLimitStatus(
-        endpoint,
+        endpoint.getPath(),
         info.getDescription(),
         info.getLimit(),
         info.getTimeWindowSeconds(),
+        info.getRule().getAlgorithm(),
         currentCount,
         remainingRequests,
         timeRemainingMs / 1000 // Convert to seconds
@@ -146,22 +291,72 @@ public class RateLimiterService {
 
   // Helper methods
 
-  private String buildCacheKey(String ipAddress, int limit, int timeWindowSeconds) {
-    return ipAddress + ":" + limit + ":" + timeWindowSeconds;
+  /**
+   * The fixed window rule for the given parameters, built once per distinct pair rather than per request
+   */
+  private RateLimitRule fixedWindowRule(int limit, int timeWindowSeconds) {
+    RateLimitRule rule = lastFixedWindowRule;
+
+    // Callers nearly always pass the same constants, and a hit here does not even box the map key
+    if (rule != null && rule.getLimit() == limit && rule.getTimeWindowSeconds() == timeWindowSeconds) {
+      return rule;
+    }
+
+    rule = fixedWindowRules.computeIfAbsent(((long) limit << 32) | (timeWindowSeconds & 0xFFFF_FFFFL),
+      key -> new RateLimitRule(limit, timeWindowSeconds, Algorithm.FIXED_WINDOW));
+    lastFixedWindowRule = rule;
+
+    return rule;
   }
 
-  private void updateExpiryTime(String cacheKey, int timeWindowSeconds) {
-    expiryTimes.put(cacheKey, System.currentTimeMillis() + (timeWindowSeconds * 1000L));
+  private RateLimitAlgorithm<?> algorithmFor(RateLimitRule rule) {
+    RateLimitAlgorithm<?> algorithm = algorithms.get(rule.getAlgorithm());
+
+    if (algorithm == null) {
+      throw new IllegalStateException("No RateLimitAlgorithm registered for " + rule.getAlgorithm());
+    }
+
+    return algorithm;
   }
 
-  private void checkAndResetExpiredCounter(Cache cache, String cacheKey) {
-    Long expiryTime = expiryTimes.get(cacheKey);
-    long currentTime = System.currentTimeMillis();
+  /**
+   * A handler method and one path pattern it is mapped to, with the HTTP methods it is restricted to, if any
+   */
+  public static final class HandlerRoute {
+    private final String pattern;
+    private final Method method;
+    private final String name;
+
+    public HandlerRoute(String pattern, Set<RequestMethod> requestMethods, Method method) {
+      this.pattern = pattern;
+      this.method = method;
+
+      if (requestMethods.isEmpty()) {
+        this.name = pattern;
+      } else {
+        StringJoiner methods = new StringJoiner(",", "", " " + pattern);
+
+        for (RequestMethod requestMethod : new TreeSet<>(requestMethods)) {
+          methods.add(requestMethod.name());
+        }
+
+        this.name = methods.toString();
+      }
+    }
+
+    public String getPattern() {
+      return pattern;
+    }
 
-    if (expiryTime != null && currentTime > expiryTime) {
-      // Time window has expired, reset the counter
-      cache.evict(cacheKey);
-      expiryTimes.remove(cacheKey);
+    public Method getMethod() {
+      return method;
+    }
+
+    /**
+     * The pattern, preceded by the HTTP methods if restricted, such as {@code GET,HEAD /items/{id}}
+     */
+    public String getName() {
+      return name;
     }
   }
 
@@ -169,22 +364,24 @@ public class RateLimiterService {
    * Value class to store information about a rate limit configuration
    */
   public static class RateLimitInfo {
-    private final int limit;
-    private final int timeWindowSeconds;
+    private final RateLimitRule rule;
     private final String description;
 
-    public RateLimitInfo(int limit, int timeWindowSeconds, String description) {
-      this.limit = limit;
-      this.timeWindowSeconds = timeWindowSeconds;
+    public RateLimitInfo(RateLimitRule rule, String description) {
+      this.rule = rule;
       this.description = description;
     }
 
+    public RateLimitRule getRule() {
+      return rule;
+    }
+
     public int getLimit() {
-      return limit;
+      return rule.getLimit();
     }
 
     public int getTimeWindowSeconds() {
-      return timeWindowSeconds;
+      return rule.getTimeWindowSeconds();
     }
 
     public String getDescription() {
@@ -200,16 +397,19 @@ public class RateLimiterService {
     private final String description;
     private final int limit;
     private final int timeWindowSeconds;
+    private final Algorithm algorithm;
     private final int currentCount;
     private final long remainingRequests;
     private final long timeRemainingSeconds;
 
     public RateLimitStatus(String endpoint, String description, int limit, int timeWindowSeconds,
-                           int currentCount, long remainingRequests, long timeRemainingSeconds) {
+                           Algorithm algorithm, int currentCount, long remainingRequests,
+                           long timeRemainingSeconds) {
       this.endpoint = endpoint;
       this.description = description;
       this.limit = limit;
       this.timeWindowSeconds = timeWindowSeconds;
+      this.algorithm = algorithm;
       this.currentCount = currentCount;
       this.remainingRequests = remainingRequests;
       this.timeRemainingSeconds = timeRemainingSeconds;
@@ -231,6 +431,10 @@ public class RateLimiterService {
       return timeWindowSeconds;
     }
 
+    public Algorithm getAlgorithm() {
+      return algorithm;
+    }
+
     public int getCurrentCount() {
       return currentCount;
     }
@@ -0,0 +1,49 @@
+package org.example.ratelimiter;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ledger in Redis, shared by every replica. A lease is one atomic script ({@code ratelimiter/lease.lua}) that
+ * grants what is left of the requested permits in the current window, on the Redis server's clock.
+ * Leases run on the given executor, so requests never wait for Redis unless they have no permits at all.
+ */
+public class RedisQuotaLedger implements QuotaLedger {
+  private static final long NANOS_PER_MICRO = 1_000;
+
+  @SuppressWarnings("rawtypes")
+  private final RedisScript<List> script = RedisScript.of(new ClassPathResource("ratelimiter/lease.lua"), List.class);
+  private final StringRedisTemplate redis;
+  private final String keyPrefix;
+  private final Executor executor;
+
+  /**
+   * @param keyPrefix Prefix of every key, distinct from the one of a {@link RedisRateLimitStore}
+   * @param executor  Runs the blocking Redis calls
+   */
+  public RedisQuotaLedger(StringRedisTemplate redis, String keyPrefix, Executor executor) {
+    this.redis = redis;
+    this.keyPrefix = keyPrefix;
+    this.executor = executor;
+  }
+
+  @Override
+  public CompletableFuture<Grant> lease(long clientHigh, long clientLow, RateLimitRule rule, int permits) {
+    String key = RedisRateLimitStore.key(keyPrefix, clientHigh, clientLow, RedisRateLimitStore.keySuffix(rule));
+    String windowMicros = Long.toString(TimeUnit.NANOSECONDS.toMicros(rule.getWindowNanos()));
+
+    return CompletableFuture.supplyAsync(() -> {
+      List<?> result = redis.execute(script, List.of(key), Integer.toString(permits),
+        Integer.toString(rule.getLimit()), windowMicros);
+
+      return new Grant(((Number) result.get(0)).intValue(), ((Number) result.get(1)).longValue(),
+        ((Number) result.get(2)).longValue() * NANOS_PER_MICRO, ((Number) result.get(3)).longValue());
+    }, executor);
+  }
+}
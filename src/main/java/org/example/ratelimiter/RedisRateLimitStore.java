@@ -0,0 +1,152 @@
+package org.example.ratelimiter;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Store shared by every replica of the service, keeping per-client state in Redis so a limit holds across all of
+ * them rather than per replica.
+ * <p>
+ * Each algorithm is one Lua script (see {@code src/main/resources/ratelimiter}), so a decision is a single atomic
+ * round trip. Scripts are sent once and then invoked by their SHA. Scripts read the time from the Redis server
+ * rather than taking {@code nowNanos}, since monotonic clocks are not comparable across JVMs. Keys are derived from
+ * the rule signature rather than its id, which is only stable within one JVM, and expire once idle.
+ * <p>
+ * Concurrent requests share one Lettuce connection, which pipelines their commands. If Redis cannot be reached,
+ * times out or refuses the command, as it does while loading, running a busy script or without a master, the
+ * decision is made by the fallback store instead and counted in {@link #getFallbackCount()}, so an outage degrades
+ * limits to per-replica ones rather than failing requests. Calls block for at most the command
+ * timeout of the template's connection factory ({@code spring.data.redis.timeout}), so keep it short.
+ */
+public class RedisRateLimitStore implements RateLimitStore {
+  private static final String PROBE = "1";
+  private static final String ACQUIRE = "0";
+  private static final long NANOS_PER_MICRO = 1_000;
+
+  @SuppressWarnings("rawtypes")
+  private final EnumMap<Algorithm, RedisScript<List>> scripts = new EnumMap<>(Algorithm.class);
+  private final StringRedisTemplate redis;
+  private final String keyPrefix;
+  private final RateLimitStore fallback;
+  private final LongAdder fallbacks = new LongAdder();
+
+  // Key suffix and script arguments per rule id
+  private final ConcurrentHashMap<Integer, RuleArguments> arguments = new ConcurrentHashMap<>();
+
+  /**
+   * @param keyPrefix Prefix of every key, such as {@code ratelimiter:}
+   * @param fallback  Store deciding while Redis is unavailable
+   */
+  public RedisRateLimitStore(StringRedisTemplate redis, String keyPrefix, RateLimitStore fallback) {
+    this.redis = redis;
+    this.keyPrefix = keyPrefix;
+    this.fallback = fallback;
+
+    for (Algorithm algorithm : Algorithm.values()) {
+      String name = algorithm.name().toLowerCase(Locale.ROOT);
+
+      scripts.put(algorithm, RedisScript.of(new ClassPathResource("ratelimiter/" + name + ".lua"), List.class));
+    }
+  }
+
+  @Override
+  public long tryAcquire(long clientHigh, long clientLow, RateLimitRule rule, RateLimitAlgorithm<?> algorithm,
+                         long nowNanos) {
+    return execute(clientHigh, clientLow, rule, algorithm, nowNanos, false);
+  }
+
+  @Override
+  public long probe(long clientHigh, long clientLow, RateLimitRule rule, RateLimitAlgorithm<?> algorithm,
+                    long nowNanos) {
+    return execute(clientHigh, clientLow, rule, algorithm, nowNanos, true);
+  }
+
+  @Override
+  public boolean isBlocking() {
+    return true;
+  }
+
+  /**
+   * Number of decisions made by the fallback store because Redis was unavailable
+   */
+  public long getFallbackCount() {
+    return fallbacks.sum();
+  }
+
+  // Helper methods
+
+  private long execute(long clientHigh, long clientLow, RateLimitRule rule, RateLimitAlgorithm<?> algorithm,
+                       long nowNanos, boolean probe) {
+    RuleArguments ruleArguments = arguments.get(rule.getId());
+
+    if (ruleArguments == null) {
+      ruleArguments = arguments.computeIfAbsent(rule.getId(), id -> new RuleArguments(rule));
+    }
+
+    String key = key(keyPrefix, clientHigh, clientLow, ruleArguments.keySuffix);
+    List<?> result;
+
+    try {
+      result = redis.execute(scripts.get(rule.getAlgorithm()), List.of(key),
+        probe ? ruleArguments.probe : ruleArguments.acquire);
+    } catch (DataAccessException e) {
+      fallbacks.increment();
+
+      return probe
+        ? fallback.probe(clientHigh, clientLow, rule, algorithm, nowNanos)
+        : fallback.tryAcquire(clientHigh, clientLow, rule, algorithm, nowNanos);
+    }
+
+    long waitNanos = ((Number) result.get(2)).longValue() * NANOS_PER_MICRO;
+
+    if (((Number) result.get(0)).longValue() == 0) {
+      return RateLimitDecision.rejected(waitNanos);
+    }
+
+    return RateLimitDecision.allowed(((Number) result.get(1)).longValue(), waitNanos);
+  }
+
+  /**
+   * Redis key of a client under a rule; the same in every JVM
+   */
+  static String key(String keyPrefix, long clientHigh, long clientLow, String ruleSuffix) {
+    return keyPrefix + Long.toHexString(clientHigh) + ':' + Long.toHexString(clientLow) + ruleSuffix;
+  }
+
+  /**
+   * Key suffix identifying a rule by its signature
+   */
+  static String keySuffix(RateLimitRule rule) {
+    String signature = rule.getSignature();
+
+    return ':' + Long.toHexString(ClientAddress.hash(signature, 0, signature.length()));
+  }
+
+  /**
+   * Script arguments of a rule, built once: probe flag, limit, window in microseconds and tokens per microsecond
+   */
+  private static final class RuleArguments {
+    private final String keySuffix;
+    private final Object[] acquire;
+    private final Object[] probe;
+
+    RuleArguments(RateLimitRule rule) {
+      String limit = Integer.toString(rule.getLimit());
+      String windowMicros = Long.toString(TimeUnit.NANOSECONDS.toMicros(rule.getWindowNanos()));
+      String tokensPerMicro = Double.toString(rule.getRefillPerSecond() / 1_000_000);
+
+      this.keySuffix = keySuffix(rule);
+      this.acquire = new Object[] {ACQUIRE, limit, windowMicros, tokensPerMicro};
+      this.probe = new Object[] {PROBE, limit, windowMicros, tokensPerMicro};
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package org.example.ratelimiter;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Sliding window counter. Windows are aligned to multiples of the window length; the estimate for the
+ * sliding window is the current count plus the previous window's count weighted by how much of the previous
+ * window still overlaps it. This smooths out the 2x burst a fixed window allows at its boundary while
+ * keeping a single long of state per key.
+ * <p>
+ * State layout: a {@value #INDEX_BITS}-bit window index, then the previous and the current count in
+ * {@value #COUNT_BITS} bits each. Window indexes are compared modulo 2^{@value #INDEX_BITS}; a key idle
+ * for an exact multiple of that many windows would be treated as recent, which only errs on the strict side.
+ */
+@Component
+public class SlidingCounterAlgorithm extends PackedStateAlgorithm {
+  private static final int COUNT_BITS = 20;
+  private static final int INDEX_BITS = 23;
+  private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+  private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+  private static final int PREVIOUS_SHIFT = COUNT_BITS;
+  private static final int INDEX_SHIFT = 2 * COUNT_BITS;
+
+  @Override
+  public Algorithm type() {
+    return Algorithm.SLIDING_COUNTER;
+  }
+
+  @Override
+  public long idleTimeoutNanos(RateLimitRule rule) {
+    // A count stays in the estimate for the rest of its window and all of the next one
+    return 2 * rule.getWindowNanos();
+  }
+
+  @Override
+  public long next(long state, RateLimitRule rule, long nowNanos) {
+    long windowNanos = rule.getWindowNanos();
+    long index = (nowNanos / windowNanos) & INDEX_MASK;
+    long previous = previousCount(state, index);
+    long current = currentCount(state, index);
+
+    if (estimate(previous, current, windowNanos, nowNanos) >= rule.getLimit()) {
+      return REJECT;
+    }
+
+    // The counter saturates; limits this large are never reached
+    current = Math.min(current + 1, COUNT_MASK);
+
+    return (index << INDEX_SHIFT) | (previous << PREVIOUS_SHIFT) | current;
+  }
+
+  @Override
+  public long remaining(long state, RateLimitRule rule, long nowNanos) {
+    long windowNanos = rule.getWindowNanos();
+    long index = (nowNanos / windowNanos) & INDEX_MASK;
+    double used = estimate(previousCount(state, index), currentCount(state, index), windowNanos, nowNanos);
+
+    return Math.max(0, rule.getLimit() - (long) Math.ceil(used));
+  }
+
+  @Override
+  public long resetNanos(long state, RateLimitRule rule, long nowNanos) {
+    long windowNanos = rule.getWindowNanos();
+    long index = (nowNanos / windowNanos) & INDEX_MASK;
+    long untilWindowEnd = windowNanos - nowNanos % windowNanos;
+
+    if (currentCount(state, index) > 0) {
+      // Requests in this window keep weighing on the estimate throughout the next one
+      return untilWindowEnd + windowNanos;
+    }
+
+    return previousCount(state, index) > 0 ? untilWindowEnd : 0;
+  }
+
+  @Override
+  public long retryAfterNanos(long state, RateLimitRule rule, long nowNanos) {
+    long windowNanos = rule.getWindowNanos();
+    long index = (nowNanos / windowNanos) & INDEX_MASK;
+    long previous = previousCount(state, index);
+    long current = currentCount(state, index);
+    long limit = rule.getLimit();
+    long untilWindowEnd = windowNanos - nowNanos % windowNanos;
+
+    if (current < limit) {
+      // The weighted previous count has to decay until previous * overlap + current < limit
+      double overlapAllowed = previous == 0 ? 1.0 : (double) (limit - current) / previous;
+
+      return Math.max(0, untilWindowEnd - (long) (overlapAllowed * windowNanos)) + 1;
+    }
+
+    // This window is full; after rolling over its count has to decay the same way
+    double overlapAllowed = (double) limit / current;
+
+    return untilWindowEnd + Math.max(0, windowNanos - (long) (overlapAllowed * windowNanos)) + 1;
+  }
+
+  /**
+   * Counts keep their window, but windows are aligned to this clock, so the position within the current window
+   * may differ from the saving JVM's
+   */
+  @Override
+  public long rebase(long state, RateLimitRule rule, long thenNanos, long nowNanos) {
+    long windowNanos = rule.getWindowNanos();
+    long thenIndex = (thenNanos / windowNanos) & INDEX_MASK;
+    long previous = previousCount(state, thenIndex);
+    long current = currentCount(state, thenIndex);
+
+    if (previous == 0 && current == 0) {
+      return 0;
+    }
+
+    return (((nowNanos / windowNanos) & INDEX_MASK) << INDEX_SHIFT) | (previous << PREVIOUS_SHIFT) | current;
+  }
+
+  // Helper methods
+
+  private static double estimate(long previous, long current, long windowNanos, long nowNanos) {
+    double overlap = (double) (windowNanos - nowNanos % windowNanos) / windowNanos;
+
+    return previous * overlap + current;
+  }
+
+  private static long previousCount(long state, long index) {
+    long age = (index - ((state >>> INDEX_SHIFT) & INDEX_MASK)) & INDEX_MASK;
+
+    if (age == 0) {
+      return (state >>> PREVIOUS_SHIFT) & COUNT_MASK;
+    }
+
+    // One window later the stored current count becomes the previous one
+    return age == 1 ? state & COUNT_MASK : 0;
+  }
+
+  private static long currentCount(long state, long index) {
+    long age = (index - ((state >>> INDEX_SHIFT) & INDEX_MASK)) & INDEX_MASK;
+
+    return age == 0 ? state & COUNT_MASK : 0;
+  }
+}
@@ -0,0 +1,121 @@
+package org.example.ratelimiter;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sliding window log. Keeps the timestamp of every request allowed within the window in a primitive ring
+ * buffer, so the limit holds exactly over any window-sized interval. The buffer starts small and grows up to
+ * the limit, so memory follows actual traffic rather than the configured limit.
+ */
+@Component
+public class SlidingLogAlgorithm implements RateLimitAlgorithm<SlidingLogAlgorithm.Log> {
+  private static final int INITIAL_CAPACITY = 8;
+
+  @Override
+  public Algorithm type() {
+    return Algorithm.SLIDING_LOG;
+  }
+
+  @Override
+  public Log newState(RateLimitRule rule) {
+    return new Log(Math.min(INITIAL_CAPACITY, rule.getLimit()));
+  }
+
+  @Override
+  public long idleTimeoutNanos(RateLimitRule rule) {
+    return rule.getWindowNanos();
+  }
+
+  @Override
+  public long tryAcquire(Log log, RateLimitRule rule, long nowNanos) {
+    log.lock.lock();
+
+    try {
+      log.evictBefore(nowNanos - rule.getWindowNanos());
+
+      if (log.size >= rule.getLimit()) {
+        return RateLimitDecision.rejected(log.oldest() + rule.getWindowNanos() - nowNanos);
+      }
+
+      log.append(nowNanos, rule.getLimit());
+
+      return RateLimitDecision.allowed(rule.getLimit() - log.size, log.newest() + rule.getWindowNanos() - nowNanos);
+    } finally {
+      log.lock.unlock();
+    }
+  }
+
+  @Override
+  public long probe(Log log, RateLimitRule rule, long nowNanos) {
+    log.lock.lock();
+
+    try {
+      log.evictBefore(nowNanos - rule.getWindowNanos());
+
+      if (log.size >= rule.getLimit()) {
+        return RateLimitDecision.rejected(log.oldest() + rule.getWindowNanos() - nowNanos);
+      }
+
+      long resetNanos = log.size == 0 ? 0 : log.newest() + rule.getWindowNanos() - nowNanos;
+
+      return RateLimitDecision.allowed(rule.getLimit() - log.size, resetNanos);
+    } finally {
+      log.lock.unlock();
+    }
+  }
+
+  /**
+   * Ring buffer of request timestamps, oldest first. Guarded by a ReentrantLock rather than its monitor,
+   * so a virtual thread waiting for a busy log unmounts instead of pinning its carrier.
+   */
+  public static final class Log {
+    private final ReentrantLock lock = new ReentrantLock();
+    private long[] timestamps;
+    private int head;
+    private int size;
+
+    Log(int initialCapacity) {
+      this.timestamps = new long[initialCapacity];
+    }
+
+    private void evictBefore(long cutoffNanos) {
+      while (size > 0 && timestamps[head] <= cutoffNanos) {
+        head = (head + 1) % timestamps.length;
+        size--;
+      }
+    }
+
+    private void append(long nowNanos, int limit) {
+      if (size == timestamps.length) {
+        grow(limit);
+      }
+
+      // Callers read the clock before taking the lock, so keep the log ordered
+      long timestamp = size == 0 ? nowNanos : Math.max(nowNanos, newest());
+
+      timestamps[(head + size) % timestamps.length] = timestamp;
+      size++;
+    }
+
+    private void grow(int limit) {
+      long[] grown = new long[(int) Math.min((long) timestamps.length * 2, limit)];
+
+      for (int i = 0; i < size; i++) {
+        grown[i] = timestamps[(head + i) % timestamps.length];
+      }
+
+      timestamps = grown;
+      head = 0;
+    }
+
+    private long oldest() {
+      return timestamps[head];
+    }
+
+    private long newest() {
+      return timestamps[(head + size - 1) % timestamps.length];
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package org.example.ratelimiter;
+
+/**
+ * Truncates client address keys to the subnet they belong to, such as a /24 for IPv4 and a /64 for IPv6.
+ * <p>
+ * A single IPv6 host usually controls a whole /64, so counting per address lets it rotate through 2^64 keys, and
+ * evict other clients' counters in the process. Counting per subnet takes that away. Masking works on the parsed
+ * 128-bit key, so it costs two ANDs. Keys that are hashes rather than addresses are returned unchanged.
+ */
+public final class SubnetMask {
+  private final int ipv4PrefixLength;
+  private final int ipv6PrefixLength;
+  private final long ipv4LowMask;
+  private final long ipv6HighMask;
+  private final long ipv6LowMask;
+
+  public SubnetMask(int ipv4PrefixLength, int ipv6PrefixLength) {
+    if (ipv4PrefixLength < 0 || ipv4PrefixLength > 32) {
+      throw new IllegalArgumentException("IPv4 subnet prefix length must be between 0 and 32, got "
+        + ipv4PrefixLength);
+    }
+
+    if (ipv6PrefixLength < 0 || ipv6PrefixLength > 128) {
+      throw new IllegalArgumentException("IPv6 subnet prefix length must be between 0 and 128, got "
+        + ipv6PrefixLength);
+    }
+
+    this.ipv4PrefixLength = ipv4PrefixLength;
+    this.ipv6PrefixLength = ipv6PrefixLength;
+    // IPv4 keys are IPv4-mapped, so the IPv4 prefix starts after the 96 bits of the mapping
+    this.ipv4LowMask = ClientAddress.lowMask(96 + ipv4PrefixLength);
+    this.ipv6HighMask = ClientAddress.highMask(ipv6PrefixLength);
+    this.ipv6LowMask = ClientAddress.lowMask(ipv6PrefixLength);
+  }
+
+  /**
+   * Upper 64 bits of the subnet key of a client key
+   */
+  public long high(long high, long low) {
+    if (high == ClientAddress.HASHED_HIGH || ClientAddress.isIpv4(high, low)) {
+      return high;
+    }
+
+    return high & ipv6HighMask;
+  }
+
+  /**
+   * Lower 64 bits of the subnet key of a client key
+   */
+  public long low(long high, long low) {
+    if (high == ClientAddress.HASHED_HIGH) {
+      return low;
+    }
+
+    return low & (ClientAddress.isIpv4(high, low) ? ipv4LowMask : ipv6LowMask);
+  }
+
+  public int getIpv4PrefixLength() {
+    return ipv4PrefixLength;
+  }
+
+  public int getIpv6PrefixLength() {
+    return ipv6PrefixLength;
+  }
+}
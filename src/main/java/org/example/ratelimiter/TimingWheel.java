@@ -0,0 +1,313 @@
+package org.example.ratelimiter;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hierarchical timing wheel for expiring rate limit state in bulk.
+ * <p>
+ * Entries are an opaque {@code long} handle and a deadline, kept in primitive arrays so scheduling millions of
+ * them allocates nothing per entry. Level 0 has one bucket per tick; each higher level covers
+ * {@value #WHEEL_SIZE} buckets of the level below and is cascaded down as time reaches it. Scheduling is O(1).
+ * Cancelling is O(1) too: owners invalidate the handle, and {@link ExpiryHandler#onExpired} drops it when it fires.
+ * <p>
+ * A single daemon thread advances the wheel once per tick and hands every due entry to the handler, outside the
+ * wheel's lock, so request threads only ever contend on the short schedule step.
+ */
+public class TimingWheel implements AutoCloseable {
+  /**
+   * Returned by {@link ExpiryHandler#onExpired} when the handle needs no further callbacks
+   */
+  public static final long NO_DEADLINE = -1;
+
+  private static final int LEVELS = 4;
+  private static final int WHEEL_BITS = 6;
+  private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+  private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+  /**
+   * Called for every entry whose deadline has passed
+   */
+  @FunctionalInterface
+  public interface ExpiryHandler {
+    /**
+     * @return The handle's next deadline, or {@link #NO_DEADLINE} to drop it
+     */
+    long onExpired(long handle, long nowNanos);
+  }
+
+  private final long tickNanos;
+  private final ExpiryHandler handler;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Bucket[][] levels = new Bucket[LEVELS][WHEEL_SIZE];
+  private final Thread thread;
+
+  // Guarded by lock
+  private long currentTick;
+  private Bucket spare = new Bucket();
+
+  // Only touched by the advancing thread
+  private final Bucket due = new Bucket();
+  private final Bucket rescheduled = new Bucket();
+
+  private volatile long expiredCount;
+  private volatile long rescheduledCount;
+  private volatile boolean running = true;
+
+  public TimingWheel(long tickNanos, long nowNanos, ExpiryHandler handler) {
+    if (tickNanos <= 0) {
+      throw new IllegalArgumentException("Timing wheel tick must be positive, got " + tickNanos);
+    }
+
+    this.tickNanos = tickNanos;
+    this.handler = handler;
+    this.currentTick = nowNanos / tickNanos;
+
+    for (Bucket[] level : levels) {
+      for (int i = 0; i < WHEEL_SIZE; i++) {
+        level[i] = new Bucket();
+      }
+    }
+
+    this.thread = new Thread(this::run, "rate-limit-timing-wheel");
+    this.thread.setDaemon(true);
+  }
+
+  /**
+   * Starts the thread that advances the wheel with {@link RateLimitClock}
+   */
+  public void start() {
+    thread.start();
+  }
+
+  /**
+   * Schedules a handle to be passed to the handler once the deadline has passed
+   */
+  public void schedule(long handle, long deadlineNanos) {
+    lock.lock();
+
+    try {
+      place(handle, deadlineNanos, currentTick + 1);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Schedules a batch of entries under a single hold of the lock
+   *
+   * @param entries Handles and deadlines, alternating
+   * @param length  Number of longs of {@code entries} in use
+   */
+  public void scheduleAll(long[] entries, int length) {
+    lock.lock();
+
+    try {
+      for (int i = 0; i < length; i += 2) {
+        place(entries[i], entries[i + 1], currentTick + 1);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Fires every entry due up to the given time. Only one thread may advance the wheel: the wheel's own thread
+   * once {@link #start()} has been called, otherwise the caller driving it.
+   */
+  public void advance(long nowNanos) {
+    long targetTick = nowNanos / tickNanos;
+
+    while (true) {
+      lock.lock();
+
+      try {
+        // Hand the due entries scheduled in the meantime back to the wheel in one go
+        for (int i = 0; i < rescheduled.size; i += 2) {
+          place(rescheduled.entries[i], rescheduled.entries[i + 1], currentTick + 1);
+        }
+
+        rescheduled.size = 0;
+
+        if (currentTick >= targetTick) {
+          return;
+        }
+
+        currentTick++;
+        cascade();
+
+        // Swap the due bucket out so the handler runs without the lock
+        int index = (int) (currentTick & WHEEL_MASK);
+        Bucket bucket = levels[0][index];
+
+        levels[0][index] = spare;
+        spare = due.takeFrom(bucket);
+      } finally {
+        lock.unlock();
+      }
+
+      long expired = 0;
+
+      for (int i = 0; i < due.size; i += 2) {
+        long handle = due.entries[i];
+        long nextDeadline = handler.onExpired(handle, nowNanos);
+
+        if (nextDeadline == NO_DEADLINE) {
+          expired++;
+        } else {
+          rescheduled.add(handle, nextDeadline);
+        }
+      }
+
+      expiredCount += expired;
+      rescheduledCount += rescheduled.size / 2;
+      due.size = 0;
+    }
+  }
+
+  /**
+   * Number of entries currently held by the given level, 0 being the finest
+   */
+  public long getOccupancy(int level) {
+    lock.lock();
+
+    try {
+      long occupancy = 0;
+
+      for (Bucket bucket : levels[level]) {
+        occupancy += bucket.size / 2;
+      }
+
+      return occupancy;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Number of entries currently scheduled on all levels
+   */
+  public long getScheduledCount() {
+    long scheduled = 0;
+
+    for (int level = 0; level < LEVELS; level++) {
+      scheduled += getOccupancy(level);
+    }
+
+    return scheduled;
+  }
+
+  /**
+   * Number of entries the handler dropped since the wheel was created
+   */
+  public long getExpiredCount() {
+    return expiredCount;
+  }
+
+  /**
+   * Number of entries the handler pushed to a later deadline since the wheel was created
+   */
+  public long getRescheduledCount() {
+    return rescheduledCount;
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    thread.interrupt();
+  }
+
+  // Helper methods
+
+  private void run() {
+    while (running) {
+      LockSupport.parkNanos(tickNanos);
+      advance(RateLimitClock.nanoTime());
+    }
+  }
+
+  /**
+   * Puts an entry on the lowest level where its bucket is less than a full turn of the wheel ahead.
+   * Deadlines beyond the top level go to its last bucket and are placed again when it cascades.
+   *
+   * @param earliestTick First tick whose bucket has not been taken yet
+   */
+  private void place(long handle, long deadlineNanos, long earliestTick) {
+    // Round up so an entry never fires before its deadline
+    long tick = Math.max((deadlineNanos + tickNanos - 1) / tickNanos, earliestTick);
+
+    for (int level = 0; level < LEVELS; level++) {
+      int shift = WHEEL_BITS * level;
+
+      if ((tick >>> shift) - (currentTick >>> shift) < WHEEL_SIZE) {
+        levels[level][(int) ((tick >>> shift) & WHEEL_MASK)].add(handle, deadlineNanos);
+
+        return;
+      }
+    }
+
+    int topShift = WHEEL_BITS * (LEVELS - 1);
+
+    levels[LEVELS - 1][(int) (((currentTick >>> topShift) - 1) & WHEEL_MASK)].add(handle, deadlineNanos);
+  }
+
+  /**
+   * When the current tick starts a new period of a higher level, moves that period's entries down
+   */
+  private void cascade() {
+    for (int level = 1; level < LEVELS; level++) {
+      int shift = WHEEL_BITS * level;
+
+      if ((currentTick & ((1L << shift) - 1)) != 0) {
+        return;
+      }
+
+      int index = (int) ((currentTick >>> shift) & WHEEL_MASK);
+      Bucket bucket = levels[level][index];
+
+      levels[level][index] = spare;
+      spare = bucket;
+
+      // The current tick's bucket is taken right after, so entries due on the period's first tick still make it
+      for (int i = 0; i < bucket.size; i += 2) {
+        place(bucket.entries[i], bucket.entries[i + 1], currentTick);
+      }
+
+      bucket.size = 0;
+    }
+  }
+
+  /**
+   * Growable array of (handle, deadline) pairs
+   */
+  private static final class Bucket {
+    private long[] entries = new long[8];
+    private int size;
+
+    void add(long handle, long deadlineNanos) {
+      if (size + 2 > entries.length) {
+        entries = Arrays.copyOf(entries, entries.length * 2);
+      }
+
+      entries[size++] = handle;
+      entries[size++] = deadlineNanos;
+    }
+
+    /**
+     * Takes over the other bucket's entries, leaving it empty with this bucket's old array
+     *
+     * @return The other bucket, now empty
+     */
+    Bucket takeFrom(Bucket other) {
+      long[] swapped = entries;
+
+      entries = other.entries;
+      size = other.size;
+      other.entries = swapped;
+      other.size = 0;
+
+      return other;
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package org.example.ratelimiter;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Token bucket with lazy refill. Nothing runs in the background: every request first credits the tokens
+ * earned since the last refill, computed from the elapsed monotonic time, and then spends one.
+ * <p>
+ * State layout: the last refill time in microseconds in the upper {@value #TIME_BITS} bits and the bucket
+ * deficit (tokens missing from a full bucket) in fixed point with {@value #FRACTION_BITS} fractional bits in
+ * the lower {@value #DEFICIT_BITS} bits. Storing the deficit rather than the tokens makes a zero state a full
+ * bucket. Refill times wrap every ~25 days; a bucket idle for longer may be refilled less than fully, which
+ * only errs on the strict side.
+ */
+@Component
+public class TokenBucketAlgorithm extends PackedStateAlgorithm {
+  private static final int FRACTION_BITS = 6;
+  private static final int DEFICIT_BITS = 22;
+  private static final int TIME_BITS = 41;
+  private static final long ONE_TOKEN = 1L << FRACTION_BITS;
+  private static final long DEFICIT_MASK = (1L << DEFICIT_BITS) - 1;
+  private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+  private static final long NANOS_PER_MICRO = 1_000;
+
+  /**
+   * The largest capacity whose deficit still fits the packed state
+   */
+  public static final int MAX_CAPACITY = (int) (DEFICIT_MASK >>> FRACTION_BITS);
+
+  @Override
+  public Algorithm type() {
+    return Algorithm.TOKEN_BUCKET;
+  }
+
+  @Override
+  public long idleTimeoutNanos(RateLimitRule rule) {
+    // Time to refill an empty bucket
+    return unitsToNanos(capacity(rule), rule);
+  }
+
+  @Override
+  public long next(long state, RateLimitRule rule, long nowNanos) {
+    long refilled = refill(state, rule, nowNanos);
+    long deficit = refilled & DEFICIT_MASK;
+
+    if (deficit + ONE_TOKEN > capacity(rule)) {
+      return REJECT;
+    }
+
+    return refilled + ONE_TOKEN;
+  }
+
+  @Override
+  public long remaining(long state, RateLimitRule rule, long nowNanos) {
+    long deficit = refill(state, rule, nowNanos) & DEFICIT_MASK;
+
+    return (capacity(rule) - deficit) >>> FRACTION_BITS;
+  }
+
+  @Override
+  public long resetNanos(long state, RateLimitRule rule, long nowNanos) {
+    long deficit = refill(state, rule, nowNanos) & DEFICIT_MASK;
+
+    return unitsToNanos(deficit, rule);
+  }
+
+  @Override
+  public long retryAfterNanos(long state, RateLimitRule rule, long nowNanos) {
+    long deficit = refill(state, rule, nowNanos) & DEFICIT_MASK;
+
+    return unitsToNanos(deficit + ONE_TOKEN - capacity(rule), rule);
+  }
+
+  @Override
+  public long rebase(long state, RateLimitRule rule, long thenNanos, long nowNanos) {
+    long refilled = refill(state, rule, thenNanos);
+
+    if ((refilled & DEFICIT_MASK) == 0) {
+      return 0;
+    }
+
+    // Keeps the time already earned towards the next token
+    long lagMicros = ((thenNanos / NANOS_PER_MICRO) - (refilled >>> DEFICIT_BITS)) & TIME_MASK;
+    long lastMicros = ((nowNanos / NANOS_PER_MICRO) - lagMicros) & TIME_MASK;
+
+    return (lastMicros << DEFICIT_BITS) | (refilled & DEFICIT_MASK);
+  }
+
+  // Helper methods
+
+  /**
+   * Credits the tokens earned since the last refill. The refill time only advances by the time the credited
+   * tokens took to earn, so fractions of a token are never lost between requests.
+   */
+  private static long refill(long state, RateLimitRule rule, long nowNanos) {
+    long deficit = state & DEFICIT_MASK;
+    long nowMicros = (nowNanos / NANOS_PER_MICRO) & TIME_MASK;
+
+    if (deficit == 0) {
+      return nowMicros << DEFICIT_BITS;
+    }
+
+    long lastMicros = state >>> DEFICIT_BITS;
+    long elapsedMicros = (nowMicros - lastMicros) & TIME_MASK;
+    double unitsPerMicro = unitsPerMicro(rule);
+    long credited = (long) (elapsedMicros * unitsPerMicro);
+
+    if (credited >= deficit) {
+      return nowMicros << DEFICIT_BITS;
+    }
+
+    long earnedMicros = (long) Math.ceil(credited / unitsPerMicro);
+
+    return (((lastMicros + earnedMicros) & TIME_MASK) << DEFICIT_BITS) | (deficit - credited);
+  }
+
+  private static long capacity(RateLimitRule rule) {
+    return (long) rule.getLimit() << FRACTION_BITS;
+  }
+
+  private static double unitsPerMicro(RateLimitRule rule) {
+    return rule.getRefillPerSecond() * ONE_TOKEN / 1_000_000;
+  }
+
+  private static long unitsToNanos(long units, RateLimitRule rule) {
+    return units <= 0 ? 0 : (long) Math.ceil(units / unitsPerMicro(rule)) * NANOS_PER_MICRO;
+  }
+}
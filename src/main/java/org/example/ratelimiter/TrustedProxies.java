@@ -0,0 +1,347 @@
+package org.example.ratelimiter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Set of trusted proxy networks, compiled into a path-compressed binary trie over the 128-bit address keys of
+ * {@link ClientAddress}, plus the {@code X-Forwarded-For} walk that finds the real client behind them.
+ * <p>
+ * IPv4 networks are stored as their IPv4-mapped IPv6 form, so one trie covers both families. The trie is a handful
+ * of parallel primitive arrays, so {@link #contains} allocates nothing and visits one node per branching point
+ * rather than one per bit.
+ * <p>
+ * The header is only read when the immediate peer is trusted, and it is walked from the right, skipping trusted
+ * hops, until the first untrusted address. The walk is bounded by a maximum hop count and a maximum entry length,
+ * so an attacker-controlled header costs at most a few hundred character reads.
+ */
+public final class TrustedProxies {
+  public static final String FORWARDED_FOR = "X-Forwarded-For";
+
+  /**
+   * Longest header entry considered an address; a full IPv6 address with brackets and zone id fits
+   */
+  static final int MAX_ADDRESS_LENGTH = 64;
+
+  private static final int NONE = -1;
+  private static final long NOT_FOUND = -1;
+  private static final int IPV4_MAPPED_BITS = 96;
+
+  private static final TrustedProxies EMPTY = new TrustedProxies(
+    new long[0], new long[0], new int[0], new boolean[0], new int[0], 0);
+
+  // Node n covers the addresses whose first lengths[n] bits equal prefixHigh[n]:prefixLow[n]
+  private final long[] prefixHigh;
+  private final long[] prefixLow;
+  private final int[] lengths;
+  private final boolean[] terminal;
+  // The children of node n, by the bit after its prefix, are children[2n] and children[2n + 1]
+  private final int[] children;
+  private final int maxHops;
+
+  private TrustedProxies(long[] prefixHigh, long[] prefixLow, int[] lengths, boolean[] terminal, int[] children,
+                         int maxHops) {
+    this.prefixHigh = prefixHigh;
+    this.prefixLow = prefixLow;
+    this.lengths = lengths;
+    this.terminal = terminal;
+    this.children = children;
+    this.maxHops = maxHops;
+  }
+
+  /**
+   * Trusts no proxy; the immediate peer is always the client
+   */
+  public static TrustedProxies none() {
+    return EMPTY;
+  }
+
+  /**
+   * Compiles a list of networks such as {@code 10.0.0.0/8}, {@code 2001:db8::/32} or single addresses
+   *
+   * @param maxHops The maximum number of forwarded addresses examined per request
+   * @throws IllegalArgumentException If a network is malformed
+   */
+  public static TrustedProxies of(Collection<String> networks, int maxHops) {
+    if (maxHops < 1) {
+      throw new IllegalArgumentException("The maximum number of forwarded hops must be positive: " + maxHops);
+    }
+
+    Builder builder = new Builder();
+
+    for (String network : networks) {
+      if (network != null && !network.isBlank()) {
+        builder.add(network.trim());
+      }
+    }
+
+    return builder.isEmpty() ? EMPTY : builder.compile(maxHops);
+  }
+
+  public boolean isEmpty() {
+    return lengths.length == 0;
+  }
+
+  /**
+   * Whether an address key lies in one of the trusted networks
+   */
+  public boolean contains(long high, long low) {
+    int node = lengths.length == 0 ? NONE : 0;
+
+    while (node != NONE) {
+      int length = lengths[node];
+
+      if (((high ^ prefixHigh[node]) & ClientAddress.highMask(length)) != 0
+        || ((low ^ prefixLow[node]) & ClientAddress.lowMask(length)) != 0) {
+        return false;
+      }
+
+      if (terminal[node]) {
+        return true;
+      }
+
+      if (length == 128) {
+        return false;
+      }
+
+      node = children[2 * node + bit(high, low, length)];
+    }
+
+    return false;
+  }
+
+  /**
+   * Sets the key to the client behind the given peer: the peer itself unless it is trusted, otherwise the
+   * rightmost untrusted address of the forwarded header.
+   *
+   * @param forwardedFor The last {@code X-Forwarded-For} header of the request, or null if it has none
+   */
+  public void resolve(long peerHigh, long peerLow, CharSequence forwardedFor, RateLimitKey key) {
+    walk(peerHigh, peerLow, forwardedFor, key);
+  }
+
+  /**
+   * Textual form of the client behind the given peer, for display
+   *
+   * @see #resolve
+   */
+  public String clientAddress(String peer, String forwardedFor) {
+    RateLimitKey key = new RateLimitKey();
+
+    ClientAddress.parse(peer, key);
+
+    long range = walk(key.getHigh(), key.getLow(), forwardedFor, key);
+
+    return range == NOT_FOUND ? peer : forwardedFor.substring((int) (range >>> 32), (int) range);
+  }
+
+  // Helper methods
+
+  /**
+   * Walks the forwarded header from the right while the hops are trusted, leaving the client in the key
+   *
+   * @return The client's range in the header, packed as {@code start << 32 | end}, or {@link #NOT_FOUND} if the
+   * client is the peer
+   */
+  private long walk(long peerHigh, long peerLow, CharSequence forwardedFor, RateLimitKey key) {
+    key.set(peerHigh, peerLow);
+
+    if (forwardedFor == null || !contains(peerHigh, peerLow)) {
+      return NOT_FOUND;
+    }
+
+    long range = NOT_FOUND;
+    int end = forwardedFor.length();
+
+    for (int hop = 0; hop < maxHops && end > 0; hop++) {
+      int start = end;
+      int limit = Math.max(0, end - MAX_ADDRESS_LENGTH);
+
+      while (start > limit && forwardedFor.charAt(start - 1) != ',') {
+        start--;
+      }
+
+      // An entry too long to be an address ends the walk at the last trusted hop
+      if (start == limit && limit > 0 && forwardedFor.charAt(start - 1) != ',') {
+        return range;
+      }
+
+      int next = start - 1;
+      int entryStart = start;
+      int entryEnd = end;
+
+      while (entryStart < entryEnd && forwardedFor.charAt(entryStart) == ' ') {
+        entryStart++;
+      }
+
+      while (entryEnd > entryStart && forwardedFor.charAt(entryEnd - 1) == ' ') {
+        entryEnd--;
+      }
+
+      if (entryStart == entryEnd) {
+        return range;
+      }
+
+      long trustedHigh = key.getHigh();
+      long trustedLow = key.getLow();
+
+      ClientAddress.parse(forwardedFor, entryStart, entryEnd, key);
+
+      // Not an address, such as "unknown" or an obfuscated identifier
+      if (key.getHigh() == ClientAddress.HASHED_HIGH) {
+        key.set(trustedHigh, trustedLow);
+
+        return range;
+      }
+
+      range = ((long) entryStart << 32) | entryEnd;
+
+      if (!contains(key.getHigh(), key.getLow())) {
+        return range;
+      }
+
+      end = next;
+    }
+
+    // Every examined hop was trusted; the leftmost of them is the best known client
+    return range;
+  }
+
+  private static int bit(long high, long low, int index) {
+    return (int) (index < 64 ? high >>> (63 - index) : low >>> (127 - index)) & 1;
+  }
+
+  /**
+   * Uncompressed trie of one node per bit, only used while compiling
+   */
+  private static final class Builder {
+    private final List<long[]> prefixes = new ArrayList<>();
+    private final List<int[]> nodeChildren = new ArrayList<>();
+    private final List<Boolean> nodeTerminal = new ArrayList<>();
+
+    void add(String network) {
+      int slash = network.indexOf('/');
+      int addressEnd = slash < 0 ? network.length() : slash;
+      RateLimitKey key = new RateLimitKey();
+
+      ClientAddress.parse(network, 0, addressEnd, key);
+
+      long high = key.getHigh();
+      long low = key.getLow();
+
+      if (high == ClientAddress.HASHED_HIGH) {
+        throw new IllegalArgumentException("Invalid trusted proxy address '" + network + "'");
+      }
+
+      boolean ipv4 = ClientAddress.isIpv4(high, low) && network.indexOf(':') < 0;
+      int maxLength = ipv4 ? 32 : 128;
+      int length = maxLength;
+
+      if (slash >= 0) {
+        try {
+          length = Integer.parseInt(network.substring(slash + 1));
+        } catch (NumberFormatException e) {
+          length = NONE;
+        }
+
+        if (length < 0 || length > maxLength) {
+          throw new IllegalArgumentException("Invalid prefix length in trusted proxy network '" + network + "'");
+        }
+      }
+
+      if (ipv4) {
+        length += IPV4_MAPPED_BITS;
+      }
+
+      int node = root();
+
+      for (int i = 0; i < length; i++) {
+        int b = bit(high, low, i);
+        int child = nodeChildren.get(node)[b];
+
+        if (child == NONE) {
+          child = newNode(high & ClientAddress.highMask(i + 1), low & ClientAddress.lowMask(i + 1));
+          nodeChildren.get(node)[b] = child;
+        }
+
+        node = child;
+      }
+
+      nodeTerminal.set(node, Boolean.TRUE);
+    }
+
+    boolean isEmpty() {
+      return nodeTerminal.isEmpty();
+    }
+
+    TrustedProxies compile(int maxHops) {
+      int size = nodeTerminal.size();
+      long[] prefixHigh = new long[size];
+      long[] prefixLow = new long[size];
+      int[] lengths = new int[size];
+      boolean[] terminal = new boolean[size];
+      int[] children = new int[2 * size];
+      int[] next = new int[1];
+
+      emit(0, 0, prefixHigh, prefixLow, lengths, terminal, children, next);
+
+      int count = next[0];
+
+      return new TrustedProxies(Arrays.copyOf(prefixHigh, count), Arrays.copyOf(prefixLow, count),
+        Arrays.copyOf(lengths, count), Arrays.copyOf(terminal, count), Arrays.copyOf(children, 2 * count), maxHops);
+    }
+
+    private int root() {
+      return isEmpty() ? newNode(0, 0) : 0;
+    }
+
+    private int newNode(long high, long low) {
+      prefixes.add(new long[] {high, low});
+      nodeChildren.add(new int[] {NONE, NONE});
+      nodeTerminal.add(Boolean.FALSE);
+
+      return nodeTerminal.size() - 1;
+    }
+
+    /**
+     * Emits the node at the given depth, skipping the chain of single-child nodes below it
+     *
+     * @param next The index of the next emitted node
+     * @return The index of the emitted node
+     */
+    private int emit(int node, int depth, long[] prefixHigh, long[] prefixLow, int[] lengths, boolean[] terminal,
+                     int[] children, int[] next) {
+      // Nodes under a trusted network can never change the answer
+      while (!nodeTerminal.get(node) && depth < 128) {
+        int[] nodeChildrenPair = nodeChildren.get(node);
+
+        if (nodeChildrenPair[0] != NONE && nodeChildrenPair[1] != NONE) {
+          break;
+        }
+
+        node = nodeChildrenPair[0] != NONE ? nodeChildrenPair[0] : nodeChildrenPair[1];
+        depth++;
+      }
+
+      int index = next[0]++;
+
+      prefixHigh[index] = prefixes.get(node)[0];
+      prefixLow[index] = prefixes.get(node)[1];
+      lengths[index] = depth;
+      terminal[index] = nodeTerminal.get(node);
+      children[2 * index] = NONE;
+      children[2 * index + 1] = NONE;
+
+      if (!terminal[index] && depth < 128) {
+        for (int b = 0; b < 2; b++) {
+          children[2 * index + b] = emit(nodeChildren.get(node)[b], depth + 1, prefixHigh, prefixLow, lengths,
+            terminal, children, next);
+        }
+      }
+
+      return index;
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package org.example.ratelimiter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Unsigned variable-length integers as in Protocol Buffers: seven bits per byte, least significant group first,
+ * with the high bit set on every byte but the last. Small counts take one byte, and no value takes more than
+ * {@value #MAX_BYTES}.
+ */
+final class Varint {
+  static final int MAX_BYTES = 10;
+
+  private Varint() {
+  }
+
+  static void put(ByteBuffer buffer, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+
+    buffer.put((byte) value);
+  }
+
+  /**
+   * @throws IllegalArgumentException         If the value runs over {@value #MAX_BYTES} bytes
+   * @throws java.nio.BufferUnderflowException If the buffer ends within the value
+   */
+  static long get(ByteBuffer buffer) {
+    long value = 0;
+
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = buffer.get();
+
+      value |= (long) (b & 0x7F) << shift;
+
+      if (b >= 0) {
+        return value;
+      }
+    }
+
+    throw new IllegalArgumentException("Malformed varint");
+  }
+}
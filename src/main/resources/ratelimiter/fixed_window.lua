@@ -0,0 +1,33 @@
+-- Fixed window counter: the window starts with the first request of a key.
+-- KEYS[1]: state hash. ARGV: probe flag, limit, window in microseconds.
+-- Returns {allowed, remaining, wait in microseconds}; all times come from the server clock.
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+local probe = ARGV[1] == '1'
+local limit = tonumber(ARGV[2])
+local window = tonumber(ARGV[3])
+
+local state = redis.call('HMGET', KEYS[1], 'start', 'count')
+local start = tonumber(state[1])
+local count = tonumber(state[2]) or 0
+
+if start == nil or now - start >= window then
+  start = now
+  count = 0
+end
+
+local reset = start + window - now
+
+if count >= limit then
+  return {0, 0, reset}
+end
+
+if probe then
+  return {1, limit - count, count == 0 and 0 or reset}
+end
+
+count = count + 1
+redis.call('HSET', KEYS[1], 'start', string.format('%.0f', start), 'count', count)
+redis.call('PEXPIRE', KEYS[1], math.ceil(reset / 1000))
+
+return {1, limit - count, reset}
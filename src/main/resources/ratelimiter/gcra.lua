@@ -0,0 +1,31 @@
+-- Generic cell rate algorithm: the only state is the theoretical arrival time (TAT).
+-- KEYS[1]: state string. ARGV: probe flag, limit, window in microseconds.
+-- Returns {allowed, remaining, wait in microseconds}; all times come from the server clock.
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+local probe = ARGV[1] == '1'
+local limit = tonumber(ARGV[2])
+local window = tonumber(ARGV[3])
+local interval = window / limit
+
+local tat = math.max(tonumber(redis.call('GET', KEYS[1])) or now, now)
+
+if probe then
+  local remaining = math.floor((window - (tat - now)) / interval)
+
+  if remaining <= 0 then
+    return {0, 0, math.ceil(math.max(0, tat + interval - now - window))}
+  end
+
+  return {1, remaining, math.ceil(tat - now)}
+end
+
+local newTat = tat + interval
+
+if newTat - now > window then
+  return {0, 0, math.ceil(newTat - now - window)}
+end
+
+redis.call('SET', KEYS[1], string.format('%.0f', newTat), 'PX', math.ceil((newTat - now) / 1000))
+
+return {1, math.floor((window - (newTat - now)) / interval), math.ceil(newTat - now)}
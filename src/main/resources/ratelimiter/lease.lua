@@ -0,0 +1,27 @@
+-- Reserves up to a number of requests of a client's quota in the current fixed window.
+-- Windows are aligned to multiples of the window length on the server clock.
+-- KEYS[1]: ledger hash. ARGV: permits requested, limit, window in microseconds.
+-- Returns {permits granted, window index, microseconds until the window ends, permits left in the window}.
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+local permits = tonumber(ARGV[1])
+local limit = tonumber(ARGV[2])
+local window = tonumber(ARGV[3])
+
+local index = math.floor(now / window)
+local untilWindowEnd = window - now % window
+local state = redis.call('HMGET', KEYS[1], 'index', 'used')
+local used = 0
+
+if tonumber(state[1]) == index then
+  used = tonumber(state[2])
+end
+
+local granted = math.max(0, math.min(permits, limit - used))
+
+if granted > 0 then
+  redis.call('HSET', KEYS[1], 'index', string.format('%.0f', index), 'used', used + granted)
+  redis.call('PEXPIRE', KEYS[1], math.ceil(untilWindowEnd / 1000))
+end
+
+return {granted, index, untilWindowEnd, limit - used - granted}
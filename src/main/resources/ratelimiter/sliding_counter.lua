@@ -0,0 +1,56 @@
+-- Sliding window counter: the current count plus the previous window's count weighted by its overlap.
+-- Windows are aligned to multiples of the window length.
+-- KEYS[1]: state hash. ARGV: probe flag, limit, window in microseconds.
+-- Returns {allowed, remaining, wait in microseconds}; all times come from the server clock.
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+local probe = ARGV[1] == '1'
+local limit = tonumber(ARGV[2])
+local window = tonumber(ARGV[3])
+
+local index = math.floor(now / window)
+local state = redis.call('HMGET', KEYS[1], 'index', 'previous', 'current')
+local stored = tonumber(state[1])
+local previous = 0
+local current = 0
+
+if stored == index then
+  previous = tonumber(state[2])
+  current = tonumber(state[3])
+elseif stored == index - 1 then
+  -- One window later the stored current count becomes the previous one
+  previous = tonumber(state[3])
+end
+
+local untilWindowEnd = window - now % window
+local overlap = untilWindowEnd / window
+
+if previous * overlap + current >= limit then
+  local wait
+
+  if current < limit then
+    local overlapAllowed = previous == 0 and 1 or (limit - current) / previous
+    wait = math.max(0, untilWindowEnd - math.floor(overlapAllowed * window)) + 1
+  else
+    wait = untilWindowEnd + math.max(0, window - math.floor(limit / current * window)) + 1
+  end
+
+  return {0, 0, wait}
+end
+
+if not probe then
+  current = current + 1
+  redis.call('HSET', KEYS[1], 'index', string.format('%.0f', index), 'previous', previous, 'current', current)
+  redis.call('PEXPIRE', KEYS[1], math.ceil((untilWindowEnd + window) / 1000))
+end
+
+local remaining = math.max(0, limit - math.ceil(previous * overlap + current))
+local reset = 0
+
+if current > 0 then
+  reset = untilWindowEnd + window
+elseif previous > 0 then
+  reset = untilWindowEnd
+end
+
+return {1, remaining, reset}
@@ -0,0 +1,36 @@
+-- Sliding window log: one sorted set member per request allowed within the window.
+-- KEYS[1]: state sorted set. ARGV: probe flag, limit, window in microseconds.
+-- Returns {allowed, remaining, wait in microseconds}; all times come from the server clock.
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+local probe = ARGV[1] == '1'
+local limit = tonumber(ARGV[2])
+local window = tonumber(ARGV[3])
+
+redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', string.format('%.0f', now - window))
+
+local count = redis.call('ZCARD', KEYS[1])
+
+if count >= limit then
+  local oldest = redis.call('ZRANGE', KEYS[1], 0, 0, 'WITHSCORES')
+
+  return {0, 0, tonumber(oldest[2]) + window - now}
+end
+
+if probe then
+  if count == 0 then
+    return {1, limit, 0}
+  end
+
+  local newest = redis.call('ZRANGE', KEYS[1], -1, -1, 'WITHSCORES')
+
+  return {1, limit - count, tonumber(newest[2]) + window - now}
+end
+
+-- Members only need to be unique among those still in the window, whose count grows with each one
+local timestamp = string.format('%.0f', now)
+
+redis.call('ZADD', KEYS[1], timestamp, timestamp .. ':' .. count)
+redis.call('PEXPIRE', KEYS[1], math.ceil(window / 1000))
+
+return {1, limit - count - 1, window}
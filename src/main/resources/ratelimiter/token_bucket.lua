@@ -0,0 +1,30 @@
+-- Token bucket with lazy refill.
+-- KEYS[1]: state hash. ARGV: probe flag, capacity, unused, tokens per microsecond.
+-- Returns {allowed, remaining, wait in microseconds}; all times come from the server clock.
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+local probe = ARGV[1] == '1'
+local capacity = tonumber(ARGV[2])
+local rate = tonumber(ARGV[4])
+
+local state = redis.call('HMGET', KEYS[1], 'tokens', 'refilled')
+local tokens = tonumber(state[1])
+local refilled = tonumber(state[2])
+
+if tokens == nil then
+  tokens = capacity
+else
+  tokens = math.min(capacity, tokens + math.max(0, now - refilled) * rate)
+end
+
+if tokens < 1 then
+  return {0, 0, math.ceil((1 - tokens) / rate)}
+end
+
+if not probe then
+  tokens = tokens - 1
+  redis.call('HSET', KEYS[1], 'tokens', string.format('%.17g', tokens), 'refilled', string.format('%.0f', now))
+  redis.call('PEXPIRE', KEYS[1], math.ceil((capacity - tokens) / rate / 1000) + 1)
+end
+
+return {1, math.floor(tokens), math.ceil((capacity - tokens) / rate)}
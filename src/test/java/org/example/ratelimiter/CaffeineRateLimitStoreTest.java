@@ -0,0 +1,53 @@
+package org.example.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CaffeineRateLimitStoreTest {
+  private static final long NOW = TimeUnit.SECONDS.toNanos(5);
+
+  private final RateLimiterConfig config = new RateLimiterConfig();
+  private final CaffeineRateLimitStore store = new CaffeineRateLimitStore(config.cacheManager());
+  private final RateLimitRule rule = new RateLimitRule(10, 60, Algorithm.FIXED_WINDOW);
+  private final FixedWindowAlgorithm algorithm = new FixedWindowAlgorithm();
+
+  @Test
+  void probeKeepsTheCounter() {
+    store.tryAcquire(0, 1, rule, algorithm, NOW);
+    store.tryAcquire(0, 1, rule, algorithm, NOW);
+
+    assertEquals(8, RateLimitDecision.remaining(store.probe(0, 1, rule, algorithm, NOW)));
+    assertEquals(8, RateLimitDecision.remaining(store.probe(0, 1, rule, algorithm, NOW)));
+    assertEquals(7, RateLimitDecision.remaining(store.tryAcquire(0, 1, rule, algorithm, NOW)));
+  }
+
+  @Test
+  void probeOfUnknownClientReportsFullQuota() {
+    long decision = store.probe(0, 2, rule, algorithm, NOW);
+
+    assertEquals(10, RateLimitDecision.remaining(decision));
+  }
+
+  @Test
+  void clientsAndRulesHaveSeparateCounters() {
+    RateLimitRule other = new RateLimitRule(5, 60, Algorithm.FIXED_WINDOW);
+
+    store.tryAcquire(0, 3, rule, algorithm, NOW);
+
+    assertEquals(9, RateLimitDecision.remaining(store.tryAcquire(0, 4, rule, algorithm, NOW)));
+    assertEquals(4, RateLimitDecision.remaining(store.tryAcquire(0, 3, other, algorithm, NOW)));
+  }
+
+  @Test
+  void idleExpiryRestartsTheTimeoutOnEveryAccess() {
+    CaffeineRateLimitStore.IdleExpiry expiry = new CaffeineRateLimitStore.IdleExpiry();
+    CaffeineRateLimitStore.Key key = new CaffeineRateLimitStore.Key(0, 1, rule.getId(), 1_000);
+
+    assertEquals(1_000, expiry.expireAfterCreate(key, null, 0));
+    assertEquals(1_000, expiry.expireAfterUpdate(key, null, 0, 5));
+    assertEquals(1_000, expiry.expireAfterRead(key, null, 0, 5));
+  }
+}
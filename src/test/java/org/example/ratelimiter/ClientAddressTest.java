@@ -0,0 +1,126 @@
+package org.example.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClientAddressTest {
+  @Test
+  void ipv4MapsIntoIpv6() {
+    RateLimitKey key = parse("192.0.2.1");
+
+    assertEquals(0, key.getHigh());
+    assertEquals(0xFFFF_C000_0201L, key.getLow());
+    assertTrue(ClientAddress.isIpv4(key.getHigh(), key.getLow()));
+    assertSameKey(key, parse("::ffff:192.0.2.1"));
+    assertSameKey(key, parse("::ffff:c000:201"));
+  }
+
+  @Test
+  void ipv6ParsesEveryNotation() {
+    RateLimitKey key = parse("2001:db8::1");
+
+    assertEquals(0x2001_0DB8_0000_0000L, key.getHigh());
+    assertEquals(1, key.getLow());
+    assertFalse(ClientAddress.isIpv4(key.getHigh(), key.getLow()));
+    assertSameKey(key, parse("2001:0db8:0000:0000:0000:0000:0000:0001"));
+    assertSameKey(key, parse("2001:DB8:0:0::1"));
+    assertSameKey(key, parse("[2001:db8::1]"));
+    assertSameKey(key, parse("2001:db8::1%eth0"));
+
+    assertSameKey(keyOf(0, 0), parse("::"));
+    assertSameKey(keyOf(0, 1), parse("::1"));
+    assertSameKey(keyOf(0xFE80_0000_0000_0000L, 0), parse("fe80::"));
+    assertSameKey(keyOf(0x0001_0002_0003_0004L, 0x0005_0006_0007_0008L), parse("1:2:3:4:5:6:7:8"));
+    assertSameKey(keyOf(0x0001_0000_0000_0000L, 0x0000_0000_0000_0008L), parse("1::8"));
+    assertSameKey(keyOf(0x0001_0002_0003_0004L, 0x0005_0006_0007_0000L), parse("1:2:3:4:5:6:7::"));
+  }
+
+  @Test
+  void malformedTextIsHashed() {
+    String[] malformed = {"", "unknown", "256.0.0.1", "1.2.3", "1.2.3.4.5", "1..2.3", "1.2.3.4 ", "01234.0.0.1",
+      ":1::2", "1:::2", "1::2::3", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8::", "12345::",
+      "g::1", "1:2:", "::ffff:1.2.3"};
+
+    for (String text : malformed) {
+      RateLimitKey key = parse(text);
+
+      assertEquals(ClientAddress.HASHED_HIGH, key.getHigh(), text);
+      assertEquals(ClientAddress.hash(text, 0, text.length()), key.getLow(), text);
+    }
+
+    assertNotEquals(parse("unknown").getLow(), parse("unknowm").getLow());
+  }
+
+  @Test
+  void parsesARangeOfLargerText() {
+    String header = "203.0.113.7, 2001:db8::1";
+
+    assertSameKey(parse("203.0.113.7"), parse(header, 0, 11));
+    assertSameKey(parse("2001:db8::1"), parse(header, 13, header.length()));
+  }
+
+  @Test
+  void singleHalvesMatchTheParse() {
+    for (String text : new String[] {"192.0.2.1", "2001:db8::1", "unknown"}) {
+      RateLimitKey key = parse(text);
+
+      assertEquals(key.getHigh(), ClientAddress.high(text), text);
+      assertEquals(key.getLow(), ClientAddress.low(text), text);
+    }
+  }
+
+  @Test
+  void rawBytesMatchTheText() throws Exception {
+    for (String text : new String[] {"192.0.2.1", "10.255.0.1", "2001:db8::1", "fe80::1:2", "::1"}) {
+      byte[] bytes = InetAddress.getByName(text).getAddress();
+      RateLimitKey key = parse(text);
+
+      assertEquals(key.getHigh(), ClientAddress.high(bytes), text);
+      assertEquals(key.getLow(), ClientAddress.low(bytes), text);
+    }
+  }
+
+  @Test
+  void prefixMasksCoverBothHalves() {
+    assertEquals(0, ClientAddress.highMask(0));
+    assertEquals(0xFFFF_FF00_0000_0000L, ClientAddress.highMask(24));
+    assertEquals(-1L, ClientAddress.highMask(64));
+    assertEquals(-1L, ClientAddress.highMask(128));
+    assertEquals(0, ClientAddress.lowMask(64));
+    assertEquals(0xFFFF_FFFF_FFFF_FF00L, ClientAddress.lowMask(120));
+    assertEquals(-1L, ClientAddress.lowMask(128));
+  }
+
+  // Helper methods
+
+  private static RateLimitKey parse(String text) {
+    return parse(text, 0, text.length());
+  }
+
+  private static RateLimitKey parse(String text, int start, int end) {
+    RateLimitKey key = new RateLimitKey();
+
+    ClientAddress.parse(text, start, end, key);
+
+    return key;
+  }
+
+  private static RateLimitKey keyOf(long high, long low) {
+    RateLimitKey key = new RateLimitKey();
+
+    key.set(high, low);
+
+    return key;
+  }
+
+  private static void assertSameKey(RateLimitKey expected, RateLimitKey actual) {
+    assertEquals(expected.getHigh(), actual.getHigh());
+    assertEquals(expected.getLow(), actual.getLow());
+  }
+}
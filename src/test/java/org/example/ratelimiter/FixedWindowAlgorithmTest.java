@@ -0,0 +1,121 @@
+package org.example.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FixedWindowAlgorithmTest {
+  private static final long START = TimeUnit.SECONDS.toNanos(5);
+  private static final long WINDOW = TimeUnit.SECONDS.toNanos(60);
+  private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final FixedWindowAlgorithm algorithm = new FixedWindowAlgorithm();
+  private final RateLimitRule rule = new RateLimitRule(3, 60, Algorithm.FIXED_WINDOW);
+  private final AtomicLong state = algorithm.newState(rule);
+
+  @Test
+  void allowsTheLimitThenRejectsUntilTheWindowEnds() {
+    assertEquals(2, RateLimitDecision.remaining(algorithm.tryAcquire(state, rule, START)));
+    assertEquals(1, RateLimitDecision.remaining(algorithm.tryAcquire(state, rule, START + 1_000 * MILLI)));
+    assertEquals(0, RateLimitDecision.remaining(algorithm.tryAcquire(state, rule, START + 2_000 * MILLI)));
+
+    long rejected = algorithm.tryAcquire(state, rule, START + 30_000 * MILLI);
+
+    assertFalse(RateLimitDecision.isAllowed(rejected));
+    assertEquals(30_000, RateLimitDecision.waitMillis(rejected));
+  }
+
+  @Test
+  void countResetsExactlyWhenTheWindowEnds() {
+    fill(START);
+
+    long lastMilli = algorithm.tryAcquire(state, rule, START + WINDOW - MILLI);
+
+    assertFalse(RateLimitDecision.isAllowed(lastMilli));
+    assertEquals(1, RateLimitDecision.waitMillis(lastMilli));
+
+    long nextWindow = algorithm.tryAcquire(state, rule, START + WINDOW);
+
+    assertTrue(RateLimitDecision.isAllowed(nextWindow));
+    assertEquals(2, RateLimitDecision.remaining(nextWindow));
+    assertEquals(60_000, RateLimitDecision.waitMillis(nextWindow));
+  }
+
+  @Test
+  void probeCountsNothing() {
+    assertEquals(3, RateLimitDecision.remaining(algorithm.probe(state, rule, START)));
+    assertEquals(0, state.get());
+
+    algorithm.tryAcquire(state, rule, START);
+
+    assertEquals(2, RateLimitDecision.remaining(algorithm.probe(state, rule, START)));
+    assertEquals(2, RateLimitDecision.remaining(algorithm.probe(state, rule, START)));
+  }
+
+  @Test
+  void concurrentRequestsNeverExceedTheLimit() throws Exception {
+    RateLimitRule shared = new RateLimitRule(1_000, 60, Algorithm.FIXED_WINDOW);
+    AtomicLong sharedState = algorithm.newState(shared);
+    LongAdder allowed = new LongAdder();
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    try {
+      for (int thread = 0; thread < 8; thread++) {
+        executor.execute(() -> {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return;
+          }
+
+          for (int i = 0; i < 500; i++) {
+            if (RateLimitDecision.isAllowed(algorithm.tryAcquire(sharedState, shared, START))) {
+              allowed.increment();
+            }
+          }
+        });
+      }
+
+      start.countDown();
+      executor.shutdown();
+
+      assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(1_000, allowed.sum());
+  }
+
+  @Test
+  void rebaseMovesTheWindowOntoTheNewClock() {
+    fill(START);
+
+    long thenNanos = START + 20_000 * MILLI;
+    long nowNanos = thenNanos + TimeUnit.HOURS.toNanos(1);
+    long rebased = algorithm.rebase(state.get(), rule, thenNanos, nowNanos);
+
+    assertEquals(algorithm.decide(state.get(), rule, thenNanos), algorithm.decide(rebased, rule, nowNanos));
+    assertEquals(0, algorithm.rebase(state.get(), rule, START + WINDOW, nowNanos));
+  }
+
+  // Helper methods
+
+  private void fill(long nowNanos) {
+    for (int i = 0; i < rule.getLimit(); i++) {
+      assertTrue(RateLimitDecision.isAllowed(algorithm.tryAcquire(state, rule, nowNanos)));
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package org.example.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GcraAlgorithmTest {
+  private static final long START = TimeUnit.SECONDS.toNanos(5);
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  // An emission interval of 6 seconds, with bursts of up to 10
+  private final GcraAlgorithm algorithm = new GcraAlgorithm();
+  private final RateLimitRule rule = new RateLimitRule(10, 60, Algorithm.GCRA);
+  private final AtomicLong state = algorithm.newState(rule);
+
+  @Test
+  void burstIsTheLimitThenRequestsAreSpacedByTheInterval() {
+    assertEquals(9, RateLimitDecision.remaining(algorithm.tryAcquire(state, rule, START)));
+
+    for (int i = 1; i < 10; i++) {
+      assertTrue(RateLimitDecision.isAllowed(algorithm.tryAcquire(state, rule, START)));
+    }
+
+    long rejected = algorithm.tryAcquire(state, rule, START);
+
+    assertFalse(RateLimitDecision.isAllowed(rejected));
+    assertEquals(6_000, RateLimitDecision.waitMillis(rejected));
+
+    // Each interval frees exactly one request
+    assertFalse(RateLimitDecision.isAllowed(algorithm.tryAcquire(state, rule, START + 6 * SECOND - 1)));
+    assertTrue(RateLimitDecision.isAllowed(algorithm.tryAcquire(state, rule, START + 6 * SECOND)));
+    assertFalse(RateLimitDecision.isAllowed(algorithm.tryAcquire(state, rule, START + 6 * SECOND)));
+  }
+
+  @Test
+  void requestsAtTheEmissionRateAreNeverRejected() {
+    for (int i = 0; i < 100; i++) {
+      long decision = algorithm.tryAcquire(state, rule, START + i * 6 * SECOND);
+
+      assertTrue(RateLimitDecision.isAllowed(decision), "request " + i);
+      assertEquals(9, RateLimitDecision.remaining(decision));
+    }
+  }
+
+  @Test
+  void resetIsWhenTheBacklogDrains() {
+    algorithm.tryAcquire(state, rule, START);
+    algorithm.tryAcquire(state, rule, START);
+
+    long probe = algorithm.probe(state, rule, START + SECOND);
+
+    assertEquals(8, RateLimitDecision.remaining(probe));
+    assertEquals(11_000, RateLimitDecision.waitMillis(probe));
+  }
+
+  @Test
+  void rebaseMovesTheTheoreticalArrivalOntoTheNewClock() {
+    algorithm.tryAcquire(state, rule, START);
+    algorithm.tryAcquire(state, rule, START);
+
+    long thenNanos = START + SECOND;
+    long nowNanos = thenNanos + TimeUnit.HOURS.toNanos(1);
+    long rebased = algorithm.rebase(state.get(), rule, thenNanos, nowNanos);
+
+    assertEquals(algorithm.decide(state.get(), rule, thenNanos), algorithm.decide(rebased, rule, nowNanos));
+    assertEquals(0, algorithm.rebase(state.get(), rule, START + 12 * SECOND, nowNanos));
+  }
+}
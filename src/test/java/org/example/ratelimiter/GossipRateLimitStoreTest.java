@@ -0,0 +1,131 @@
+package org.example.ratelimiter;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GossipRateLimitStoreTest {
+  private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final long CONVERGENCE_MILLIS = 5_000;
+
+  // A day-long window, so the test never straddles a window boundary
+  private final RateLimitRule rule = new RateLimitRule(100, 86_400, Algorithm.FIXED_WINDOW);
+  private final FixedWindowAlgorithm algorithm = new FixedWindowAlgorithm();
+  private GossipRateLimitStore first;
+  private GossipRateLimitStore second;
+
+  @BeforeEach
+  void startNodes() {
+    first = node();
+    second = node();
+    first.setPeers(List.of(second.getLocalAddress()));
+    second.setPeers(List.of(first.getLocalAddress()));
+  }
+
+  @AfterEach
+  void stopNodes() {
+    first.close();
+    second.close();
+  }
+
+  @Test
+  void nodesEnforceTheMergedTotal() throws InterruptedException {
+    acquire(first, 30);
+    acquire(second, 20);
+
+    awaitRemaining(first, 50);
+    awaitRemaining(second, 50);
+
+    acquire(first, 50);
+    awaitRemaining(second, 0);
+
+    assertFalse(RateLimitDecision.isAllowed(tryAcquire(second)));
+    assertFalse(RateLimitDecision.isAllowed(tryAcquire(first)));
+  }
+
+  @Test
+  void probeKeepsLocalAndPeerCounts() throws InterruptedException {
+    acquire(first, 10);
+    awaitRemaining(second, 90);
+
+    assertEquals(90, remaining(() -> second.probe(0, 1, rule, algorithm, RateLimitClock.nanoTime())));
+    assertEquals(89, remaining(() -> tryAcquire(second)));
+    awaitRemaining(first, 89);
+  }
+
+  @Test
+  void restartedNodeRecoversItsPeersCounts() throws InterruptedException {
+    acquire(first, 40);
+    awaitRemaining(second, 60);
+
+    second.close();
+    second = node();
+    second.setPeers(List.of(first.getLocalAddress()));
+    first.setPeers(List.of(second.getLocalAddress()));
+
+    // Heard of by its first datagram, after which the peer sends it every live counter
+    awaitRemaining(second, 60);
+  }
+
+  @Test
+  void datagramsThatAreNotGossipAreCounted() throws Exception {
+    try (DatagramChannel channel = DatagramChannel.open()) {
+      channel.send(ByteBuffer.wrap(new byte[] {1, 2, 3}), first.getLocalAddress());
+    }
+
+    long deadline = System.currentTimeMillis() + CONVERGENCE_MILLIS;
+
+    while (first.getErrorCount() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+
+    assertEquals(1, first.getErrorCount());
+  }
+
+  // Helper methods
+
+  private static GossipRateLimitStore node() {
+    return new GossipRateLimitStore(new InetSocketAddress("127.0.0.1", 0), List.of(), INTERVAL_NANOS, 1000, null);
+  }
+
+  private void acquire(GossipRateLimitStore node, int requests) {
+    for (int i = 0; i < requests; i++) {
+      assertTrue(RateLimitDecision.isAllowed(tryAcquire(node)));
+    }
+  }
+
+  private long tryAcquire(GossipRateLimitStore node) {
+    return node.tryAcquire(0, 1, rule, algorithm, RateLimitClock.nanoTime());
+  }
+
+  private static long remaining(LongSupplier decision) {
+    long value = decision.getAsLong();
+
+    return RateLimitDecision.isAllowed(value) ? RateLimitDecision.remaining(value) : 0;
+  }
+
+  /**
+   * Waits for gossip to bring the node's view of the client to the given remaining count
+   */
+  private void awaitRemaining(GossipRateLimitStore node, long expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + CONVERGENCE_MILLIS;
+    LongSupplier probe = () -> node.probe(0, 1, rule, algorithm, RateLimitClock.nanoTime());
+
+    while (remaining(probe) != expected && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+
+    assertEquals(expected, remaining(probe));
+  }
+}
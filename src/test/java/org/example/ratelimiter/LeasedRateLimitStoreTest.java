@@ -0,0 +1,192 @@
+package org.example.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LeasedRateLimitStoreTest {
+  private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(60);
+  private static final long TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+  // Decision of the fallback store, recognizable by its remaining count
+  private static final long FALLBACK_DECISION = RateLimitDecision.allowed(12345, 0);
+
+  private final RateLimitRule rule = new RateLimitRule(100, 60, Algorithm.FIXED_WINDOW);
+  private final FixedWindowAlgorithm algorithm = new FixedWindowAlgorithm();
+  private final RateLimitStore fallback = new FixedDecisionStore(FALLBACK_DECISION);
+
+  @Test
+  void firstRequestLeasesAChunk() {
+    InMemoryQuotaLedger ledger = new InMemoryQuotaLedger(0);
+    LeasedRateLimitStore store = store(ledger, 0.1);
+
+    long decision = acquire(store, 1);
+
+    assertTrue(RateLimitDecision.isAllowed(decision));
+    // Nine permits in hand and ninety left on the ledger
+    assertEquals(99, RateLimitDecision.remaining(decision));
+    assertEquals(1, ledger.getLeaseCount());
+  }
+
+  @Test
+  void nextChunkIsReservedOnceHalfIsSpent() {
+    InMemoryQuotaLedger ledger = new InMemoryQuotaLedger(0);
+    LeasedRateLimitStore store = store(ledger, 0.1);
+
+    for (int i = 0; i < 4; i++) {
+      acquire(store, 1);
+    }
+
+    assertEquals(1, ledger.getLeaseCount());
+
+    acquire(store, 1);
+
+    assertEquals(2, ledger.getLeaseCount());
+
+    // The renewal arrived before the first chunk ran out, so no request waited for it
+    for (int i = 0; i < 10; i++) {
+      assertTrue(RateLimitDecision.isAllowed(acquire(store, 1)));
+    }
+
+    assertEquals(0, store.getFallbackCount());
+  }
+
+  @Test
+  void exhaustedLedgerRejectsLocallyUntilTheWindowEnds() {
+    InMemoryQuotaLedger ledger = new InMemoryQuotaLedger(0);
+    LeasedRateLimitStore store = store(ledger, 0.5);
+    RateLimitRule small = new RateLimitRule(10, 60, Algorithm.FIXED_WINDOW);
+
+    for (int i = 0; i < 10; i++) {
+      assertTrue(RateLimitDecision.isAllowed(store.tryAcquire(0, 1, small, algorithm, RateLimitClock.nanoTime())));
+    }
+
+    long rejected = store.tryAcquire(0, 1, small, algorithm, RateLimitClock.nanoTime());
+    long leases = ledger.getLeaseCount();
+
+    assertFalse(RateLimitDecision.isAllowed(rejected));
+    assertTrue(RateLimitDecision.waitMillis(rejected) > 0);
+
+    store.tryAcquire(0, 1, small, algorithm, RateLimitClock.nanoTime());
+
+    assertEquals(leases, ledger.getLeaseCount());
+  }
+
+  @Test
+  void ledgerTimeoutFallsBack() {
+    ScriptedLedger ledger = new ScriptedLedger();
+    LeasedRateLimitStore store = store(ledger, 0.1);
+
+    ledger.next.add(new CompletableFuture<>());
+
+    assertEquals(FALLBACK_DECISION, acquire(store, 1));
+    assertEquals(1, store.getFallbackCount());
+  }
+
+  @Test
+  void ledgerFailureFallsBack() {
+    ScriptedLedger ledger = new ScriptedLedger();
+    LeasedRateLimitStore store = store(ledger, 0.1);
+
+    ledger.next.add(CompletableFuture.failedFuture(new IllegalStateException("ledger down")));
+
+    assertEquals(FALLBACK_DECISION, acquire(store, 1));
+    assertEquals(1, store.getFallbackCount());
+  }
+
+  @Test
+  void lateGrantOfAnEarlierWindowIsIgnored() {
+    ScriptedLedger ledger = new ScriptedLedger();
+    LeasedRateLimitStore store = store(ledger, 0.1);
+    CompletableFuture<QuotaLedger.Grant> late = new CompletableFuture<>();
+
+    ledger.next.add(CompletableFuture.completedFuture(new QuotaLedger.Grant(10, 2, WINDOW_NANOS, 90)));
+    ledger.next.add(late);
+
+    // Spends half of the window 2 chunk, which sends the renewal that the test completes late
+    for (int i = 0; i < 5; i++) {
+      acquire(store, 1);
+    }
+
+    late.complete(new QuotaLedger.Grant(10, 1, WINDOW_NANOS, 0));
+
+    assertEquals(4 + 90, RateLimitDecision.remaining(acquire(store, 1)));
+    assertEquals(4 + 90, RateLimitDecision.remaining(store.probe(0, 1, rule, algorithm, RateLimitClock.nanoTime())));
+  }
+
+  @Test
+  void grantOfAWindowIndexPast2ToThe31IsApplied() {
+    ScriptedLedger ledger = new ScriptedLedger();
+    LeasedRateLimitStore store = store(ledger, 0.1);
+
+    // Epoch-second windows pass 2^31 in 2038
+    ledger.next.add(CompletableFuture.completedFuture(new QuotaLedger.Grant(10, (1L << 31) + 5, WINDOW_NANOS, 90)));
+
+    assertEquals(9 + 90, RateLimitDecision.remaining(acquire(store, 1)));
+    assertEquals(0, store.getFallbackCount());
+  }
+
+  @Test
+  void probeKeepsTheLease() {
+    InMemoryQuotaLedger ledger = new InMemoryQuotaLedger(0);
+    LeasedRateLimitStore store = store(ledger, 0.1);
+
+    acquire(store, 1);
+
+    assertEquals(99, RateLimitDecision.remaining(store.probe(0, 1, rule, algorithm, RateLimitClock.nanoTime())));
+    assertEquals(98, RateLimitDecision.remaining(acquire(store, 1)));
+    assertEquals(1, ledger.getLeaseCount());
+  }
+
+  // Helper methods
+
+  private LeasedRateLimitStore store(QuotaLedger ledger, double leaseFraction) {
+    return new LeasedRateLimitStore(ledger, leaseFraction, TIMEOUT_NANOS, 1000, fallback, fallback);
+  }
+
+  private long acquire(LeasedRateLimitStore store, long client) {
+    return store.tryAcquire(0, client, rule, algorithm, RateLimitClock.nanoTime());
+  }
+
+  /**
+   * Ledger answering each lease with the next future the test queued
+   */
+  private static final class ScriptedLedger implements QuotaLedger {
+    final Queue<CompletableFuture<Grant>> next = new ArrayDeque<>();
+
+    @Override
+    public CompletableFuture<Grant> lease(long clientHigh, long clientLow, RateLimitRule rule, int permits) {
+      return next.remove();
+    }
+  }
+
+  /**
+   * Store answering every request with the same decision
+   */
+  static final class FixedDecisionStore implements RateLimitStore {
+    private final long decision;
+
+    FixedDecisionStore(long decision) {
+      this.decision = decision;
+    }
+
+    @Override
+    public long tryAcquire(long clientHigh, long clientLow, RateLimitRule rule, RateLimitAlgorithm<?> algorithm,
+                           long nowNanos) {
+      return decision;
+    }
+
+    @Override
+    public long probe(long clientHigh, long clientLow, RateLimitRule rule, RateLimitAlgorithm<?> algorithm,
+                      long nowNanos) {
+      return decision;
+    }
+  }
+}
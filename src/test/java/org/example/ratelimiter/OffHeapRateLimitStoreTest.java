@@ -0,0 +1,179 @@
+package org.example.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OffHeapRateLimitStoreTest {
+  private final RateLimiterConfig config = new RateLimiterConfig();
+  private final RateLimitRule fixedWindow = new RateLimitRule(10, 60, Algorithm.FIXED_WINDOW);
+  private final RateLimitRule gcra = new RateLimitRule(10, 60, Algorithm.GCRA);
+  private final RateLimitRule oneSecond = new RateLimitRule(10, 1, Algorithm.FIXED_WINDOW);
+  private final FixedWindowAlgorithm fixedWindowAlgorithm = new FixedWindowAlgorithm();
+  private final GcraAlgorithm gcraAlgorithm = new GcraAlgorithm();
+  private final List<RateLimitAlgorithm<?>> algorithms = List.of(fixedWindowAlgorithm, gcraAlgorithm);
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void restoreCarriesQuotasIntoANewStore() throws IOException {
+    Path path = directory.resolve("limits.snapshot");
+
+    try (OffHeapRateLimitStore store = store()) {
+      long nowNanos = RateLimitClock.nanoTime();
+
+      for (int i = 0; i < 3; i++) {
+        store.tryAcquire(0, 1, fixedWindow, fixedWindowAlgorithm, nowNanos);
+        store.tryAcquire(0, 1, gcra, gcraAlgorithm, nowNanos);
+      }
+
+      store.tryAcquire(0, 2, fixedWindow, fixedWindowAlgorithm, nowNanos);
+
+      assertEquals(3, store.snapshot(path));
+    }
+
+    try (OffHeapRateLimitStore store = store()) {
+      long nowNanos = RateLimitClock.nanoTime();
+
+      assertEquals(3, store.restore(path, algorithms));
+      assertEquals(7, RateLimitDecision.remaining(store.probe(0, 1, fixedWindow, fixedWindowAlgorithm, nowNanos)));
+      assertEquals(7, RateLimitDecision.remaining(store.probe(0, 1, gcra, gcraAlgorithm, nowNanos)));
+      assertEquals(9, RateLimitDecision.remaining(store.probe(0, 2, fixedWindow, fixedWindowAlgorithm, nowNanos)));
+      assertEquals(10, RateLimitDecision.remaining(store.probe(0, 3, fixedWindow, fixedWindowAlgorithm, nowNanos)));
+    }
+  }
+
+  @Test
+  void restoreSkipsAlgorithmsNotInUse() throws IOException {
+    Path path = directory.resolve("limits.snapshot");
+
+    try (OffHeapRateLimitStore store = store()) {
+      long nowNanos = RateLimitClock.nanoTime();
+
+      store.tryAcquire(0, 1, fixedWindow, fixedWindowAlgorithm, nowNanos);
+      store.tryAcquire(0, 1, gcra, gcraAlgorithm, nowNanos);
+      store.snapshot(path);
+    }
+
+    try (OffHeapRateLimitStore store = store()) {
+      long nowNanos = RateLimitClock.nanoTime();
+
+      assertEquals(1, store.restore(path, List.of(gcraAlgorithm)));
+      assertEquals(10, RateLimitDecision.remaining(store.probe(0, 1, fixedWindow, fixedWindowAlgorithm, nowNanos)));
+      assertEquals(9, RateLimitDecision.remaining(store.probe(0, 1, gcra, gcraAlgorithm, nowNanos)));
+    }
+  }
+
+  @Test
+  void unreadableSnapshotIsCountedAndTheStoreStartsEmpty() throws IOException {
+    Path path = directory.resolve("limits.snapshot");
+
+    Files.write(path, new byte[64]);
+
+    try (OffHeapRateLimitStore store = store()) {
+      assertThrows(IOException.class, () -> store.restore(path, algorithms));
+      assertEquals(0, store.enableSnapshots(path, TimeUnit.MINUTES.toNanos(1), algorithms));
+      assertEquals(1, store.getSnapshotFailureCount());
+      assertEquals(0, store.getSize());
+    }
+  }
+
+  @Test
+  void corruptEntryCountFailsTheRestoreBeforeAnythingIsInserted() throws IOException {
+    Path path = directory.resolve("limits.snapshot");
+
+    try (OffHeapRateLimitStore store = store()) {
+      long nowNanos = RateLimitClock.nanoTime();
+
+      store.tryAcquire(0, 1, fixedWindow, fixedWindowAlgorithm, nowNanos);
+      store.tryAcquire(0, 1, gcra, gcraAlgorithm, nowNanos);
+      store.snapshot(path);
+    }
+
+    // Skip the first rule's header, then give the second a count whose size in bytes overflows a long
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+    int position = 32 + 32;
+
+    position += 4 + buffer.getInt(position);
+    position += 4;
+    buffer.putLong(position + 24, Long.MAX_VALUE / 8);
+    Files.write(path, buffer.array());
+
+    try (OffHeapRateLimitStore store = store()) {
+      assertThrows(IOException.class, () -> store.restore(path, algorithms));
+      assertEquals(0, store.getSize());
+      assertEquals(0, store.enableSnapshots(path, TimeUnit.MINUTES.toNanos(1), algorithms));
+      assertEquals(1, store.getSnapshotFailureCount());
+    }
+  }
+
+  @Test
+  void idleSlotsAreReclaimedAndEmptied() throws InterruptedException {
+    try (OffHeapRateLimitStore store = store(1_024)) {
+      store.tryAcquire(0, 1, oneSecond, fixedWindowAlgorithm, RateLimitClock.nanoTime());
+      assertEquals(1, store.getSize());
+
+      awaitExpired(store, 1);
+      assertEquals(0, store.getSize());
+      assertEquals(0, store.getTombstoneCount());
+
+      long decision = store.tryAcquire(0, 1, oneSecond, fixedWindowAlgorithm, RateLimitClock.nanoTime());
+
+      assertEquals(9, RateLimitDecision.remaining(decision));
+      assertEquals(1, store.getSize());
+    }
+  }
+
+  @Test
+  void tombstonesKeepProbeChainsIntactAndAreReused() throws InterruptedException {
+    // Two slots, so every key probes both and the first key's slot is always followed by the second's
+    try (OffHeapRateLimitStore store = store(2)) {
+      long nowNanos = RateLimitClock.nanoTime();
+
+      store.tryAcquire(0, 1, oneSecond, fixedWindowAlgorithm, nowNanos);
+      store.tryAcquire(0, 2, fixedWindow, fixedWindowAlgorithm, nowNanos);
+
+      awaitExpired(store, 1);
+      nowNanos = RateLimitClock.nanoTime();
+      assertEquals(1, store.getSize());
+      assertEquals(1, store.getTombstoneCount());
+      assertEquals(9, RateLimitDecision.remaining(store.probe(0, 2, fixedWindow, fixedWindowAlgorithm, nowNanos)));
+
+      store.tryAcquire(0, 3, fixedWindow, fixedWindowAlgorithm, nowNanos);
+      assertEquals(2, store.getSize());
+      assertEquals(0, store.getTombstoneCount());
+      assertEquals(0, store.getOverflowCount());
+    }
+  }
+
+  // Helper methods
+
+  private OffHeapRateLimitStore store() {
+    return store(1_024);
+  }
+
+  private OffHeapRateLimitStore store(long capacity) {
+    return new OffHeapRateLimitStore(capacity, new CaffeineRateLimitStore(config.cacheManager()));
+  }
+
+  private static void awaitExpired(OffHeapRateLimitStore store, long expired) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+    while (store.getTimingWheel().getExpiredCount() < expired && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+
+    assertEquals(expired, store.getTimingWheel().getExpiredCount());
+  }
+}
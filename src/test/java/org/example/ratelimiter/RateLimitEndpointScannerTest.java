@@ -0,0 +1,82 @@
+package org.example.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimitEndpointScannerTest {
+  private final RateLimiterConfig config = new RateLimiterConfig();
+  private final RateLimiterService service = new RateLimiterService(new CaffeineRateLimitStore(config.cacheManager()),
+    List.of(new FixedWindowAlgorithm()), config.subnetMask(24, 64));
+  private final RateLimitKeyResolvers keyResolvers =
+    new RateLimitKeyResolvers(null, TrustedProxies.none(), config.subnetMask(24, 64));
+
+  @Test
+  void rateLimitedHandlersAreRegisteredAtStartup() {
+    Map<RequestMappingInfo, HandlerMethod> handlers = new LinkedHashMap<>();
+
+    handlers.put(RequestMappingInfo.paths("/items/{id}").methods(RequestMethod.GET).build(), handler("limited"));
+    handlers.put(RequestMappingInfo.paths("/health").build(), handler("unlimited"));
+
+    scanner(handlers).afterSingletonsInstantiated();
+
+    List<RateLimitEndpoint> endpoints = service.getEndpoints();
+
+    assertEquals(1, endpoints.size());
+    assertEquals("GET /items/{id}", endpoints.get(0).getPath());
+    assertEquals(3, endpoints.get(0).getInfo().getRule().getLimit());
+    assertTrue(service.getRateLimitRegistry().containsKey("GET /items/{id}"));
+  }
+
+  @Test
+  void invalidKeyFailsTheStartup() {
+    Map<RequestMappingInfo, HandlerMethod> handlers =
+      Map.of(RequestMappingInfo.paths("/bad").build(), handler("badKey"));
+
+    assertThrows(IllegalArgumentException.class, scanner(handlers)::afterSingletonsInstantiated);
+  }
+
+  // Helper methods
+
+  private RateLimitEndpointScanner scanner(Map<RequestMappingInfo, HandlerMethod> handlers) {
+    RequestMappingHandlerMapping handlerMapping = new RequestMappingHandlerMapping() {
+      @Override
+      public Map<RequestMappingInfo, HandlerMethod> getHandlerMethods() {
+        return handlers;
+      }
+    };
+
+    return new RateLimitEndpointScanner(service, handlerMapping, keyResolvers);
+  }
+
+  private static HandlerMethod handler(String name) {
+    try {
+      return new HandlerMethod(new Handlers(), Handlers.class.getDeclaredMethod(name));
+    } catch (NoSuchMethodException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  static final class Handlers {
+    @RateLimit(limit = 3, timeWindowSeconds = 60)
+    void limited() {
+    }
+
+    void unlimited() {
+    }
+
+    @RateLimit(key = "nonsense")
+    void badKey() {
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package org.example.ratelimiter;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RateLimitFilterTest {
+  private final RateLimiterConfig config = new RateLimiterConfig();
+  private final RateLimitKeyResolvers keyResolvers =
+    new RateLimitKeyResolvers(null, TrustedProxies.none(), config.subnetMask(24, 64));
+  private final RateLimiterService service = new RateLimiterService(new CaffeineRateLimitStore(config.cacheManager()),
+    List.of(new FixedWindowAlgorithm()), config.subnetMask(24, 64));
+
+  @Test
+  void keysReadFromArgumentsFailTheStartup() {
+    RateLimitFilter filter = filter("byArgument");
+
+    assertThrows(IllegalStateException.class, filter::afterSingletonsInstantiated);
+  }
+
+  @Test
+  void requestKeysAreAccepted() {
+    assertDoesNotThrow(filter("byIp")::afterSingletonsInstantiated);
+    assertDoesNotThrow(filter("byPrincipal")::afterSingletonsInstantiated);
+    assertDoesNotThrow(filter("byHeader")::afterSingletonsInstantiated);
+  }
+
+  @Test
+  void allowedResponsesCarryNoRateLimitHeadersByDefault() throws ServletException, IOException {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    MockFilterChain chain = new MockFilterChain();
+
+    filter("byIp").doFilter(new MockHttpServletRequest(), response, chain);
+
+    assertNotNull(chain.getRequest());
+    assertFalse(response.containsHeader(RateLimitHeaders.LIMIT));
+    assertFalse(response.containsHeader(RateLimitHeaders.REMAINING));
+    assertFalse(response.containsHeader(RateLimitHeaders.RESET));
+  }
+
+  @Test
+  void allowedResponsesCarryRateLimitHeadersWhenAsked() throws ServletException, IOException {
+    RateLimitFilter filter = filter("withHeaders");
+
+    filter.doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(), new MockFilterChain());
+
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    filter.doFilter(new MockHttpServletRequest(), response, new MockFilterChain());
+
+    assertEquals("5", response.getHeader(RateLimitHeaders.LIMIT));
+    assertEquals("3", response.getHeader(RateLimitHeaders.REMAINING));
+    assertEquals("60", response.getHeader(RateLimitHeaders.RESET));
+  }
+
+  // Helper methods
+
+  private RateLimitFilter filter(String handlerName) {
+    HandlerMethod handlerMethod;
+
+    try {
+      handlerMethod = new HandlerMethod(new Handlers(), Handlers.class.getDeclaredMethod(handlerName, String.class));
+    } catch (NoSuchMethodException e) {
+      throw new IllegalArgumentException(e);
+    }
+
+    RequestMappingHandlerMapping handlerMapping = new RequestMappingHandlerMapping() {
+      @Override
+      public Map<RequestMappingInfo, HandlerMethod> getHandlerMethods() {
+        return Map.of(RequestMappingInfo.paths("/items/{id}").build(), handlerMethod);
+      }
+
+      @Override
+      public HandlerExecutionChain getHandler(HttpServletRequest request) {
+        return new HandlerExecutionChain(handlerMethod);
+      }
+    };
+
+    return new RateLimitFilter(service, handlerMapping, keyResolvers);
+  }
+
+  static final class Handlers {
+    @RateLimit(key = "spel:#id")
+    void byArgument(String id) {
+    }
+
+    @RateLimit
+    void byIp(String id) {
+    }
+
+    @RateLimit(key = "principal")
+    void byPrincipal(String id) {
+    }
+
+    @RateLimit(key = "header:X-Api-Key")
+    void byHeader(String id) {
+    }
+
+    @RateLimit(limit = 5, timeWindowSeconds = 60, headers = true)
+    void withHeaders(String id) {
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package org.example.ratelimiter;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RateLimitKeyResolversTest {
+  private final Locale defaultLocale = Locale.getDefault();
+  private final RateLimitKeyResolvers keyResolvers = new RateLimitKeyResolvers(null,
+    TrustedProxies.of(List.of("10.0.0.0/8"), 5), new RateLimiterConfig().subnetMask(24, 64));
+
+  @AfterEach
+  void restoreLocale() {
+    Locale.setDefault(defaultLocale);
+  }
+
+  @Test
+  void ipKeyIsTheForwardedClientBehindTrustedProxies() {
+    MockHttpServletRequest request = request("10.0.0.1");
+
+    request.addHeader(TrustedProxies.FORWARDED_FOR, "203.0.113.7, 10.0.0.2");
+
+    RateLimitKey key = resolve("byIp", request);
+
+    assertEquals(ClientAddress.high("203.0.113.7"), key.getHigh());
+    assertEquals(ClientAddress.low("203.0.113.7"), key.getLow());
+  }
+
+  @Test
+  void headerNamesOfAnyCaseShareKeysInAnyLocale() {
+    MockHttpServletRequest request = request("198.51.100.1");
+
+    request.addHeader("X-Api-Key", "secret");
+
+    RateLimitKey lowerCase = resolve("byLowerCaseHeader", request);
+
+    // Dotted and dotless i differ in Turkish, which must not split the counters of one header
+    Locale.setDefault(Locale.forLanguageTag("tr"));
+
+    RateLimitKey mixedCase = resolve("byMixedCaseHeader", request);
+
+    assertEquals(lowerCase.getHigh(), mixedCase.getHigh());
+    assertEquals(lowerCase.getLow(), mixedCase.getLow());
+  }
+
+  @Test
+  void missingHeaderFallsBackToTheClientIp() {
+    RateLimitKey key = resolve("byLowerCaseHeader", request("198.51.100.1"));
+
+    assertEquals(ClientAddress.high("198.51.100.1"), key.getHigh());
+    assertEquals(ClientAddress.low("198.51.100.1"), key.getLow());
+  }
+
+  @Test
+  void equalValuesOfDifferentKeyTypesStayApart() {
+    MockHttpServletRequest request = request("198.51.100.1");
+
+    request.addHeader("X-Api-Key", "alice");
+    request.setUserPrincipal(() -> "alice");
+
+    RateLimitKey header = resolve("byLowerCaseHeader", request);
+    RateLimitKey principal = resolve("byPrincipal", request);
+
+    assertNotEquals(header.getLow(), principal.getLow());
+  }
+
+  @Test
+  void invalidKeyIsRejected() throws Exception {
+    RateLimitedMethod method = RateLimitedMethod.of(Handlers.class.getDeclaredMethod("byUnknownKey"));
+
+    assertThrows(IllegalArgumentException.class, () -> keyResolvers.resolverFor(method));
+  }
+
+  // Helper methods
+
+  private RateLimitKey resolve(String handlerName, MockHttpServletRequest request) {
+    RateLimitKey key = new RateLimitKey();
+
+    try {
+      keyResolvers.resolverFor(RateLimitedMethod.of(Handlers.class.getDeclaredMethod(handlerName)))
+        .resolve(request, null, key);
+    } catch (NoSuchMethodException e) {
+      throw new IllegalArgumentException(e);
+    }
+
+    return key;
+  }
+
+  private static MockHttpServletRequest request(String remoteAddress) {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+
+    request.setRemoteAddr(remoteAddress);
+
+    return request;
+  }
+
+  static final class Handlers {
+    @RateLimit
+    void byIp() {
+    }
+
+    @RateLimit(key = "header:x-api-key")
+    void byLowerCaseHeader() {
+    }
+
+    @RateLimit(key = "header:X-API-KEY")
+    void byMixedCaseHeader() {
+    }
+
+    @RateLimit(key = "principal")
+    void byPrincipal() {
+    }
+
+    @RateLimit(key = "api-key")
+    void byUnknownKey() {
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package org.example.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimitResponsesTest {
+  private final RateLimitRule rule = new RateLimitRule(10, 60, Algorithm.FIXED_WINDOW);
+
+  @Test
+  void rejectionIs429WithRetryAfterAndTheCachedBody() throws IOException {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    RateLimitResponses.writeRejected(response, rule, RateLimitDecision.rejected(TimeUnit.MILLISECONDS.toNanos(1500)));
+
+    assertEquals(429, response.getStatus());
+    // Rounded up, so a client that waits as told is never rejected again for being early
+    assertEquals("2", response.getHeader(RateLimitHeaders.RETRY_AFTER));
+    assertEquals("10", response.getHeader(RateLimitHeaders.LIMIT));
+    assertEquals("0", response.getHeader(RateLimitHeaders.REMAINING));
+    assertEquals("2", response.getHeader(RateLimitHeaders.RESET));
+    assertEquals(RateLimitHeaders.REJECTED_CONTENT_TYPE, response.getContentType());
+    assertEquals(RateLimitHeaders.REJECTED_BODY.length, response.getContentLength());
+    assertArrayEquals(RateLimitHeaders.REJECTED_BODY, response.getContentAsByteArray());
+    assertEquals("Rate limit exceeded. Try again later.", response.getContentAsString());
+    assertTrue(response.isCommitted());
+  }
+
+  @Test
+  void allowedHeadersComeFromTheDecision() {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    RateLimitResponses.setHeaders(response, rule, RateLimitDecision.allowed(7, TimeUnit.SECONDS.toNanos(59)));
+
+    assertEquals(200, response.getStatus());
+    assertEquals("10", response.getHeader(RateLimitHeaders.LIMIT));
+    assertEquals("7", response.getHeader(RateLimitHeaders.REMAINING));
+    assertEquals("59", response.getHeader(RateLimitHeaders.RESET));
+  }
+
+  @Test
+  void headerValuesOfSmallNumbersAreCached() {
+    assertSame(RateLimitHeaders.value(42), RateLimitHeaders.value(42));
+    assertEquals("42", RateLimitHeaders.value(42));
+    assertEquals("0", RateLimitHeaders.value(0));
+    assertEquals("100000", RateLimitHeaders.value(100_000));
+  }
+}
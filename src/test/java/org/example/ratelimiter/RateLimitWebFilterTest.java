@@ -0,0 +1,168 @@
+package org.example.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimitWebFilterTest {
+  private final RateLimiterConfig config = new RateLimiterConfig();
+  private final List<RateLimitAlgorithm<?>> algorithms = List.of(new FixedWindowAlgorithm());
+  private final AtomicInteger passed = new AtomicInteger();
+  private final AtomicReference<String> chainThread = new AtomicReference<>();
+  private final WebFilterChain chain = exchange -> {
+    passed.incrementAndGet();
+    chainThread.set(Thread.currentThread().getName());
+
+    return Mono.empty();
+  };
+
+  @Test
+  void allowedRequestPassesWithoutHeadersByDefault() {
+    RateLimitWebFilter filter = filter(new CaffeineRateLimitStore(config.cacheManager()), "limited");
+    MockServerWebExchange exchange = exchange();
+
+    filter.filter(exchange, chain).block();
+
+    assertEquals(1, passed.get());
+    assertNull(exchange.getResponse().getStatusCode());
+    assertFalse(exchange.getResponse().getHeaders().containsKey(RateLimitHeaders.LIMIT));
+  }
+
+  @Test
+  void allowedRequestCarriesHeadersWhenAsked() {
+    RateLimitWebFilter filter = filter(new CaffeineRateLimitStore(config.cacheManager()), "withHeaders");
+    MockServerWebExchange exchange = exchange();
+
+    filter.filter(exchange, chain).block();
+
+    HttpHeaders headers = exchange.getResponse().getHeaders();
+
+    assertEquals(1, passed.get());
+    assertEquals("5", headers.getFirst(RateLimitHeaders.LIMIT));
+    assertEquals("4", headers.getFirst(RateLimitHeaders.REMAINING));
+    assertEquals("60", headers.getFirst(RateLimitHeaders.RESET));
+  }
+
+  @Test
+  void requestOverTheLimitIsRejectedWith429() {
+    RateLimitWebFilter filter = filter(new CaffeineRateLimitStore(config.cacheManager()), "limited");
+    MockServerWebExchange exchange = exchange();
+
+    filter.filter(exchange(), chain).block();
+    filter.filter(exchange, chain).block();
+
+    HttpHeaders headers = exchange.getResponse().getHeaders();
+
+    assertEquals(1, passed.get());
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, exchange.getResponse().getStatusCode());
+    assertTrue(Long.parseLong(headers.getFirst(RateLimitHeaders.RETRY_AFTER)) > 0);
+    assertEquals("1", headers.getFirst(RateLimitHeaders.LIMIT));
+    assertEquals("0", headers.getFirst(RateLimitHeaders.REMAINING));
+    assertEquals(headers.getFirst(RateLimitHeaders.RETRY_AFTER), headers.getFirst(RateLimitHeaders.RESET));
+    assertEquals(RateLimitHeaders.REJECTED_CONTENT_TYPE, headers.getFirst(HttpHeaders.CONTENT_TYPE));
+    assertEquals("Rate limit exceeded. Try again later.", exchange.getResponse().getBodyAsString().block());
+  }
+
+  @Test
+  void handlersWithoutRateLimitAreNeverLimited() {
+    RateLimitWebFilter filter = filter(new CaffeineRateLimitStore(config.cacheManager()), "unlimited");
+
+    for (int i = 0; i < 5; i++) {
+      filter.filter(exchange(), chain).block();
+    }
+
+    assertEquals(5, passed.get());
+  }
+
+  @Test
+  void blockingStoreDecidesOnElasticThreadsAndTheChainContinuesOffThem() {
+    BlockingStore store = new BlockingStore(new CaffeineRateLimitStore(config.cacheManager()));
+    RateLimitWebFilter filter = filter(store, "limited");
+
+    filter.filter(exchange(), chain).block();
+
+    assertEquals(1, passed.get());
+    assertTrue(store.decisionThread.get().startsWith("boundedElastic"), store.decisionThread.get());
+    assertTrue(chainThread.get().startsWith("parallel"), chainThread.get());
+  }
+
+  // Helper methods
+
+  private RateLimitWebFilter filter(RateLimitStore store, String handlerName) {
+    HandlerMethod handlerMethod;
+
+    try {
+      handlerMethod = new HandlerMethod(new Handlers(), Handlers.class.getDeclaredMethod(handlerName));
+    } catch (NoSuchMethodException e) {
+      throw new IllegalArgumentException(e);
+    }
+
+    RateLimiterService service = new RateLimiterService(store, algorithms, config.subnetMask(24, 64));
+
+    return new RateLimitWebFilter(service, exchange -> Mono.just(handlerMethod), TrustedProxies.none());
+  }
+
+  private static MockServerWebExchange exchange() {
+    return MockServerWebExchange.from(
+      MockServerHttpRequest.get("/items").remoteAddress(new InetSocketAddress("10.0.0.1", 40000)).build());
+  }
+
+  static final class Handlers {
+    @RateLimit(limit = 1, timeWindowSeconds = 60)
+    void limited() {
+    }
+
+    void unlimited() {
+    }
+
+    @RateLimit(limit = 5, timeWindowSeconds = 60, headers = true)
+    void withHeaders() {
+    }
+  }
+
+  /**
+   * Store that says it may block, and records the thread each decision was made on
+   */
+  private static final class BlockingStore implements RateLimitStore {
+    private final RateLimitStore delegate;
+    private final AtomicReference<String> decisionThread = new AtomicReference<>();
+
+    BlockingStore(RateLimitStore delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public long tryAcquire(long clientHigh, long clientLow, RateLimitRule rule, RateLimitAlgorithm<?> algorithm,
+                           long nowNanos) {
+      decisionThread.set(Thread.currentThread().getName());
+
+      return delegate.tryAcquire(clientHigh, clientLow, rule, algorithm, nowNanos);
+    }
+
+    @Override
+    public long probe(long clientHigh, long clientLow, RateLimitRule rule, RateLimitAlgorithm<?> algorithm,
+                      long nowNanos) {
+      return delegate.probe(clientHigh, clientLow, rule, algorithm, nowNanos);
+    }
+
+    @Override
+    public boolean isBlocking() {
+      return true;
+    }
+  }
+}
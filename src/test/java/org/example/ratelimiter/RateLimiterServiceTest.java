@@ -0,0 +1,169 @@
+package org.example.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterServiceTest {
+  private final RateLimiterConfig config = new RateLimiterConfig();
+  private final List<RateLimitAlgorithm<?>> algorithms = List.of(new FixedWindowAlgorithm(),
+    new SlidingLogAlgorithm(), new SlidingCounterAlgorithm(), new TokenBucketAlgorithm(), new GcraAlgorithm());
+  private final RateLimiterService service = new RateLimiterService(
+    new CaffeineRateLimitStore(config.cacheManager()), algorithms, config.subnetMask(24, 64));
+
+  @Test
+  void allowsTheLimitThenRejects() {
+    for (int i = 0; i < 3; i++) {
+      assertTrue(service.allowRequest("192.0.2.1", 3, 60));
+    }
+
+    assertFalse(service.allowRequest("192.0.2.1", 3, 60));
+    assertEquals(3, service.getCurrentCount("192.0.2.1", 3, 60));
+    assertTrue(service.allowRequest("192.0.2.2", 3, 60));
+  }
+
+  @Test
+  void concurrentRequestsNeverExceedTheLimit() throws Exception {
+    LongAdder allowed = new LongAdder();
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    try {
+      for (int thread = 0; thread < 8; thread++) {
+        executor.execute(() -> {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return;
+          }
+
+          for (int i = 0; i < 500; i++) {
+            if (service.allowRequest("192.0.2.1", 1_000, 60)) {
+              allowed.increment();
+            }
+          }
+        });
+      }
+
+      start.countDown();
+      executor.shutdown();
+
+      assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(1_000, allowed.sum());
+    assertEquals(1_000, service.getCurrentCount("192.0.2.1", 1_000, 60));
+  }
+
+  @Test
+  void textAndNumericFormsOfAnAddressShareAQuota() {
+    RateLimitRule rule = new RateLimitRule(10, 60, Algorithm.FIXED_WINDOW);
+
+    service.tryAcquire("192.0.2.1", rule);
+    service.tryAcquire("::ffff:192.0.2.1", rule);
+    service.tryAcquire(ClientAddress.high("192.0.2.1"), ClientAddress.low("192.0.2.1"), rule);
+
+    assertEquals(3, service.getCurrentCount("192.0.2.1", rule));
+    assertEquals(0, service.getCurrentCount("192.0.2.2", rule));
+  }
+
+  @Test
+  void rejectionsWaitForTheRule() {
+    RateLimitRule rule = new RateLimitRule(2, 60, Algorithm.GCRA);
+
+    assertTrue(service.allowRequest("2001:db8::1", rule));
+    assertTrue(service.allowRequest("2001:db8::1", rule));
+
+    long decision = service.tryAcquire("2001:db8::1", rule);
+
+    assertFalse(RateLimitDecision.isAllowed(decision));
+    assertTrue(RateLimitDecision.waitSeconds(decision) > 0);
+    assertEquals(0, RateLimitDecision.remaining(service.probe("2001:db8::1", rule)));
+  }
+
+  @Test
+  void subnetLimitCoversEveryClientOfTheSubnet() {
+    RateLimitRule rule = new RateLimitRule(100, 60, Algorithm.FIXED_WINDOW).withSubnetLimit(3);
+
+    assertTrue(service.allowRequest("192.0.2.1", rule));
+    assertTrue(service.allowRequest("192.0.2.2", rule));
+    assertTrue(service.allowRequest("192.0.2.3", rule));
+    assertFalse(service.allowRequest("192.0.2.4", rule));
+    assertTrue(service.allowRequest("192.0.3.1", rule));
+
+    // Keys that are not addresses have no subnet to share
+    for (int i = 0; i < 5; i++) {
+      assertTrue(service.allowRequest("client-" + i, rule));
+    }
+  }
+
+  @Test
+  void handlersOfOnePatternForDifferentMethodsStaySeparate() throws Exception {
+    Method get = Handlers.class.getDeclaredMethod("get");
+    Method delete = Handlers.class.getDeclaredMethod("delete");
+
+    service.registerHandlerMethods(List.of(
+      new RateLimiterService.HandlerRoute("/items/{id}", Set.of(RequestMethod.GET, RequestMethod.HEAD), get),
+      new RateLimiterService.HandlerRoute("/items/{id}", Set.of(RequestMethod.DELETE), delete)));
+
+    List<RateLimitEndpoint> endpoints = service.getEndpoints();
+
+    assertEquals(2, endpoints.size());
+    assertEquals("DELETE /items/{id}", endpoints.get(0).getPath());
+    assertSame(delete, endpoints.get(0).getHandler());
+    assertEquals(5, endpoints.get(0).getInfo().getLimit());
+    assertEquals("GET,HEAD /items/{id}", endpoints.get(1).getPath());
+    assertSame(get, endpoints.get(1).getHandler());
+    assertEquals(100, endpoints.get(1).getInfo().getLimit());
+    assertNotSame(endpoints.get(0).getInfo().getRule(), endpoints.get(1).getInfo().getRule());
+  }
+
+  @Test
+  void patternsOfOneHandlerShareAnEndpoint() throws Exception {
+    Method get = Handlers.class.getDeclaredMethod("get");
+    Method unlimited = Handlers.class.getDeclaredMethod("unlimited");
+
+    service.registerHandlerMethods(List.of(
+      new RateLimiterService.HandlerRoute("/b", Set.of(), get),
+      new RateLimiterService.HandlerRoute("/a", Set.of(), get),
+      new RateLimiterService.HandlerRoute("/c", Set.of(), unlimited)));
+
+    List<RateLimitEndpoint> endpoints = service.getEndpoints();
+
+    assertEquals(1, endpoints.size());
+    assertEquals("/a, /b", endpoints.get(0).getPath());
+  }
+
+  // Helper methods
+
+  static final class Handlers {
+    @RateLimit(limit = 100)
+    void get() {
+    }
+
+    @RateLimit(limit = 5)
+    void delete() {
+    }
+
+    void unlimited() {
+    }
+  }
+}
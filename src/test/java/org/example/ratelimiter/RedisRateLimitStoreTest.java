@@ -0,0 +1,243 @@
+package org.example.ratelimiter;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the Lua scripts on a real redis-server started for each test
+ */
+class RedisRateLimitStoreTest {
+  private static final String PREFIX = "test:";
+  private static final Duration COMMAND_TIMEOUT = Duration.ofMillis(100);
+
+  // Distinguishes decisions of the fallback store from any a script returns
+  private static final long FALLBACK_DECISION = RateLimitDecision.allowed(1234, 0);
+
+  private final FixedWindowAlgorithm algorithm = new FixedWindowAlgorithm();
+  private RedisServer server;
+  private LettuceConnectionFactory connectionFactory;
+  private StringRedisTemplate redis;
+  private RedisRateLimitStore store;
+
+  @BeforeEach
+  void startRedis() throws IOException {
+    int port = freePort();
+
+    server = new RedisServer(port);
+    server.start();
+    connectionFactory = connectionFactory(port);
+    redis = new StringRedisTemplate(connectionFactory);
+    store = new RedisRateLimitStore(redis, PREFIX, new LeasedRateLimitStoreTest.FixedDecisionStore(FALLBACK_DECISION));
+  }
+
+  @AfterEach
+  void stopRedis() throws IOException {
+    connectionFactory.destroy();
+    server.stop();
+  }
+
+  @Test
+  void everyScriptAllowsTheLimitThenRejects() {
+    for (Algorithm type : Algorithm.values()) {
+      RateLimitRule rule = new RateLimitRule(10, 60, type);
+
+      for (int i = 0; i < 10; i++) {
+        assertTrue(RateLimitDecision.isAllowed(tryAcquire(rule)), type + " request " + i);
+      }
+
+      long rejected = tryAcquire(rule);
+
+      assertFalse(RateLimitDecision.isAllowed(rejected), type.name());
+      assertTrue(RateLimitDecision.waitMillis(rejected) > 0, type.name());
+      assertTrue(RateLimitDecision.waitMillis(rejected) <= 60_000, type.name());
+    }
+
+    assertEquals(0, store.getFallbackCount());
+  }
+
+  @Test
+  void probeConsumesNothing() {
+    for (Algorithm type : Algorithm.values()) {
+      RateLimitRule rule = new RateLimitRule(10, 60, type);
+
+      tryAcquire(rule);
+      tryAcquire(rule);
+
+      long first = store.probe(0, 1, rule, algorithm, 0);
+      long second = store.probe(0, 1, rule, algorithm, 0);
+
+      assertTrue(RateLimitDecision.isAllowed(first), type.name());
+      assertEquals(RateLimitDecision.remaining(first), RateLimitDecision.remaining(second), type.name());
+
+      for (int i = 2; i < 10; i++) {
+        assertTrue(RateLimitDecision.isAllowed(tryAcquire(rule)), type + " request " + i);
+      }
+
+      assertFalse(RateLimitDecision.isAllowed(tryAcquire(rule)), type.name());
+    }
+  }
+
+  @Test
+  void fixedWindowCountsDown() {
+    RateLimitRule rule = new RateLimitRule(10, 60, Algorithm.FIXED_WINDOW);
+
+    assertEquals(9, RateLimitDecision.remaining(tryAcquire(rule)));
+    assertEquals(8, RateLimitDecision.remaining(tryAcquire(rule)));
+  }
+
+  @Test
+  void gcraSpacesRequestsByTheEmissionInterval() {
+    // One request per 6 seconds once the burst of 10 is spent
+    RateLimitRule rule = new RateLimitRule(10, 60, Algorithm.GCRA);
+
+    for (int i = 0; i < 10; i++) {
+      tryAcquire(rule);
+    }
+
+    long waitMillis = RateLimitDecision.waitMillis(tryAcquire(rule));
+
+    assertTrue(waitMillis > 5_000 && waitMillis <= 6_000, Long.toString(waitMillis));
+  }
+
+  @Test
+  void tokenBucketWaitsForOneToken() {
+    RateLimitRule rule = new RateLimitRule(2, 60, Algorithm.TOKEN_BUCKET, 1.0);
+
+    tryAcquire(rule);
+    tryAcquire(rule);
+
+    long waitMillis = RateLimitDecision.waitMillis(tryAcquire(rule));
+
+    assertTrue(waitMillis > 900 && waitMillis <= 1_000, Long.toString(waitMillis));
+  }
+
+  @Test
+  void keysStartWithThePrefixAndIdentifyTheRuleBySignature() {
+    RateLimitRule rule = new RateLimitRule(10, 60, Algorithm.FIXED_WINDOW);
+    String suffix = RedisRateLimitStore.keySuffix(rule);
+
+    tryAcquire(rule);
+
+    assertEquals(Set.of(RedisRateLimitStore.key(PREFIX, 0, 1, suffix)), redis.keys("*"));
+    // Another JVM builds an equal rule with a different id but must share the key
+    assertEquals(suffix, RedisRateLimitStore.keySuffix(new RateLimitRule(10, 60, Algorithm.FIXED_WINDOW)));
+  }
+
+  @Test
+  void clientsAndRulesHaveSeparateKeys() {
+    RateLimitRule rule = new RateLimitRule(10, 60, Algorithm.FIXED_WINDOW);
+    RateLimitRule other = new RateLimitRule(5, 60, Algorithm.FIXED_WINDOW);
+
+    tryAcquire(rule);
+
+    assertEquals(9, RateLimitDecision.remaining(store.tryAcquire(0, 2, rule, algorithm, 0)));
+    assertEquals(4, RateLimitDecision.remaining(tryAcquire(other)));
+    assertEquals(3, redis.keys(PREFIX + "*").size());
+  }
+
+  @Test
+  void ledgerGrantsWhatIsLeftOfTheWindow() throws Exception {
+    RedisQuotaLedger ledger = new RedisQuotaLedger(redis, PREFIX + "lease:", Runnable::run);
+    RateLimitRule rule = new RateLimitRule(10, 60, Algorithm.FIXED_WINDOW);
+
+    QuotaLedger.Grant first = ledger.lease(0, 1, rule, 4).get();
+    QuotaLedger.Grant second = ledger.lease(0, 1, rule, 8).get();
+    QuotaLedger.Grant third = ledger.lease(0, 1, rule, 8).get();
+
+    assertEquals(4, first.getPermits());
+    assertEquals(6, first.getRemaining());
+    assertEquals(6, second.getPermits());
+    assertEquals(0, second.getRemaining());
+    assertEquals(0, third.getPermits());
+    assertEquals(first.getWindow(), third.getWindow());
+    assertTrue(first.getWindowRemainingNanos() > 0 && first.getWindowRemainingNanos() <= 60_000_000_000L);
+  }
+
+  @Test
+  void unreachableRedisFallsBack() throws IOException {
+    LettuceConnectionFactory unreachable = connectionFactory(freePort());
+
+    try {
+      RedisRateLimitStore down = new RedisRateLimitStore(new StringRedisTemplate(unreachable), PREFIX,
+        new LeasedRateLimitStoreTest.FixedDecisionStore(FALLBACK_DECISION));
+      RateLimitRule rule = new RateLimitRule(10, 60, Algorithm.FIXED_WINDOW);
+
+      assertEquals(FALLBACK_DECISION, down.tryAcquire(0, 1, rule, algorithm, 0));
+      assertEquals(FALLBACK_DECISION, down.probe(0, 1, rule, algorithm, 0));
+      assertEquals(2, down.getFallbackCount());
+    } finally {
+      unreachable.destroy();
+    }
+  }
+
+  @Test
+  void commandTimeoutFallsBack() {
+    RateLimitRule rule = new RateLimitRule(10, 60, Algorithm.FIXED_WINDOW);
+
+    // Load the script while Redis still answers, so the paused call is the script itself
+    tryAcquire(rule);
+    redis.execute((RedisCallback<Object>) connection ->
+      connection.execute("CLIENT", bytes("PAUSE"), bytes("1000")));
+
+    long startNanos = System.nanoTime();
+
+    assertEquals(FALLBACK_DECISION, tryAcquire(rule));
+    assertTrue(System.nanoTime() - startNanos < Duration.ofMillis(900).toNanos());
+    assertEquals(1, store.getFallbackCount());
+  }
+
+  @Test
+  void errorReplyFallsBack() {
+    RateLimitRule rule = new RateLimitRule(10, 60, Algorithm.FIXED_WINDOW);
+
+    // Out of memory, Redis refuses the script with an error reply, as it does while loading or with a busy script
+    redis.execute((RedisCallback<Object>) connection ->
+      connection.execute("CONFIG", bytes("SET"), bytes("maxmemory"), bytes("1")));
+
+    assertEquals(FALLBACK_DECISION, tryAcquire(rule));
+    assertEquals(1, store.getFallbackCount());
+  }
+
+  // Helper methods
+
+  private long tryAcquire(RateLimitRule rule) {
+    return store.tryAcquire(0, 1, rule, algorithm, 0);
+  }
+
+  private static LettuceConnectionFactory connectionFactory(int port) {
+    LettuceClientConfiguration client = LettuceClientConfiguration.builder().commandTimeout(COMMAND_TIMEOUT).build();
+    LettuceConnectionFactory factory =
+      new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port), client);
+
+    factory.afterPropertiesSet();
+
+    return factory;
+  }
+
+  private static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+}
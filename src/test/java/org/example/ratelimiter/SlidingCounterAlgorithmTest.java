@@ -0,0 +1,75 @@
+package org.example.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlidingCounterAlgorithmTest {
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+  // Windows are aligned to multiples of their length; this is the start of one
+  private static final long START = 120 * SECOND;
+
+  private final SlidingCounterAlgorithm algorithm = new SlidingCounterAlgorithm();
+  private final RateLimitRule rule = new RateLimitRule(10, 60, Algorithm.SLIDING_COUNTER);
+  private final AtomicLong state = algorithm.newState(rule);
+
+  @Test
+  void fullPreviousWindowBlocksTheBoundaryBurst() {
+    fill(START, 10);
+
+    assertFalse(RateLimitDecision.isAllowed(algorithm.tryAcquire(state, rule, START + 59 * SECOND)));
+
+    // A fixed window would allow ten more here
+    long atBoundary = algorithm.tryAcquire(state, rule, START + 60 * SECOND);
+
+    assertFalse(RateLimitDecision.isAllowed(atBoundary));
+    assertEquals(1, RateLimitDecision.waitMillis(atBoundary));
+  }
+
+  @Test
+  void previousWindowWeighsByItsOverlap() {
+    fill(START, 10);
+
+    // Half of the previous window still overlaps, so half of its count remains
+    long halfway = START + 90 * SECOND;
+
+    assertEquals(4, RateLimitDecision.remaining(algorithm.tryAcquire(state, rule, halfway)));
+    fill(halfway, 4);
+    assertFalse(RateLimitDecision.isAllowed(algorithm.tryAcquire(state, rule, halfway)));
+
+    // Two windows later neither count is left
+    assertEquals(9, RateLimitDecision.remaining(algorithm.tryAcquire(state, rule, START + 180 * SECOND)));
+  }
+
+  @Test
+  void probeCountsNothing() {
+    fill(START, 3);
+
+    assertEquals(7, RateLimitDecision.remaining(algorithm.probe(state, rule, START)));
+    assertEquals(7, RateLimitDecision.remaining(algorithm.probe(state, rule, START)));
+  }
+
+  @Test
+  void rebaseMovesTheCountsOntoTheNewClock() {
+    fill(START, 3);
+
+    long nowNanos = START + 3_600 * SECOND;
+    long rebased = algorithm.rebase(state.get(), rule, START, nowNanos);
+
+    assertEquals(algorithm.decide(state.get(), rule, START), algorithm.decide(rebased, rule, nowNanos));
+    assertEquals(0, algorithm.rebase(state.get(), rule, START + 120 * SECOND, nowNanos));
+  }
+
+  // Helper methods
+
+  private void fill(long nowNanos, int requests) {
+    for (int i = 0; i < requests; i++) {
+      assertTrue(RateLimitDecision.isAllowed(algorithm.tryAcquire(state, rule, nowNanos)));
+    }
+  }
+}
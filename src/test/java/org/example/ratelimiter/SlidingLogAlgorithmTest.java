@@ -0,0 +1,64 @@
+package org.example.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlidingLogAlgorithmTest {
+  private static final long START = TimeUnit.SECONDS.toNanos(5);
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final SlidingLogAlgorithm algorithm = new SlidingLogAlgorithm();
+  private final RateLimitRule rule = new RateLimitRule(3, 60, Algorithm.SLIDING_LOG);
+  private final SlidingLogAlgorithm.Log log = algorithm.newState(rule);
+
+  @Test
+  void limitHoldsOverEverySlidingWindow() {
+    algorithm.tryAcquire(log, rule, START);
+    algorithm.tryAcquire(log, rule, START + 10 * SECOND);
+    algorithm.tryAcquire(log, rule, START + 20 * SECOND);
+
+    // Retry once the oldest request leaves the window
+    long rejected = algorithm.tryAcquire(log, rule, START + 30 * SECOND);
+
+    assertFalse(RateLimitDecision.isAllowed(rejected));
+    assertEquals(30_000, RateLimitDecision.waitMillis(rejected));
+
+    long afterOldest = algorithm.tryAcquire(log, rule, START + 60 * SECOND);
+
+    assertTrue(RateLimitDecision.isAllowed(afterOldest));
+    assertEquals(0, RateLimitDecision.remaining(afterOldest));
+    assertEquals(10_000, RateLimitDecision.waitMillis(algorithm.tryAcquire(log, rule, START + 60 * SECOND)));
+  }
+
+  @Test
+  void probeCountsNothing() {
+    assertEquals(3, RateLimitDecision.remaining(algorithm.probe(log, rule, START)));
+
+    algorithm.tryAcquire(log, rule, START);
+
+    long probe = algorithm.probe(log, rule, START + SECOND);
+
+    assertEquals(2, RateLimitDecision.remaining(probe));
+    assertEquals(59_000, RateLimitDecision.waitMillis(probe));
+    assertEquals(2, RateLimitDecision.remaining(algorithm.probe(log, rule, START + SECOND)));
+  }
+
+  @Test
+  void logGrowsUpToTheLimit() {
+    RateLimitRule large = new RateLimitRule(1_000, 60, Algorithm.SLIDING_LOG);
+    SlidingLogAlgorithm.Log largeLog = algorithm.newState(large);
+
+    for (int i = 0; i < 1_000; i++) {
+      assertTrue(RateLimitDecision.isAllowed(algorithm.tryAcquire(largeLog, large, START + i)));
+    }
+
+    assertFalse(RateLimitDecision.isAllowed(algorithm.tryAcquire(largeLog, large, START + 1_000)));
+    // Wrapping around the ring once the window has moved past the first requests
+    assertTrue(RateLimitDecision.isAllowed(algorithm.tryAcquire(largeLog, large, START + 60 * SECOND + 500)));
+  }
+}
@@ -0,0 +1,125 @@
+package org.example.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TimingWheelTest {
+  private static final long TICK = 10;
+
+  private final List<Long> fired = new ArrayList<>();
+
+  @Test
+  void firesOnceTheDeadlineHasPassed() {
+    TimingWheel wheel = new TimingWheel(TICK, 0, this::expire);
+
+    wheel.schedule(1, 55);
+    assertEquals(1, wheel.getOccupancy(0));
+
+    wheel.advance(50);
+    assertEquals(List.of(), fired);
+
+    wheel.advance(60);
+    assertEquals(List.of(1L), fired);
+    assertEquals(1, wheel.getExpiredCount());
+    assertEquals(0, wheel.getScheduledCount());
+  }
+
+  @Test
+  void pastDeadlinesFireOnTheNextTick() {
+    TimingWheel wheel = new TimingWheel(TICK, 100 * TICK, this::expire);
+
+    wheel.schedule(1, 0);
+    wheel.advance(100 * TICK);
+    assertEquals(List.of(), fired);
+
+    wheel.advance(101 * TICK);
+    assertEquals(List.of(1L), fired);
+  }
+
+  @Test
+  void farDeadlinesCascadeDownAndFireOnTheirTick() {
+    TimingWheel wheel = new TimingWheel(TICK, 0, this::expire);
+    long[] ticks = {64, 100, 4_096, 5_000, 300_000};
+
+    for (int i = 0; i < ticks.length; i++) {
+      wheel.schedule(i, ticks[i] * TICK);
+    }
+
+    assertEquals(0, wheel.getOccupancy(0));
+    assertEquals(2, wheel.getOccupancy(1));
+    assertEquals(2, wheel.getOccupancy(2));
+    assertEquals(1, wheel.getOccupancy(3));
+
+    for (int i = 0; i < ticks.length; i++) {
+      wheel.advance((ticks[i] - 1) * TICK);
+      assertEquals(i, fired.size());
+
+      wheel.advance(ticks[i] * TICK);
+      assertEquals(i + 1, fired.size());
+      assertEquals(Long.valueOf(i), fired.get(i));
+    }
+
+    assertEquals(0, wheel.getScheduledCount());
+  }
+
+  @Test
+  void deadlinesBeyondTheTopLevelWaitInItsLastBucket() {
+    TimingWheel wheel = new TimingWheel(TICK, 0, this::expire);
+    long tick = 20_000_000;
+
+    wheel.schedule(1, tick * TICK);
+    assertEquals(1, wheel.getOccupancy(3));
+
+    wheel.advance((tick - 1) * TICK);
+    assertEquals(List.of(), fired);
+
+    wheel.advance(tick * TICK);
+    assertEquals(List.of(1L), fired);
+  }
+
+  @Test
+  void handlerCanPushAnEntryToALaterDeadline() {
+    TimingWheel wheel = new TimingWheel(TICK, 0, (handle, nowNanos) -> {
+      fired.add(handle);
+
+      return fired.size() == 1 ? nowNanos + 100 * TICK : TimingWheel.NO_DEADLINE;
+    });
+
+    wheel.schedule(7, 5 * TICK);
+    wheel.advance(5 * TICK);
+    assertEquals(1, wheel.getRescheduledCount());
+    assertEquals(0, wheel.getExpiredCount());
+    assertEquals(1, wheel.getOccupancy(1));
+
+    wheel.advance(104 * TICK);
+    assertEquals(1, fired.size());
+
+    wheel.advance(105 * TICK);
+    assertEquals(List.of(7L, 7L), fired);
+    assertEquals(1, wheel.getExpiredCount());
+    assertEquals(0, wheel.getScheduledCount());
+  }
+
+  @Test
+  void scheduleAllTakesOnlyTheLongsInUse() {
+    TimingWheel wheel = new TimingWheel(TICK, 0, this::expire);
+
+    wheel.scheduleAll(new long[]{1, 10 * TICK, 2, 20 * TICK, 3, 30 * TICK}, 4);
+    assertEquals(2, wheel.getScheduledCount());
+
+    wheel.advance(30 * TICK);
+    assertEquals(List.of(1L, 2L), fired);
+  }
+
+  // Helper methods
+
+  private long expire(long handle, long nowNanos) {
+    fired.add(handle);
+
+    return TimingWheel.NO_DEADLINE;
+  }
+}
@@ -0,0 +1,87 @@
+package org.example.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketAlgorithmTest {
+  private static final long START = TimeUnit.SECONDS.toNanos(5);
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  // Bursts of 10, refilled at one token per second
+  private final TokenBucketAlgorithm algorithm = new TokenBucketAlgorithm();
+  private final RateLimitRule rule = new RateLimitRule(10, 60, Algorithm.TOKEN_BUCKET, 1.0);
+  private final AtomicLong state = algorithm.newState(rule);
+
+  @Test
+  void emptyBucketWaitsForOneToken() {
+    fill(START, 10);
+
+    long rejected = algorithm.tryAcquire(state, rule, START);
+
+    assertFalse(RateLimitDecision.isAllowed(rejected));
+    assertEquals(1_000, RateLimitDecision.waitMillis(rejected));
+  }
+
+  @Test
+  void tokensRefillInProportionToElapsedTime() {
+    fill(START, 10);
+
+    long later = START + 2_500_000_000L;
+
+    fill(later, 2);
+
+    // Half a token is left over and counts towards the next one
+    long rejected = algorithm.tryAcquire(state, rule, later);
+
+    assertFalse(RateLimitDecision.isAllowed(rejected));
+    assertTrue(Math.abs(RateLimitDecision.waitMillis(rejected) - 500) <= 1, rejected + "");
+    assertTrue(RateLimitDecision.isAllowed(algorithm.tryAcquire(state, rule, later + SECOND / 2)));
+  }
+
+  @Test
+  void refillStopsAtTheCapacity() {
+    fill(START, 1);
+
+    long idleHourLater = START + 3_600 * SECOND;
+    long decision = algorithm.tryAcquire(state, rule, idleHourLater);
+
+    assertEquals(9, RateLimitDecision.remaining(decision));
+    fill(idleHourLater, 9);
+    assertFalse(RateLimitDecision.isAllowed(algorithm.tryAcquire(state, rule, idleHourLater)));
+  }
+
+  @Test
+  void resetIsTheTimeToRefillTheDeficit() {
+    fill(START, 4);
+
+    long probe = algorithm.probe(state, rule, START);
+
+    assertEquals(6, RateLimitDecision.remaining(probe));
+    assertEquals(4_000, RateLimitDecision.waitMillis(probe));
+  }
+
+  @Test
+  void rebaseKeepsTheDeficitOnTheNewClock() {
+    fill(START, 4);
+
+    long nowNanos = START + TimeUnit.HOURS.toNanos(1);
+    long rebased = algorithm.rebase(state.get(), rule, START, nowNanos);
+
+    assertEquals(algorithm.decide(state.get(), rule, START), algorithm.decide(rebased, rule, nowNanos));
+    assertEquals(0, algorithm.rebase(state.get(), rule, START + 4 * SECOND, nowNanos));
+  }
+
+  // Helper methods
+
+  private void fill(long nowNanos, int requests) {
+    for (int i = 0; i < requests; i++) {
+      assertTrue(RateLimitDecision.isAllowed(algorithm.tryAcquire(state, rule, nowNanos)), "request " + i);
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package org.example.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrustedProxiesTest {
+  private final TrustedProxies proxies = TrustedProxies.of(List.of("10.0.0.0/8", "192.168.1.1", "2001:db8::/32"), 5);
+
+  @Test
+  void containsAddressesOfTheTrustedNetworks() {
+    assertTrue(contains(proxies, "10.0.0.1"));
+    assertTrue(contains(proxies, "10.255.255.255"));
+    assertTrue(contains(proxies, "192.168.1.1"));
+    assertTrue(contains(proxies, "2001:db8::1"));
+    assertTrue(contains(proxies, "2001:db8:ffff:ffff:ffff:ffff:ffff:ffff"));
+
+    assertFalse(contains(proxies, "11.0.0.1"));
+    assertFalse(contains(proxies, "9.255.255.255"));
+    assertFalse(contains(proxies, "192.168.1.2"));
+    assertFalse(contains(proxies, "2001:db9::1"));
+    assertFalse(contains(proxies, "::1"));
+  }
+
+  @Test
+  void ipv4NetworksDoNotCoverIpv6() {
+    TrustedProxies all = TrustedProxies.of(List.of("0.0.0.0/0"), 5);
+
+    assertTrue(contains(all, "0.0.0.0"));
+    assertTrue(contains(all, "255.255.255.255"));
+    assertFalse(contains(all, "2001:db8::1"));
+    assertTrue(contains(TrustedProxies.of(List.of("::/0"), 5), "10.0.0.1"));
+  }
+
+  @Test
+  void noneTrustsNothing() {
+    assertTrue(TrustedProxies.none().isEmpty());
+    assertFalse(contains(TrustedProxies.none(), "10.0.0.1"));
+    assertTrue(TrustedProxies.of(List.of(" ", ""), 5).isEmpty());
+  }
+
+  @Test
+  void malformedNetworksAreRejected() {
+    assertThrows(IllegalArgumentException.class, () -> TrustedProxies.of(List.of("10.0.0.0/33"), 5));
+    assertThrows(IllegalArgumentException.class, () -> TrustedProxies.of(List.of("2001:db8::/129"), 5));
+    assertThrows(IllegalArgumentException.class, () -> TrustedProxies.of(List.of("10.0.0.0/x"), 5));
+    assertThrows(IllegalArgumentException.class, () -> TrustedProxies.of(List.of("proxy.internal"), 5));
+    assertThrows(IllegalArgumentException.class, () -> TrustedProxies.of(List.of("10.0.0.0/8"), 0));
+  }
+
+  @Test
+  void compressedTrieAgreesWithAPrefixScan() {
+    Random random = new Random(42);
+
+    for (int round = 0; round < 50; round++) {
+      List<long[]> networks = new ArrayList<>();
+      List<String> texts = new ArrayList<>();
+
+      // Networks under a few shared roots, so they nest and branch
+      long[] roots = {random.nextLong(), random.nextLong(), random.nextLong()};
+
+      for (int i = 0; i < 20; i++) {
+        long high = roots[random.nextInt(roots.length)] ^ (random.nextLong() >>> (8 + random.nextInt(56)));
+        long low = random.nextLong();
+        int length = random.nextInt(129);
+
+        networks.add(new long[] {high, low, length});
+        texts.add(ipv6(high, low) + "/" + length);
+      }
+
+      TrustedProxies trie = TrustedProxies.of(texts, 5);
+
+      for (int i = 0; i < 500; i++) {
+        long[] network = networks.get(random.nextInt(networks.size()));
+        int flipped = random.nextInt(129);
+        long high = flipped >= 64 ? network[0] : network[0] ^ (random.nextLong() >>> flipped);
+        long low = flipped >= 64 ? network[1] ^ (random.nextLong() >>> (flipped - 64)) : random.nextLong();
+
+        assertEquals(scan(networks, high, low), trie.contains(high, low), ipv6(high, low) + " in " + texts);
+      }
+    }
+  }
+
+  @Test
+  void clientIsTheRightmostUntrustedForwardedAddress() {
+    assertEquals("203.0.113.7", proxies.clientAddress("10.0.0.1", "203.0.113.7"));
+    assertEquals("203.0.113.7", proxies.clientAddress("10.0.0.1", "203.0.113.7, 10.0.0.2"));
+    // Entries left of the first untrusted one are client-supplied
+    assertEquals("203.0.113.7", proxies.clientAddress("10.0.0.1", "1.1.1.1, 203.0.113.7,10.0.0.2 ,2001:db8::5"));
+    assertEquals("2001:db9::1", proxies.clientAddress("10.0.0.1", "2001:db9::1"));
+  }
+
+  @Test
+  void untrustedPeerIsTheClient() {
+    assertEquals("198.51.100.1", proxies.clientAddress("198.51.100.1", "203.0.113.7"));
+    assertEquals("10.0.0.1", proxies.clientAddress("10.0.0.1", null));
+    assertEquals("10.0.0.1", proxies.clientAddress("10.0.0.1", ""));
+  }
+
+  @Test
+  void walkStopsAtTheLastTrustedHop() {
+    // Every hop trusted
+    assertEquals("10.0.0.3", proxies.clientAddress("10.0.0.1", "10.0.0.3, 10.0.0.2"));
+    // Not an address
+    assertEquals("10.0.0.2", proxies.clientAddress("10.0.0.1", "203.0.113.7, unknown, 10.0.0.2"));
+    // Empty entry
+    assertEquals("10.0.0.2", proxies.clientAddress("10.0.0.1", "203.0.113.7, , 10.0.0.2"));
+    // Entry too long to be an address
+    assertEquals("10.0.0.2", proxies.clientAddress("10.0.0.1", "203.0.113.7, " + "1".repeat(100) + ", 10.0.0.2"));
+  }
+
+  @Test
+  void walkIsBoundedByTheHopCount() {
+    TrustedProxies twoHops = TrustedProxies.of(List.of("10.0.0.0/8"), 2);
+
+    assertEquals("10.0.0.3", twoHops.clientAddress("10.0.0.1", "203.0.113.7, 10.0.0.4, 10.0.0.3, 10.0.0.2"));
+    assertEquals("203.0.113.7", twoHops.clientAddress("10.0.0.1", "203.0.113.7, 10.0.0.2"));
+  }
+
+  @Test
+  void resolveSetsTheClientKey() {
+    RateLimitKey key = new RateLimitKey();
+
+    proxies.resolve(ClientAddress.high("10.0.0.1"), ClientAddress.low("10.0.0.1"), "203.0.113.7, 10.0.0.2", key);
+
+    assertEquals(ClientAddress.high("203.0.113.7"), key.getHigh());
+    assertEquals(ClientAddress.low("203.0.113.7"), key.getLow());
+
+    proxies.resolve(ClientAddress.high("198.51.100.1"), ClientAddress.low("198.51.100.1"), "203.0.113.7", key);
+
+    assertEquals(ClientAddress.high("198.51.100.1"), key.getHigh());
+    assertEquals(ClientAddress.low("198.51.100.1"), key.getLow());
+  }
+
+  // Helper methods
+
+  private static boolean contains(TrustedProxies proxies, String address) {
+    return proxies.contains(ClientAddress.high(address), ClientAddress.low(address));
+  }
+
+  private static boolean scan(List<long[]> networks, long high, long low) {
+    for (long[] network : networks) {
+      int length = (int) network[2];
+
+      if (((high ^ network[0]) & ClientAddress.highMask(length)) == 0
+        && ((low ^ network[1]) & ClientAddress.lowMask(length)) == 0) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private static String ipv6(long high, long low) {
+    StringBuilder text = new StringBuilder();
+
+    for (int group = 0; group < 8; group++) {
+      long half = group < 4 ? high : low;
+
+      if (group > 0) {
+        text.append(':');
+      }
+
+      text.append(Long.toHexString((half >>> (48 - 16 * (group % 4))) & 0xffff));
+    }
+
+    return text.toString();
+  }
+}
@@ -0,0 +1,65 @@
+package org.example.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class VarintTest {
+  @Test
+  void valuesRoundTripInTheirMinimalLength() {
+    long[] values = {0, 1, 127, 128, 300, 16_383, 16_384, Integer.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, -1};
+    int[] lengths = {1, 1, 1, 2, 2, 2, 3, 5, 9, 10, 10};
+
+    for (int i = 0; i < values.length; i++) {
+      ByteBuffer buffer = ByteBuffer.allocate(Varint.MAX_BYTES);
+
+      Varint.put(buffer, values[i]);
+
+      assertEquals(lengths[i], buffer.position(), Long.toString(values[i]));
+
+      buffer.flip();
+
+      assertEquals(values[i], Varint.get(buffer));
+      assertEquals(0, buffer.remaining());
+    }
+  }
+
+  @Test
+  void encodingMatchesProtocolBuffers() {
+    ByteBuffer buffer = ByteBuffer.allocate(Varint.MAX_BYTES);
+
+    Varint.put(buffer, 300);
+
+    assertArrayEquals(new byte[] {(byte) 0xAC, 0x02}, Arrays.copyOf(buffer.array(), buffer.position()));
+  }
+
+  @Test
+  void consecutiveValuesReadBackInOrder() {
+    ByteBuffer buffer = ByteBuffer.allocate(3 * Varint.MAX_BYTES);
+
+    Varint.put(buffer, 5);
+    Varint.put(buffer, 1L << 40);
+    Varint.put(buffer, 0);
+    buffer.flip();
+
+    assertEquals(5, Varint.get(buffer));
+    assertEquals(1L << 40, Varint.get(buffer));
+    assertEquals(0, Varint.get(buffer));
+  }
+
+  @Test
+  void malformedInputIsRejected() {
+    byte[] overlong = new byte[Varint.MAX_BYTES + 1];
+
+    Arrays.fill(overlong, (byte) 0x80);
+
+    assertThrows(IllegalArgumentException.class, () -> Varint.get(ByteBuffer.wrap(overlong)));
+    assertThrows(BufferUnderflowException.class, () -> Varint.get(ByteBuffer.wrap(new byte[] {(byte) 0x80})));
+  }
+}